@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.structr.core.entity.Principal;
+
+/**
+ * Global cache for resolved permission decisions and flattened group
+ * memberships of principals.
+ *
+ * The cache is invalidated completely whenever a transaction commits that
+ * changes security relationships, group memberships, admin flags or
+ * deletes nodes. Each invalidation starts a new epoch, so decisions that
+ * were computed concurrently with an invalidation are not stored.
+ *
+ * Invalidation happens in {@link #afterCommit}, i.e. only after the
+ * changes are visible to other transactions; invalidating earlier would
+ * let concurrent readers cache outdated decisions under the new epoch.
+ *
+ * @author Christian Morgner
+ */
+public class PermissionCache implements TransactionEventHandler<Boolean> {
+
+	private static final int MAX_DECISIONS_PER_PRINCIPAL = 10000;
+
+	private static final PermissionCache instance                  = new PermissionCache();
+	private static final ThreadLocal<Boolean> invalidationPending  = new ThreadLocal<Boolean>();
+
+	private static final Map<Long, Map<String, Boolean>> decisions = new ConcurrentHashMap<Long, Map<String, Boolean>>();
+	private static final Map<Long, Set<Long>> principalClosures    = new ConcurrentHashMap<Long, Set<Long>>();
+	private static final AtomicLong epoch                          = new AtomicLong(0);
+
+	private PermissionCache() {}
+
+	public static PermissionCache getInstance() {
+		return instance;
+	}
+
+	public static long getEpoch() {
+		return epoch.get();
+	}
+
+	public static void invalidate() {
+
+		epoch.incrementAndGet();
+
+		decisions.clear();
+		principalClosures.clear();
+	}
+
+	/**
+	 * Marks the transaction of the current thread as modifying
+	 * permissions, so that the cache is invalidated once it has been
+	 * committed successfully.
+	 */
+	public static void invalidateAfterCommit() {
+		invalidationPending.set(Boolean.TRUE);
+	}
+
+	/**
+	 * Returns the cached decision for the given node id, permission and
+	 * principal, or null if there is none.
+	 */
+	public static Boolean getDecision(final long nodeId, final Permission permission, final Principal principal) {
+
+		Map<String, Boolean> principalDecisions = decisions.get(principal.getId());
+		if (principalDecisions != null) {
+
+			return principalDecisions.get(key(nodeId, permission));
+		}
+
+		return null;
+	}
+
+	public static void storeDecision(final long currentEpoch, final long nodeId, final Permission permission, final Principal principal, final boolean granted) {
+
+		Map<String, Boolean> principalDecisions = decisions.get(principal.getId());
+		if (principalDecisions == null) {
+
+			principalDecisions = new ConcurrentHashMap<String, Boolean>();
+			decisions.put(principal.getId(), principalDecisions);
+		}
+
+		// keep memory bounded
+		if (principalDecisions.size() > MAX_DECISIONS_PER_PRINCIPAL) {
+			principalDecisions.clear();
+		}
+
+		principalDecisions.put(key(nodeId, permission), granted);
+
+		// cache was invalidated in the meantime, decision may be outdated
+		if (epoch.get() != currentEpoch) {
+			principalDecisions.remove(key(nodeId, permission));
+		}
+	}
+
+	/**
+	 * Returns the ids of the given principal and of all groups it
+	 * belongs to, directly or indirectly.
+	 */
+	public static Set<Long> getPrincipalClosure(final Principal principal) {
+
+		long currentEpoch = epoch.get();
+		Set<Long> closure = principalClosures.get(principal.getId());
+
+		if (closure == null) {
+
+			closure = Collections.unmodifiableSet(computePrincipalClosure(principal));
+
+			if (epoch.get() == currentEpoch) {
+				principalClosures.put(principal.getId(), closure);
+			}
+		}
+
+		return closure;
+	}
+
+	/**
+	 * Computes the ids of the given principal and of all groups it belongs
+	 * to without consulting the cache.
+	 */
+	public static Set<Long> computePrincipalClosure(final Principal principal) {
+
+		Set<Long> ids                 = new LinkedHashSet<Long>();
+		LinkedList<Principal> pending = new LinkedList<Principal>();
+
+		pending.add(principal);
+
+		while (!pending.isEmpty()) {
+
+			Principal current = pending.removeFirst();
+
+			// ignore cycles in group hierarchy
+			if (ids.add(current.getId())) {
+
+				pending.addAll(current.getParents());
+			}
+		}
+
+		return ids;
+	}
+
+	private static String key(final long nodeId, final Permission permission) {
+		return Long.toString(nodeId).concat(":").concat(permission.name());
+	}
+
+	// ----- interface TransactionEventHandler -----
+	@Override
+	public Boolean beforeCommit(TransactionData data) throws Exception {
+
+		Boolean pending = invalidationPending.get();
+
+		invalidationPending.remove();
+
+		return pending;
+	}
+
+	@Override
+	public void afterCommit(TransactionData data, Boolean pending) {
+
+		if (Boolean.TRUE.equals(pending)) {
+			invalidate();
+		}
+	}
+
+	@Override
+	public void afterRollback(TransactionData data, Boolean pending) {
+		invalidationPending.remove();
+	}
+}
@@ -27,6 +27,7 @@ import org.structr.core.auth.Authenticator;
 import org.structr.core.entity.*;
 import org.structr.core.entity.Principal;
 import org.structr.core.entity.SuperUser;
+import org.structr.core.graph.TransactionCommand;
 
 //~--- JDK imports ------------------------------------------------------------
 
@@ -55,12 +56,15 @@ public class SecurityContext {
 
 	//~--- fields ---------------------------------------------------------
 
-	private Map<Long, AbstractNode> cache = null;
-	private AccessMode accessMode         = AccessMode.Frontend;
-	private Map<String, Object> attrs     = Collections.synchronizedMap(new LinkedHashMap<String, Object>());
-	private Authenticator authenticator   = null;
-	private Principal cachedUser          = null;
-	private HttpServletRequest request    = null;
+	private AccessMode accessMode               = AccessMode.Frontend;
+	private Map<String, Object> attrs           = Collections.synchronizedMap(new LinkedHashMap<String, Object>());
+	private Authenticator authenticator         = null;
+	private Principal cachedUser                = null;
+	private volatile SuperUserCheck superUser   = null;
+	private HttpServletRequest request          = null;
+
+	// identity map for the entities of this context, never shared
+	private final Map<Long, AbstractNode> cache = new ConcurrentHashMap<Long, AbstractNode>();
 
 	//~--- constructors ---------------------------------------------------
 
@@ -73,8 +77,6 @@ public class SecurityContext {
 
 		this.cachedUser = user;
 		this.accessMode = accessMode;
-
-		cache = new ConcurrentHashMap<Long, AbstractNode>();
 	}
 
 	/*
@@ -85,46 +87,21 @@ public class SecurityContext {
 		this.cachedUser = user;
 		this.accessMode = accessMode;
 		this.request    = request;
-
-		initRequestBasedCache(request);
 	}
 
 	private SecurityContext(HttpServletRequest request) {
 
 		this.request    = request;
-
-		initRequestBasedCache(request);
 	}
 
 	//~--- methods --------------------------------------------------------
 
-	private void initRequestBasedCache(HttpServletRequest request) {
-
-		// request-based caching
-		if (request != null && request.getServletContext() != null) {
-			cache = (Map<Long, AbstractNode>)request.getServletContext().getAttribute("NODE_CACHE");
-		}
-		
-		if (cache == null) {
-
-			cache = new ConcurrentHashMap<Long, AbstractNode>();
-			
-			if (request != null && request.getServletContext() != null) {
-				request.getServletContext().setAttribute("NODE_CACHE", cache);
-			}
-		}
-
-	}
-	
 	/**
 	 * Call this method after the request this context was
 	 * created for is finished and the resources can be freed.
 	 */
 	public void cleanUp() {
-		
-		if (cache != null) {
-			cache.clear();
-		}
+		cache.clear();
 	}
 	
 	public AbstractNode lookup(Node node) {
@@ -311,7 +288,22 @@ public class SecurityContext {
 
 		Principal user = getUser(false);
 
-		return ((user != null) && (user instanceof SuperUser || user.getProperty(Principal.isAdmin)));
+		if (user == null) {
+
+			return false;
+		}
+
+		// re-evaluate the admin flag only if the user or the permission epoch has changed
+		long epoch = PermissionCache.getEpoch();
+		SuperUserCheck check = superUser;
+
+		if (check == null || user != check.user || epoch != check.epoch || TransactionCommand.permissionsModified()) {
+
+			check     = new SuperUserCheck(user, epoch, user instanceof SuperUser || Boolean.TRUE.equals(user.getProperty(Principal.isAdmin)));
+			superUser = check;
+		}
+
+		return check.superUser;
 
 	}
 
@@ -659,4 +651,21 @@ public class SecurityContext {
 		
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Result of a superuser check, published as a whole so that
+	 * concurrent readers never see the flag of another user or epoch.
+	 */
+	private static class SuperUserCheck {
+
+		private final Principal user;
+		private final long epoch;
+		private final boolean superUser;
+
+		public SuperUserCheck(final Principal user, final long epoch, final boolean superUser) {
+
+			this.user      = user;
+			this.epoch     = epoch;
+			this.superUser = superUser;
+		}
+	}
+}
@@ -37,6 +37,7 @@ import org.structr.core.entity.RelationshipMapping;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.neo4j.graphdb.DynamicRelationshipType;
@@ -58,30 +59,30 @@ public class EntityContext {
 	private static final String COMBINED_RELATIONSHIP_KEY_SEP                                     = " ";
 	private static final Logger logger                                                            = Logger.getLogger(EntityContext.class.getName());
 
+	// The following maps contain the registered metadata of each type. They are
+	// only accessed while holding the lock of this class, readers use the
+	// flattened, immutable TypeMetadata snapshots instead.
 	private static final Map<Class, Map<PropertyKey, Set<PropertyValidator>>> globalValidatorMap  = new LinkedHashMap<Class, Map<PropertyKey, Set<PropertyValidator>>>();
-
-	// This map contains a mapping from (sourceType, destType) -> Relation
 	private static final Map<Class, Map<String, Set<PropertyKey>>> globalPropertyViewMap          = new LinkedHashMap<Class, Map<String, Set<PropertyKey>>>();
 	private static final Map<Class, Map<String, PropertyKey>> globalClassDBNamePropertyMap        = new LinkedHashMap<Class, Map<String, PropertyKey>>();
 	private static final Map<Class, Map<String, PropertyKey>> globalClassJSNamePropertyMap        = new LinkedHashMap<Class, Map<String, PropertyKey>>();
-
-	// This map contains a mapping from (sourceType, propertyKey) -> Relation
-	private static final Map<Class, Map<String, PropertyGroup>> globalAggregatedPropertyGroupMap  = new LinkedHashMap<Class, Map<String, PropertyGroup>>();
 	private static final Map<Class, Map<String, PropertyGroup>> globalPropertyGroupMap            = new LinkedHashMap<Class, Map<String, PropertyGroup>>();
-
-	// This map contains view-dependent result set transformations
 	private static final Map<Class, Map<String, ViewTransformation>> viewTransformations          = new LinkedHashMap<Class, Map<String, ViewTransformation>>();
-	
-	// This set contains all known properties
-	private static final Set<PropertyKey> globalKnownPropertyKeys                                 = new LinkedHashSet<PropertyKey>();
 	private static final Map<Class, Set<Transformation<GraphObject>>> globalTransformationMap     = new LinkedHashMap<Class, Set<Transformation<GraphObject>>>();
-	private static final Map<String, String> normalizedEntityNameCache                            = new LinkedHashMap<String, String>();
-	private static final Map<String, RelationshipMapping> globalRelationshipNameMap               = new LinkedHashMap<String, RelationshipMapping>();
-	private static final Map<String, Class> globalRelationshipClassMap                            = new LinkedHashMap<String, Class>();
-	private static final Map<Class, Set<Method>> exportedMethodMap                               = new LinkedHashMap<Class, Set<Method>>();
-	private static final Map<Class, Set<Class>> interfaceMap                                      = new LinkedHashMap<Class, Set<Class>>();
-	private static final Map<String, Class> reverseInterfaceMap                                   = new LinkedHashMap<String, Class>();
-	private static Map<String, Class> cachedEntities                                              = new LinkedHashMap<String, Class>();
+
+	// Snapshots of the metadata above, replaced as a whole on modification
+	private static volatile Map<Class, TypeMetadata> typeMetadata                                 = Collections.emptyMap();
+	private static volatile Set<String> globalPropertyViews                                       = null;
+
+	// This set contains all known properties
+	private static final Set<PropertyKey> globalKnownPropertyKeys                                 = Collections.newSetFromMap(new ConcurrentHashMap<PropertyKey, Boolean>());
+	private static final Map<String, String> normalizedEntityNameCache                            = new ConcurrentHashMap<String, String>();
+	private static volatile Map<String, RelationshipMapping> globalRelationshipNameMap            = Collections.emptyMap();
+	private static final Map<String, Class> globalRelationshipClassMap                            = new ConcurrentHashMap<String, Class>();
+	private static final Map<Class, Set<Method>> exportedMethodMap                               = new ConcurrentHashMap<Class, Set<Method>>();
+	private static final Map<Class, Set<Class>> interfaceMap                                      = new ConcurrentHashMap<Class, Set<Class>>();
+	private static final Map<String, Class> reverseInterfaceMap                                   = new ConcurrentHashMap<String, Class>();
+	private static volatile Map<String, Class> cachedEntities                                     = new LinkedHashMap<String, Class>();
 
 	private static FactoryDefinition factoryDefinition                                            = new DefaultFactoryDefinition();
 
@@ -141,16 +142,10 @@ public class EntityContext {
 			}
 		}
 		
-		Set<Method> typeMethods = exportedMethodMap.get(type);
-		if (typeMethods == null) {
-			typeMethods = new LinkedHashSet<Method>();
-			exportedMethodMap.put(type, typeMethods);
-		}
-		
-		typeMethods.addAll(getAnnotatedMethods(type, Export.class));
+		registerExportedMethods(type, getAnnotatedMethods(type, Export.class));
 	}
 	
-	public static void registerProperty(Class type, PropertyKey propertyKey) {
+	public static synchronized void registerProperty(Class type, PropertyKey propertyKey) {
 		
 		getClassDBNamePropertyMapForType(type).put(propertyKey.dbName(),   propertyKey);
 		getClassJSNamePropertyMapForType(type).put(propertyKey.jsonName(), propertyKey);
@@ -159,6 +154,8 @@ public class EntityContext {
 		
 		// inform property key of its registration
 		propertyKey.registrationCallback(type);
+
+		invalidateMetadata();
 	}
 	
 	/**
@@ -175,8 +172,10 @@ public class EntityContext {
 	 * @param type the type of the entities for which the transformation should be applied
 	 * @param transformation the transformation to apply on every entity
 	 */
-	public static void registerEntityCreationTransformation(Class type, Transformation<GraphObject> transformation) {
+	public static synchronized void registerEntityCreationTransformation(Class type, Transformation<GraphObject> transformation) {
+
 		getEntityCreationTransformationsForType(type).add(transformation);
+		invalidateMetadata();
 	}
 
 	/**
@@ -187,8 +186,10 @@ public class EntityContext {
 	 * @param key the property key under which the property group should be visible
 	 * @param propertyGroup the property group
 	 */
-	public static void registerPropertyGroup(Class type, PropertyKey key, PropertyGroup propertyGroup) {
+	public static synchronized void registerPropertyGroup(Class type, PropertyKey key, PropertyGroup propertyGroup) {
+
 		getPropertyGroupMapForType(type).put(key.dbName(), propertyGroup);
+		invalidateMetadata();
 	}
 
 	// ----- named relations -----
@@ -204,9 +205,13 @@ public class EntityContext {
 	 * @param destType the type of the destination entity
 	 * @param relType the relationship type
 	 */
-	public static void registerNamedRelation(String relationName, Class relationshipEntityType, Class sourceType, Class destType, RelationshipType relType) {
+	public static synchronized void registerNamedRelation(String relationName, Class relationshipEntityType, Class sourceType, Class destType, RelationshipType relType) {
+
+		Map<String, RelationshipMapping> relationshipNameMap = new LinkedHashMap<String, RelationshipMapping>(globalRelationshipNameMap);
+
+		relationshipNameMap.put(relationName, new RelationshipMapping(relationName, sourceType, destType, relType));
 
-		globalRelationshipNameMap.put(relationName, new RelationshipMapping(relationName, sourceType, destType, relType));
+		globalRelationshipNameMap = Collections.unmodifiableMap(relationshipNameMap);
 		globalRelationshipClassMap.put(createCombinedRelationshipType(sourceType.getSimpleName(), relType.name(), destType.getSimpleName()), relationshipEntityType);
 	}
 
@@ -220,7 +225,7 @@ public class EntityContext {
 	 * @param viewPrefix a string that will be prepended to all property keys in this view
 	 * @param propertySet the set of property keys to register for the given view
 	 */
-	public static void registerPropertySet(Class type, String propertyView, PropertyKey... propertySet) {
+	public static synchronized void registerPropertySet(Class type, String propertyView, PropertyKey... propertySet) {
 
 		Map<String, Set<PropertyKey>> propertyViewMap = getPropertyViewMapForType(type);
 		Set<PropertyKey> properties                   = propertyViewMap.get(propertyView);
@@ -232,6 +237,8 @@ public class EntityContext {
 
 		// add all properties from set
 		properties.addAll(Arrays.asList(propertySet));
+
+		invalidateMetadata();
 	}
 
 	// ----- private methods -----
@@ -383,6 +390,12 @@ public class EntityContext {
 
 		String normalizedEntityName = normalizeEntityName(rawType);
 
+		if (normalizedEntityName == null) {
+
+			return null;
+
+		}
+
 		if (cachedEntities.containsKey(normalizedEntityName)) {
 
 			return (Class) cachedEntities.get(normalizedEntityName);
@@ -488,20 +501,7 @@ public class EntityContext {
 	}
 
 	public static Set<Transformation<GraphObject>> getEntityCreationTransformations(Class type) {
-
-		Set<Transformation<GraphObject>> transformations = new TreeSet<Transformation<GraphObject>>();
-		Class localType                                  = type;
-
-		// collect for all superclasses
-		while (localType != null && !localType.equals(Object.class)) {
-
-			transformations.addAll(getEntityCreationTransformationsForType(localType));
-
-			localType = localType.getSuperclass();
-
-		}
-
-		return transformations;
+		return getMetadata(type).transformations;
 	}
 
 	// ----- property notions -----
@@ -510,44 +510,18 @@ public class EntityContext {
 	}
 
 	public static PropertyGroup getPropertyGroup(Class type, String key) {
-
-		PropertyGroup group = getAggregatedPropertyGroupMapForType(type).get(key);
-		if(group == null) {
-			
-			Class localType     = type;
-
-			while(group == null && localType != null && !localType.equals(Object.class)) {
-
-				group = getPropertyGroupMapForType(localType).get(key);
-
-				if(group == null) {
-
-					// try interfaces as well
-					for(Class interfaceClass : getInterfacesForType(localType)) {
-
-						group = getPropertyGroupMapForType(interfaceClass).get(key);
-						if(group != null) {
-							break;
-						}
-					}
-				}
-
-				localType = localType.getSuperclass();
-			}
-			
-			getAggregatedPropertyGroupMapForType(type).put(key, group);
-		}
-		
-		return group;
+		return getMetadata(type).propertyGroups.get(key);
 	}
 
 	// ----- view transformations -----
-	public static void registerViewTransformation(Class type, String view, ViewTransformation transformation) {
+	public static synchronized void registerViewTransformation(Class type, String view, ViewTransformation transformation) {
+
 		getViewTransformationMapForType(type).put(view, transformation);
+		invalidateMetadata();
 	}
 	
 	public static ViewTransformation getViewTransformation(Class type, String view) {
-		return getViewTransformationMapForType(type).get(view);
+		return getMetadata(type).viewTransformations.get(view);
 	}
 	
 	private static Map<String, ViewTransformation> getViewTransformationMapForType(Class type) {
@@ -565,27 +539,25 @@ public class EntityContext {
 	// ----- property set methods -----
 	public static Set<String> getPropertyViews() {
 
-		Set<String> views = new LinkedHashSet<String>();
-		
-		// add all existing views
-		for (Map<String, Set<PropertyKey>> view : globalPropertyViewMap.values()) {
-			views.addAll(view.keySet());
+		Set<String> views = globalPropertyViews;
+		if (views == null) {
+
+			views = collectPropertyViews();
 		}
-		
-		return Collections.unmodifiableSet(views);
+
+		return views;
 	}
 	
 	public static Set<PropertyKey> getPropertySet(Class type, String propertyView) {
 
-		Map<String, Set<PropertyKey>> propertyViewMap = getPropertyViewMapForType(type);
-		Set<PropertyKey> properties                   = propertyViewMap.get(propertyView);
+		Set<PropertyKey> properties = getMetadata(type).views.get(propertyView);
 
 		if (properties == null) {
-			properties = new LinkedHashSet<PropertyKey>();
+			properties = Collections.emptySet();
 		}
 		
 		// read-only
-		return Collections.unmodifiableSet(properties);
+		return properties;
 	}
 	
 	public static PropertyKey getPropertyKeyForDatabaseName(Class type, String dbName) {
@@ -594,8 +566,7 @@ public class EntityContext {
 	
 	public static PropertyKey getPropertyKeyForDatabaseName(Class type, String dbName, boolean createGeneric) {
 
-		Map<String, PropertyKey> classDBNamePropertyMap = getClassDBNamePropertyMapForType(type);
-		PropertyKey key                                 = classDBNamePropertyMap.get(dbName);
+		PropertyKey key = getMetadata(type).dbNameKeys.get(dbName);
 		
 		if (key == null) {
 			
@@ -622,8 +593,7 @@ public class EntityContext {
 			return null;
 		}
 
-		Map<String, PropertyKey> classJSNamePropertyMap = getClassJSNamePropertyMapForType(type);
-		PropertyKey key                                 = classJSNamePropertyMap.get(jsonName);
+		PropertyKey key = getMetadata(type).jsonNameKeys.get(jsonName);
 		
 		if (key == null) {
 			
@@ -644,32 +614,10 @@ public class EntityContext {
 
 	public static Set<PropertyValidator> getPropertyValidators(final SecurityContext securityContext, Class type, PropertyKey propertyKey) {
 
-		Set<PropertyValidator> validators                     = new LinkedHashSet<PropertyValidator>();
-		Map<PropertyKey, Set<PropertyValidator>> validatorMap = null;
-		Class localType                                       = type;
-
-		// try all superclasses
-		while (localType != null && !localType.equals(Object.class)) {
-
-			validatorMap = getPropertyValidatorMapForType(localType);
-			
-			Set<PropertyValidator> classValidators = validatorMap.get(propertyKey);
-			if(classValidators != null) {
-				validators.addAll(validatorMap.get(propertyKey));
-			}
-
-			// try converters from interfaces as well
-			for(Class interfaceClass : getInterfacesForType(localType)) {
-				Set<PropertyValidator> interfaceValidators = getPropertyValidatorMapForType(interfaceClass).get(propertyKey);
-				if(interfaceValidators != null) {
-					validators.addAll(interfaceValidators);
-				}
-			}
-			
-//                      logger.log(Level.INFO, "Validator class {0} found for type {1}", new Object[] { clazz != null ? clazz.getSimpleName() : "null", localType } );
-			// one level up :)
-			localType = localType.getSuperclass();
+		Set<PropertyValidator> validators = getMetadata(type).validators.get(propertyKey);
 
+		if (validators == null) {
+			validators = Collections.emptySet();
 		}
 
 		return validators;
@@ -735,21 +683,6 @@ public class EntityContext {
 		return validatorMap;
 	}
 
-	private static Map<String, PropertyGroup> getAggregatedPropertyGroupMapForType(Class type) {
-
-		Map<String, PropertyGroup> groupMap = globalAggregatedPropertyGroupMap.get(type);
-
-		if (groupMap == null) {
-
-			groupMap = new LinkedHashMap<String, PropertyGroup>();
-
-			globalAggregatedPropertyGroupMap.put(type, groupMap);
-
-		}
-
-		return groupMap;
-	}
-
 	private static Map<String, PropertyGroup> getPropertyGroupMapForType(Class type) {
 
 		Map<String, PropertyGroup> groupMap = globalPropertyGroupMap.get(type);
@@ -786,13 +719,15 @@ public class EntityContext {
 		if(interfaces == null) {
 			
 			interfaces = new LinkedHashSet<Class>();
-			interfaceMap.put(type, interfaces);
 			
 			for(Class iface : type.getInterfaces()) {
 
 				reverseInterfaceMap.put(iface.getSimpleName(), iface);
 				interfaces.add(iface);
 			}
+
+			interfaces = Collections.unmodifiableSet(interfaces);
+			interfaceMap.put(type, interfaces);
 		}
 		
 		return interfaces;
@@ -833,6 +768,74 @@ public class EntityContext {
 		return methods;
 	}
 	
+	// ----- type metadata -----
+	private static TypeMetadata getMetadata(Class type) {
+
+		TypeMetadata metadata = typeMetadata.get(type);
+		if (metadata == null) {
+
+			metadata = buildMetadata(type);
+		}
+
+		return metadata;
+	}
+
+	private static synchronized TypeMetadata buildMetadata(Class type) {
+
+		TypeMetadata metadata = typeMetadata.get(type);
+		if (metadata == null) {
+
+			metadata = new TypeMetadata(type);
+
+			// copy on write, readers never see a modified map
+			Map<Class, TypeMetadata> newTypeMetadata = new HashMap<Class, TypeMetadata>(typeMetadata);
+			newTypeMetadata.put(type, metadata);
+
+			typeMetadata = newTypeMetadata;
+		}
+
+		return metadata;
+	}
+
+	private static synchronized Set<String> collectPropertyViews() {
+
+		Set<String> views = new LinkedHashSet<String>();
+		
+		// add all existing views
+		for (Map<String, Set<PropertyKey>> view : globalPropertyViewMap.values()) {
+			views.addAll(view.keySet());
+		}
+
+		views               = Collections.unmodifiableSet(views);
+		globalPropertyViews = views;
+		
+		return views;
+	}
+
+	private static synchronized void registerExportedMethods(Class type, Set<Method> methods) {
+
+		Set<Method> typeMethods = new LinkedHashSet<Method>();
+		Set<Method> existing    = exportedMethodMap.get(type);
+
+		if (existing != null) {
+			typeMethods.addAll(existing);
+		}
+
+		typeMethods.addAll(methods);
+
+		exportedMethodMap.put(type, Collections.unmodifiableSet(typeMethods));
+	}
+
+	/**
+	 * Discards all metadata snapshots, must be called with the lock of
+	 * this class held after modifying one of the global maps.
+	 */
+	private static void invalidateMetadata() {
+
+		typeMetadata        = Collections.emptyMap();
+		globalPropertyViews = null;
+	}
+
 	private static <T> Map<Field, T> getFieldValuesOfType(Class<T> entityType, Object entity) {
 		
 		Map<Field, T> fields   = new LinkedHashMap<Field, T>();
@@ -884,4 +887,82 @@ public class EntityContext {
 			interfaces.add(iface);
 		}
 	}
+
+	// ----- nested classes -----
+	/**
+	 * Immutable, flattened metadata of a single type, built from the global
+	 * maps on first access. Superclasses and interfaces are resolved once,
+	 * so each lookup is a single hash access.
+	 */
+	private static class TypeMetadata {
+
+		private final Map<String, Set<PropertyKey>> views                    = new HashMap<String, Set<PropertyKey>>();
+		private final Map<String, PropertyKey> dbNameKeys                    = new HashMap<String, PropertyKey>();
+		private final Map<String, PropertyKey> jsonNameKeys                  = new HashMap<String, PropertyKey>();
+		private final Map<PropertyKey, Set<PropertyValidator>> validators    = new HashMap<PropertyKey, Set<PropertyValidator>>();
+		private final Map<String, PropertyGroup> propertyGroups              = new HashMap<String, PropertyGroup>();
+		private final Map<String, ViewTransformation> viewTransformations    = new HashMap<String, ViewTransformation>();
+		private final Set<Transformation<GraphObject>> transformations;
+
+		// must be called with the lock of EntityContext held
+		public TypeMetadata(final Class type) {
+
+			Set<Transformation<GraphObject>> typeTransformations = new TreeSet<Transformation<GraphObject>>();
+
+			for (Entry<String, Set<PropertyKey>> entry : getPropertyViewMapForType(type).entrySet()) {
+				views.put(entry.getKey(), Collections.unmodifiableSet(new LinkedHashSet<PropertyKey>(entry.getValue())));
+			}
+
+			dbNameKeys.putAll(getClassDBNamePropertyMapForType(type));
+			jsonNameKeys.putAll(getClassJSNamePropertyMapForType(type));
+			viewTransformations.putAll(getViewTransformationMapForType(type));
+
+			// collect for all superclasses, the first property group found wins
+			Class localType = type;
+			while (localType != null && !localType.equals(Object.class)) {
+
+				addValidators(getPropertyValidatorMapForType(localType));
+				addPropertyGroups(getPropertyGroupMapForType(localType));
+
+				// try interfaces as well
+				for (Class interfaceClass : getInterfacesForType(localType)) {
+
+					addValidators(getPropertyValidatorMapForType(interfaceClass));
+					addPropertyGroups(getPropertyGroupMapForType(interfaceClass));
+				}
+
+				typeTransformations.addAll(getEntityCreationTransformationsForType(localType));
+
+				// one level up :)
+				localType = localType.getSuperclass();
+			}
+
+			transformations = Collections.unmodifiableSet(typeTransformations);
+		}
+
+		private void addValidators(final Map<PropertyKey, Set<PropertyValidator>> validatorMap) {
+
+			for (Entry<PropertyKey, Set<PropertyValidator>> entry : validatorMap.entrySet()) {
+
+				Set<PropertyValidator> keyValidators = validators.get(entry.getKey());
+				if (keyValidators == null) {
+
+					keyValidators = new LinkedHashSet<PropertyValidator>();
+					validators.put(entry.getKey(), keyValidators);
+				}
+
+				keyValidators.addAll(entry.getValue());
+			}
+		}
+
+		private void addPropertyGroups(final Map<String, PropertyGroup> groupMap) {
+
+			for (Entry<String, PropertyGroup> entry : groupMap.entrySet()) {
+
+				if (!propertyGroups.containsKey(entry.getKey())) {
+					propertyGroups.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+	}
 }
@@ -103,6 +103,34 @@ public class Services {
 	public static final String JSON_OUTPUT_DEPTH  = "json.depth";
 	public static final String JSON_INDENTATION   = "json.indentation";
 	
+	// modules
+	public static final String MODULE_SCAN_THREADS   = "modules.scan.threads";
+	public static final String MODULE_SCAN_INDEX     = "modules.scan.index";
+	
+	// caching
+	public static final String NODE_CACHE_MAX_WEIGHT = "nodecache.maxweight";
+	public static final String NODE_CACHE_SHARED     = "nodecache.shared";
+	
+	// transactions
+	public static final String TRANSACTION_GROUP_COMMIT        = "transaction.groupcommit";
+	public static final String TRANSACTION_GROUP_COMMIT_SIZE   = "transaction.groupcommit.size";
+	public static final String TRANSACTION_GROUP_COMMIT_WINDOW = "transaction.groupcommit.window";
+	
+	// search
+	public static final String SEARCH_CONCURRENT  = "search.concurrent";
+	public static final String INDEX_PER_TYPE     = "index.pertype";
+	public static final String INDEX_DEFERRED     = "index.deferred";
+	
+	// cypher
+	public static final String CYPHER_RESULT_CACHE_MAX_WEIGHT = "cypher.resultcache.maxweight";
+	
+	// sessions
+	public static final String SESSION_TIMEOUT       = "session.timeout";
+	public static final String SESSION_PERSIST_ASYNC = "session.persist.async";
+	
+	// bulk operations
+	public static final String BULK_THREADS       = "bulk.threads";
+	
 	// geocoding
 	public static final String GEOCODING_PROVIDER = "geocoding.provider";
 	public static final String GEOCODING_LANGUAGE = "geocoding.language";
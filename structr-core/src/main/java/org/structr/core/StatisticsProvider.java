@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core;
+
+import java.util.Map;
+
+/**
+ * A source of runtime statistics (cache hit rates, lock wait times etc.)
+ * that can be exposed via the maintenance resource.
+ *
+ * @author Christian Morgner
+ */
+public interface StatisticsProvider {
+
+	/**
+	 * Returns the current statistics of this provider.
+	 *
+	 * @return a map of statistic names to values
+	 */
+	public Map<String, Object> getStatistics();
+}
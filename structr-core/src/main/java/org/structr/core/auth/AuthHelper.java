@@ -28,6 +28,8 @@ import org.structr.core.Services;
 import org.structr.core.auth.exception.AuthenticationException;
 import org.structr.core.entity.Principal;
 import org.structr.core.entity.SuperUser;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.graph.search.Search;
 import org.structr.core.graph.search.SearchAttribute;
 import org.structr.core.graph.search.SearchNodeCommand;
@@ -36,6 +38,9 @@ import org.structr.core.graph.search.SearchNodeCommand;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang.StringUtils;
@@ -57,6 +62,19 @@ public class AuthHelper {
 	private static final String STANDARD_ERROR_MSG = "Wrong username or password, or user is blocked. Check caps lock. Note: Username is case sensitive!";
 	private static final Logger logger             = Logger.getLogger(AuthHelper.class.getName());
 
+	// session ids are written in order, by a single background thread
+	private static final ExecutorService sessionWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable r) {
+
+			Thread thread = new Thread(r, "SessionWriter");
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	});
+
 	//~--- get methods ----------------------------------------------------
 
 	/**
@@ -203,14 +221,30 @@ public class AuthHelper {
 	/**
 	 * Find a {@link Principal} for the given session id
 	 * 
+	 * Session ids are resolved by the {@link SessionRegistry}, the index
+	 * is only searched for session ids the registry does not know yet.
+	 * 
 	 * @param sessionId
 	 * @return 
 	 */
 	public static Principal getPrincipalForSessionId(final String sessionId) {
 
-		Principal user                  = null;
+		SessionRegistry registry = SessionRegistry.getInstance();
+
+		if (sessionId == null || registry.isAnonymous(sessionId)) {
+
+			return null;
+		}
+
+		Principal user = registry.get(sessionId);
+		if (user != null) {
+
+			return user;
+		}
+
 		List<SearchAttribute> attrs     = new LinkedList<SearchAttribute>();
 		SecurityContext securityContext = SecurityContext.getSuperUserInstance();
+		long generation                 = registry.getGeneration();
 
 		attrs.add(Search.andExactProperty(securityContext, Principal.sessionId, sessionId));
 		attrs.add(Search.andExactTypeAndSubtypes(Principal.class));
@@ -224,12 +258,15 @@ public class AuthHelper {
 
 				user = (Principal) results.get(0);
 
-				if ((user != null) && sessionId.equals(user.getProperty(Principal.sessionId))) {
+				if ((user != null) && !sessionId.equals(user.getProperty(Principal.sessionId))) {
 
-					return user;
+					user = null;
 				}
 
 			}
+
+			registry.register(sessionId, user, generation);
+
 		} catch (FrameworkException fex) {
 
 			logger.log(Level.WARNING, "Error while executing SearchNodeCommand", fex);
@@ -240,6 +277,76 @@ public class AuthHelper {
 
 	}
 
+	/**
+	 * Stores the given session id in the given {@link Principal}, or
+	 * removes the principal's session id if sessionId is null.
+	 * 
+	 * The {@link SessionRegistry} is updated immediately and trusts the
+	 * new session id until it is stored. If asynchronous persistence is
+	 * enabled, the principal is modified in a background thread, otherwise
+	 * in a new transaction before this method returns.
+	 * 
+	 * @param principal
+	 * @param sessionId
+	 * @throws FrameworkException 
+	 */
+	public static void setSessionId(final Principal principal, final String sessionId) throws FrameworkException {
+
+		final SessionRegistry registry = SessionRegistry.getInstance();
+		String previousSessionId       = principal.getProperty(Principal.sessionId);
+
+		registry.logout(previousSessionId);
+		registry.login(sessionId, principal);
+
+		final StructrTransaction transaction = new StructrTransaction() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+
+				principal.setProperty(Principal.sessionId, sessionId);
+				return null;
+			}
+		};
+
+		if (Boolean.parseBoolean(Services.getConfigurationValue(Services.SESSION_PERSIST_ASYNC, "false"))) {
+
+			sessionWriter.submit(new Runnable() {
+
+				@Override
+				public void run() {
+
+					boolean success = false;
+
+					try {
+						Services.command(SecurityContext.getSuperUserInstance(), TransactionCommand.class).execute(transaction);
+						success = true;
+
+					} catch (Throwable t) {
+
+						logger.log(Level.WARNING, "Unable to store session id of principal {0}: {1}", new Object[] { principal, t.getMessage() });
+
+					} finally {
+
+						registry.loginPersisted(sessionId, success);
+					}
+				}
+			});
+
+		} else {
+
+			boolean success = false;
+
+			try {
+				Services.command(SecurityContext.getSuperUserInstance(), TransactionCommand.class).execute(transaction);
+				success = true;
+
+			} finally {
+
+				registry.loginPersisted(sessionId, success);
+			}
+		}
+	}
+
 	public static String getHash(final String password, final String salt) {
 		
 		if (StringUtils.isEmpty(salt)) {
@@ -0,0 +1,330 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.auth;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.structr.common.SecurityContext;
+import org.structr.core.Services;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.EntityCache;
+import org.structr.core.graph.GraphDatabaseCommand;
+import org.structr.core.graph.NodeFactory;
+
+/**
+ * In-memory index of session ids and the {@link Principal}s they belong to.
+ *
+ * The registry is kept up to date by listening to committed transactions
+ * that modify {@link Principal#sessionId}, so it reflects every write,
+ * no matter where it comes from. Unknown session ids are remembered as
+ * well, so anonymous sessions do not cause an index lookup on every
+ * request; as they can be chosen freely by clients, only a bounded number
+ * of them is kept. Entries that were not accessed within the configured
+ * timeout are evicted, the next access falls back to the index again.
+ *
+ * Sessions registered by {@link #login} are trusted until the write of
+ * the session id has completed, see {@link #loginPersisted}.
+ *
+ * @author Christian Morgner
+ */
+public class SessionRegistry implements TransactionEventHandler<Object> {
+
+	private static final Logger logger             = Logger.getLogger(SessionRegistry.class.getName());
+	private static final SessionRegistry instance  = new SessionRegistry();
+	private static final int MAX_ANONYMOUS         = 10000;
+
+	private final EntityCache<String, Boolean> anonymousSessions = new EntityCache<String, Boolean>(MAX_ANONYMOUS);
+	private final ConcurrentMap<String, SessionEntry> sessions   = new ConcurrentHashMap<String, SessionEntry>();
+	private final AtomicLong generation                          = new AtomicLong(0);
+	private final AtomicLong lastEviction                        = new AtomicLong(System.currentTimeMillis());
+	private final AtomicLong misses                              = new AtomicLong(0);
+	private final AtomicLong hits                                = new AtomicLong(0);
+
+	private SessionRegistry() {}
+
+	public static SessionRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the principal for the given session id, or null if the
+	 * session id is not registered.
+	 */
+	public Principal get(final String sessionId) {
+
+		evictExpiredSessions();
+
+		SessionEntry entry = sessions.get(sessionId);
+		if (entry != null) {
+
+			entry.touch();
+
+			try {
+
+				Node node           = Services.command(SecurityContext.getSuperUserInstance(), GraphDatabaseCommand.class).execute().getNodeById(entry.nodeId);
+				Principal principal = (Principal) new NodeFactory(SecurityContext.getSuperUserInstance()).instantiate(node);
+
+				// the session id of a pending login is not stored yet
+				if (principal != null && (entry.pending || sessionId.equals(principal.getProperty(Principal.sessionId)))) {
+
+					hits.incrementAndGet();
+
+					return principal;
+				}
+
+			} catch (Throwable t) {
+
+				logger.log(Level.FINE, "Principal for session {0} not found: {1}", new Object[] { sessionId, t.getMessage() });
+			}
+
+			sessions.remove(sessionId, entry);
+		}
+
+		misses.incrementAndGet();
+
+		return null;
+	}
+
+	/**
+	 * Returns true if the given session id is known not to belong to any
+	 * principal.
+	 */
+	public boolean isAnonymous(final String sessionId) {
+
+		if (anonymousSessions.get(sessionId) != null) {
+
+			hits.incrementAndGet();
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the current generation of the registry, which changes with
+	 * every committed modification of a session id.
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Registers the result of an index lookup. Unknown session ids are
+	 * only stored if no session id was modified since the lookup started.
+	 */
+	public void register(final String sessionId, final Principal principal, final long lookupGeneration) {
+
+		if (sessionId == null) {
+			return;
+		}
+
+		if (principal != null) {
+
+			put(sessionId, principal.getId(), false);
+
+		} else if (generation.get() == lookupGeneration) {
+
+			anonymousSessions.put(sessionId, Boolean.TRUE, 1);
+
+			// re-check, a concurrent commit might have registered the session
+			if (generation.get() != lookupGeneration) {
+				anonymousSessions.remove(sessionId);
+			}
+		}
+	}
+
+	/**
+	 * Registers the given session id for the given principal, before the
+	 * modification is committed. The session is trusted without checking
+	 * the principal's session id until {@link #loginPersisted} is called.
+	 */
+	public void login(final String sessionId, final Principal principal) {
+
+		// the superuser is not stored in the database
+		if (sessionId != null && principal != null && principal.getId() >= 0) {
+
+			put(sessionId, principal.getId(), true);
+		}
+	}
+
+	/**
+	 * Indicates that the write of a session id registered by
+	 * {@link #login} has completed. Failed writes remove the session.
+	 */
+	public void loginPersisted(final String sessionId, final boolean success) {
+
+		if (sessionId != null) {
+
+			SessionEntry entry = sessions.get(sessionId);
+			if (entry != null) {
+
+				if (success) {
+
+					entry.pending = false;
+
+				} else {
+
+					sessions.remove(sessionId, entry);
+				}
+			}
+		}
+	}
+
+	public void logout(final String sessionId) {
+
+		if (sessionId != null) {
+
+			sessions.remove(sessionId);
+			anonymousSessions.remove(sessionId);
+		}
+	}
+
+	public void clear() {
+
+		sessions.clear();
+		anonymousSessions.clear();
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		long h                    = hits.get();
+		long m                    = misses.get();
+
+		stats.put("size", sessions.size());
+		stats.put("anonymous", anonymousSessions.getStatistics());
+		stats.put("hits", h);
+		stats.put("misses", m);
+		stats.put("hitRate", (h + m) > 0 ? (double) h / (double) (h + m) : 0.0);
+		stats.put("timeout", getTimeout() / 1000);
+
+		return stats;
+	}
+
+	// ----- interface TransactionEventHandler -----
+	@Override
+	public Object beforeCommit(TransactionData data) throws Exception {
+		return null;
+	}
+
+	@Override
+	public void afterCommit(TransactionData data, Object state) {
+
+		String key = Principal.sessionId.dbName();
+
+		for (PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+
+			if (key.equals(entry.key())) {
+
+				generation.incrementAndGet();
+
+				logout((String) entry.previouslyCommitedValue());
+
+				Object value = entry.value();
+				if (value != null) {
+
+					put(value.toString(), entry.entity().getId(), false);
+				}
+			}
+		}
+
+		for (PropertyEntry<Node> entry : data.removedNodeProperties()) {
+
+			if (key.equals(entry.key())) {
+
+				generation.incrementAndGet();
+
+				logout((String) entry.previouslyCommitedValue());
+			}
+		}
+	}
+
+	@Override
+	public void afterRollback(TransactionData data, Object state) {
+	}
+
+	// ----- private methods -----
+	private void put(final String sessionId, final long nodeId, final boolean pending) {
+
+		anonymousSessions.remove(sessionId);
+		sessions.put(sessionId, new SessionEntry(nodeId, pending));
+	}
+
+	private void evictExpiredSessions() {
+
+		long now     = System.currentTimeMillis();
+		long timeout = getTimeout();
+		long last    = lastEviction.get();
+
+		// check at most once per minute, and only in one thread
+		if (now - last < 60000 || !lastEviction.compareAndSet(last, now)) {
+			return;
+		}
+
+		for (Iterator<SessionEntry> it = sessions.values().iterator(); it.hasNext();) {
+
+			if (now - it.next().lastAccess > timeout) {
+				it.remove();
+			}
+		}
+	}
+
+	private long getTimeout() {
+
+		try {
+			return Long.parseLong(Services.getConfigurationValue(Services.SESSION_TIMEOUT, "1800")) * 1000L;
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid value for {0}, using default", Services.SESSION_TIMEOUT);
+		}
+
+		return 1800000L;
+	}
+
+	// ----- nested classes -----
+	private static class SessionEntry {
+
+		private volatile long lastAccess = 0;
+		private volatile boolean pending = false;
+		private long nodeId              = 0;
+
+		public SessionEntry(final long nodeId, final boolean pending) {
+
+			this.nodeId     = nodeId;
+			this.pending    = pending;
+			this.lastAccess = System.currentTimeMillis();
+		}
+
+		public void touch() {
+			lastAccess = System.currentTimeMillis();
+		}
+	}
+}
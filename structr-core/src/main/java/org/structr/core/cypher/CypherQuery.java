@@ -118,7 +118,22 @@ public class CypherQuery {
 	}
 	
 	public List<GraphObject> execute() throws FrameworkException {
-		return cypherQueryCommand.execute(toString(), getParameters(), includeHiddenAndDeleted, publicOnly);
+
+		// pass variable parts as parameters, so the query text (and
+		// with it the compiled execution plan) can be re-used
+		Map<String, Object> queryParameters = new LinkedHashMap<String, Object>(parameters);
+
+		queryParameters.put("indexQuery", indexQuery.trim());
+
+		if(offset >= 0) {
+			queryParameters.put("offset", offset);
+		}
+
+		if(limit >= 0) {
+			queryParameters.put("limit", limit);
+		}
+
+		return cypherQueryCommand.execute(toString(), queryParameters, includeHiddenAndDeleted, publicOnly);
 	}
 	
 	@Override
@@ -128,9 +143,7 @@ public class CypherQuery {
 		
 		buf.append("START n=node:");
 		buf.append(indexName);
-		buf.append("(\"");
-		buf.append(indexQuery.trim());
-		buf.append("\") ");
+		buf.append("({indexQuery}) ");
 		buf.append("RETURN n");
 		
 		if(sortKey != null) {
@@ -144,11 +157,11 @@ public class CypherQuery {
 		}
 		
 		if(offset >= 0) {
-			buf.append(" SKIP ").append(offset);
+			buf.append(" SKIP {offset}");
 		}
 		
 		if(limit >= 0) {
-			buf.append(" LIMIT ").append(limit);
+			buf.append(" LIMIT {limit}");
 		}
 		
 		return buf.toString();
@@ -873,25 +873,65 @@ public abstract class AbstractNode implements GraphObject, Comparable<AbstractNo
 			return true;
 		}
 
-		SecurityRelationship r = getSecurityRelationship(principal);
+		// don't use cached decisions while permissions are being modified
+		boolean useCache  = !TransactionCommand.permissionsModified();
+		long currentEpoch = PermissionCache.getEpoch();
 
-		if ((r != null) && r.isAllowed(permission)) {
+		if (useCache) {
+
+			Boolean cached = PermissionCache.getDecision(getId(), permission, principal);
+			if (cached != null) {
+
+				return cached;
+			}
+		}
+
+		boolean granted = isGrantedForPrincipalClosure(permission, useCache ? PermissionCache.getPrincipalClosure(principal) : PermissionCache.computePrincipalClosure(principal));
+
+		if (useCache) {
+
+			PermissionCache.storeDecision(currentEpoch, getId(), permission, principal, granted);
+		}
+
+		return granted;
+
+	}
+
+	/**
+	 * Checks the given permission for a set of principal ids (a principal
+	 * and all of its parent groups) with a single pass over the incoming
+	 * security relationships of this node.
+	 */
+	private boolean isGrantedForPrincipalClosure(final Permission permission, final Set<Long> principalIds) {
+
+		// groups have full control over their own node
+		if (principalIds.contains(getId())) {
 
 			return true;
 		}
 
-		// Now check possible parent principals
-		for (Principal parent : principal.getParents()) {
+		RelationshipFactory<AbstractRelationship> factory = new RelationshipFactory<AbstractRelationship>(securityContext);
 
-			if (isGranted(permission, parent)) {
+		for (Relationship rel : dbNode.getRelationships(RelType.SECURITY, Direction.INCOMING)) {
 
-				return true;
-			}
+			if (principalIds.contains(rel.getStartNode().getId())) {
+
+				try {
+
+					AbstractRelationship r = factory.instantiate(rel);
+					if (r instanceof SecurityRelationship && ((SecurityRelationship) r).isAllowed(permission)) {
+
+						return true;
+					}
 
+				} catch (FrameworkException fex) {
+
+					logger.log(Level.WARNING, "Unable to instantiate security relationship", fex);
+				}
+			}
 		}
 
 		return false;
-
 	}
 
 	@Override
@@ -1120,7 +1160,23 @@ public abstract class AbstractNode implements GraphObject, Comparable<AbstractNo
 
 		}
 
+		String previousType = AbstractNode.type.equals(key) ? getType() : null;
+
 		key.setProperty(securityContext, this, value);
+
+		// node must move to the per-type indices of its new type
+		if (previousType != null && !previousType.equals(value)) {
+
+			for (Index<Node> index : Services.getService(NodeService.class).getTypeIndices(previousType)) {
+
+				synchronized (index) {
+
+					index.remove(dbNode);
+				}
+			}
+
+			addToIndex();
+		}
 	}
 
 //	public void setOwner(final AbstractNode owner) {
@@ -1159,7 +1215,7 @@ public abstract class AbstractNode implements GraphObject, Comparable<AbstractNo
 	@Override
 	public void removeFromIndex() {
 		
-		for (Index<Node> index : Services.getService(NodeService.class).getNodeIndices()) {
+		for (Index<Node> index : getIndices()) {
 			
 			synchronized (index) {
 				
@@ -1170,7 +1226,7 @@ public abstract class AbstractNode implements GraphObject, Comparable<AbstractNo
 	
 	public void removeFromIndex(PropertyKey key) {
 		
-		for (Index<Node> index : Services.getService(NodeService.class).getNodeIndices()) {
+		for (Index<Node> index : getIndices()) {
 			
 			synchronized (index) {
 				
@@ -1178,6 +1234,16 @@ public abstract class AbstractNode implements GraphObject, Comparable<AbstractNo
 			}
 		}
 	}
+
+	private List<Index<Node>> getIndices() {
+
+		NodeService nodeService   = Services.getService(NodeService.class);
+		List<Index<Node>> indices = new LinkedList<Index<Node>>(nodeService.getNodeIndices());
+
+		indices.addAll(nodeService.getTypeIndices(getType()));
+
+		return indices;
+	}
 	
 	@Override
 	public void indexPassiveProperties() {
@@ -46,6 +46,7 @@ import org.structr.core.property.StringProperty;
 import org.structr.core.EntityContext;
 import org.structr.core.Services;
 import org.structr.core.graph.DeleteRelationshipCommand;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.property.ArrayProperty;
 
 //~--- classes ----------------------------------------------------------------
@@ -181,6 +182,11 @@ public class SecurityRelationship extends AbstractRelationship {
 
 		dbRelationship.setProperty(SecurityRelationship.allowed.dbName(), allowed);
 
+		// notify transaction so that cached permission decisions are invalidated
+		if (TransactionCommand.inTransaction()) {
+			TransactionCommand.relationshipModified(this, SecurityRelationship.allowed, null);
+		}
+
 	}
 	
 	public String[] getPermissions() {
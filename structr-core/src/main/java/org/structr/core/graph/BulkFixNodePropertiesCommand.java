@@ -150,7 +150,7 @@ public class BulkFixNodePropertiesCommand extends NodeServiceCommand implements
 						public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
 							t.printStackTrace();
 						}
-					});
+					}, true, getBulkThreads(attributes));
 					
 					logger.log(Level.INFO, "Fixed {0} nodes", nodeCount);
 					
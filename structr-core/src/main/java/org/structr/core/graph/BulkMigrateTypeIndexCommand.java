@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.tooling.GlobalGraphOperations;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.EntityContext;
+import org.structr.core.Predicate;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+
+/**
+ * Fills the per-type keyword and fulltext indices with the nodes that were
+ * created before per-type indices were enabled (see {@link Services#INDEX_PER_TYPE}).
+ * 
+ * Use 'type' to migrate a single node type. Queries for a type are routed to
+ * its per-type index as soon as the migration of the type is finished. Types
+ * with nodes that could not be indexed stay unmigrated, the command can be
+ * run again for them.
+ *
+ * @author Christian Morgner
+ */
+public class BulkMigrateTypeIndexCommand extends NodeServiceCommand implements MaintenanceCommand {
+
+	private static final Logger logger = Logger.getLogger(BulkMigrateTypeIndexCommand.class.getName());
+
+	@Override
+	public void execute(Map<String, Object> attributes) throws FrameworkException {
+
+		final NodeService nodeService          = Services.getService(NodeService.class);
+		final GraphDatabaseService graphDb     = (GraphDatabaseService) arguments.get("graphDb");
+		final SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
+		final NodeFactory nodeFactory          = new NodeFactory(superUserContext);
+		final Set<String> types                = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final Set<String> failedTypes          = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final String entityType                = (String) attributes.get("type");
+
+		if (!nodeService.isTypeIndexEnabled()) {
+
+			logger.log(Level.WARNING, "Per-type indices are disabled, set {0} = true to enable them.", Services.INDEX_PER_TYPE);
+
+			return;
+		}
+
+		String typeName = null;
+		if (entityType != null) {
+
+			Class type = EntityContext.getEntityClassForRawType(entityType);
+			if (type == null) {
+
+				logger.log(Level.WARNING, "No entity class found for type {0}", entityType);
+
+				return;
+			}
+
+			typeName = type.getSimpleName();
+			types.add(typeName);
+		}
+
+		final String filterType = typeName;
+
+		final Iterable<AbstractNode> nodes = new InstantiatingIterable<Node, AbstractNode>(superUserContext, nodeFactory, GlobalGraphOperations.at(graphDb).getAllNodes(), new Predicate<Node>() {
+
+			@Override
+			public boolean evaluate(SecurityContext securityContext, Node... nodes) {
+
+				Object type = nodes[0].getProperty(AbstractNode.type.dbName(), null);
+
+				return type != null && (filterType == null || filterType.equals(type));
+			}
+		});
+
+		logger.log(Level.INFO, "Starting migration of per-type indices");
+
+		long count = bulkGraphOperation(securityContext, nodes, 1000, "MigrateTypeIndex", new BulkGraphOperation<AbstractNode>() {
+
+			@Override
+			public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
+
+				// writes the global and the per-type indices
+				node.updateInIndex();
+
+				types.add(node.getType());
+			}
+
+			@Override
+			public void handleThrowable(SecurityContext securityContext, Throwable t, AbstractNode node) {
+
+				logger.log(Level.WARNING, "Unable to index node {0}: {1}", new Object[] { node, t.getMessage() });
+
+				failedTypes.add(node.getType());
+			}
+
+			@Override
+			public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
+
+				logger.log(Level.WARNING, "Unable to index node: {0}", t.getMessage());
+			}
+
+		}, true, getBulkThreads(attributes));
+
+		// nodes created meanwhile were written to the per-type indices already
+		Services.command(superUserContext, TransactionCommand.class).execute(new StructrTransaction() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+
+				for (String type : types) {
+
+					// failed batches are rolled back, so check the index itself as well
+					if (!failedTypes.contains(type) && nodeService.containsAllNodesOfType(type)) {
+
+						nodeService.setTypeIndexComplete(type);
+
+					} else {
+
+						failedTypes.add(type);
+					}
+				}
+
+				return null;
+			}
+		});
+
+		if (!failedTypes.isEmpty()) {
+			logger.log(Level.WARNING, "Migration of types {0} is incomplete, queries for them still use the global indices", failedTypes);
+		}
+
+		logger.log(Level.INFO, "Migrated {0} nodes of {1} types", new Object[] { count, types.size() - failedTypes.size() });
+	}
+}
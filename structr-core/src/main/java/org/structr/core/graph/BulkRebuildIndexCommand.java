@@ -21,20 +21,19 @@
 package org.structr.core.graph;
 
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.tooling.GlobalGraphOperations;
 
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.EntityContext;
-import org.structr.core.Result;
-import org.structr.core.Services;
+import org.structr.core.Predicate;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,6 +45,11 @@ import java.util.logging.Logger;
  *
  * Use 'type' argument for node type, and 'relType' for relationship type.
  *
+ * The database is iterated without instantiating objects of other types,
+ * and objects are indexed in parallel batches. Use 'threads' to set the
+ * number of worker threads, and 'startNodeId' / 'startRelId' to resume
+ * an interrupted rebuild at the checkpoint from the log output.
+ *
  * @author Axel Morgner
  */
 public class BulkRebuildIndexCommand extends NodeServiceCommand implements MaintenanceCommand {
@@ -63,24 +67,29 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 		final SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
 		final NodeFactory nodeFactory          = new NodeFactory(superUserContext);
 		final RelationshipFactory relFactory   = new RelationshipFactory(superUserContext);
+		final long startNodeId                 = getLong(attributes, "startNodeId", 0L);
+		final long startRelId                  = getLong(attributes, "startRelId", 0L);
+		final int threads                      = getBulkThreads(attributes);
 
 		Class type = null;
 		if (entityType != null) {
 
 			type = EntityContext.getEntityClassForRawType(entityType);
 		}
-		// final Result<AbstractNode> result = Services.command(securityContext, SearchNodeCommand.class).execute(true, false, Search.andExactType(type.getSimpleName()));
-		final Result<AbstractNode> result = nodeFactory.instantiateAll(GlobalGraphOperations.at(graphDb).getAllNodes());
-		final List<AbstractNode> nodes    = new ArrayList<AbstractNode>();
 
-		for (AbstractNode node : result.getResults()) {
+		final String typeName = type != null ? type.getSimpleName() : null;
 
-			if (type == null || node.getClass().equals(type)) {
+		// check type before instantiation, so that only matching nodes are created
+		final Iterable<AbstractNode> nodes = new InstantiatingIterable<Node, AbstractNode>(superUserContext, nodeFactory, GlobalGraphOperations.at(graphDb).getAllNodes(), new Predicate<Node>() {
 
-				nodes.add(node);
-			}
+			@Override
+			public boolean evaluate(SecurityContext securityContext, Node... nodes) {
 
-		}
+				Node node = nodes[0];
+
+				return node.getId() >= startNodeId && (typeName == null || typeName.equals(node.getProperty(AbstractNode.type.dbName(), null)));
+			}
+		});
 
 		if (type == null) {
 	
@@ -112,22 +121,20 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 
 			}
 
-		});
+		}, true, threads);
 
 		logger.log(Level.INFO, "Done with (re-)indexing {0} nodes", count);
 
-		// final Result<AbstractNode> result = Services.command(securityContext, SearchNodeCommand.class).execute(true, false, Search.andExactType(type.getSimpleName()));
-		final List<AbstractRelationship> unfilteredRels = relFactory.instantiate(GlobalGraphOperations.at(graphDb).getAllRelationships());
-		final List<AbstractRelationship> rels           = new ArrayList<AbstractRelationship>();
+		final Iterable<AbstractRelationship> rels = new InstantiatingIterable<Relationship, AbstractRelationship>(superUserContext, relFactory, GlobalGraphOperations.at(graphDb).getAllRelationships(), new Predicate<Relationship>() {
 
-		for (AbstractRelationship rel : unfilteredRels) {
+			@Override
+			public boolean evaluate(SecurityContext securityContext, Relationship... rels) {
 
-			if (relType == null || rel.getType().equals(relType)) {
+				Relationship rel = rels[0];
 
-				rels.add(rel);
+				return rel.getId() >= startRelId && (relType == null || relType.equals(rel.getType().name()));
 			}
-
-		}
+		});
 
 		if (relType == null) {
 
@@ -160,7 +167,7 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 
 			}
 
-		});
+		}, true, threads);
 
 		logger.log(Level.INFO, "Done with (re-)indexing {0} relationships", count);
 
@@ -169,4 +176,26 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 
 	}
 
+	private long getLong(final Map<String, Object> attributes, final String key, final long defaultValue) {
+
+		Object value = attributes.get(key);
+
+		if (value instanceof Number) {
+
+			return ((Number) value).longValue();
+
+		} else if (value != null) {
+
+			try {
+				return Long.parseLong(value.toString());
+
+			} catch (NumberFormatException nfex) {
+
+				logger.log(Level.WARNING, "Invalid value for {0}: {1}", new Object[] { key, value });
+			}
+		}
+
+		return defaultValue;
+	}
+
 }
@@ -68,7 +68,11 @@ public class BulkSetNodePropertiesCommand extends NodeServiceCommand implements
 		final SearchNodeCommand searchNode     = Services.command(superUserContext, SearchNodeCommand.class);
 		
 		
-		String type                      = null;
+		final int threads                      = getBulkThreads(properties);
+		String type                            = null;
+
+		// "threads" is a parameter, not a property to set
+		properties.remove("threads");
 		
 		if (graphDb != null) {
 
@@ -152,7 +156,7 @@ public class BulkSetNodePropertiesCommand extends NodeServiceCommand implements
 				public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
 					logger.log(Level.WARNING, "Unable to set node properties: {0}", t.getMessage() );
 				}
-			});
+			}, true, threads);
 
 
 			logger.log(Level.INFO, "Fixed {0} nodes ...", nodeCount);
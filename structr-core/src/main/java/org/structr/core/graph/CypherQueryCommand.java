@@ -21,24 +21,15 @@
 package org.structr.core.graph;
 
 import org.neo4j.cypher.javacompat.ExecutionEngine;
-import org.neo4j.cypher.javacompat.ExecutionResult;
-import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
 
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
-import org.structr.core.entity.AbstractNode;
-import org.structr.core.entity.AbstractRelationship;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.logging.Logger;
-import org.structr.core.GraphObjectMap;
-import org.structr.core.property.GenericProperty;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -69,66 +60,40 @@ public class CypherQueryCommand extends NodeServiceCommand {
 	}
 	
 	public List<GraphObject> execute(String query, Map<String, Object> parameters, boolean includeHiddenAndDeleted, boolean publicOnly) throws FrameworkException {
+		return execute(query, parameters, includeHiddenAndDeleted, publicOnly, false).getResults();
+	}
 
-		ExecutionEngine     engine      = (ExecutionEngine) arguments.get("cypherExecutionEngine");
-		RelationshipFactory relFactory  = new RelationshipFactory(securityContext);
-		NodeFactory nodeFactory         = new NodeFactory(securityContext);
-
-		List<GraphObject> resultList = new LinkedList<GraphObject>();
-		ExecutionResult result       = null;
-
-		if (parameters != null) {
-
-			result = engine.execute(query, parameters);
-			
-		} else {
-			
-			result = engine.execute(query);
-		}
-
-		for (Map<String, Object> row : result) {
-
-			GraphObjectMap dummyObject = null;
-			
-			for (Entry<String, Object> entry : row.entrySet()) {
-				
-				String key   = entry.getKey();
-				Object value = entry.getValue();
-			
-				if (value instanceof Node) {
-
-					AbstractNode node = nodeFactory.instantiate((Node) value, includeHiddenAndDeleted, publicOnly);
-
-					if (node != null) {
-
-						resultList.add(node);
-					}
+	/**
+	 * Executes the given query and returns a lazily converted result. If
+	 * cached is true, the result rows are taken from the
+	 * {@link CypherResultCache} when the query was already executed since
+	 * the last commit.
+	 */
+	public CypherResult execute(String query, Map<String, Object> parameters, boolean includeHiddenAndDeleted, boolean publicOnly, boolean cached) throws FrameworkException {
+		return new CypherResult(securityContext, getRows(query, parameters, cached), includeHiddenAndDeleted, publicOnly);
+	}
 
-				} else if (value instanceof Relationship) {
+	/**
+	 * Executes the given query and returns the raw result rows.
+	 */
+	public Iterable<Map<String, Object>> getRows(String query, Map<String, Object> parameters, boolean cached) throws FrameworkException {
 
-					AbstractRelationship rel = relFactory.instantiate((Relationship) value);
+		ExecutionEngine engine = (ExecutionEngine) arguments.get("cypherExecutionEngine");
 
-					if (rel != null) {
+		// queries may use the index
+		TransactionCommand.applyDeferredIndexing();
 
-						resultList.add(rel);
-					}
+		if (cached) {
 
-				} else {
-					
-					if (dummyObject == null) {
-						
-						dummyObject = new GraphObjectMap();
-						resultList.add(dummyObject);
-					}
-						
-					dummyObject.setProperty(new GenericProperty(key), value);
-				}
+			return CypherResultCache.getInstance().execute(engine, query, parameters);
+		}
 
-			}
+		if (parameters != null) {
 
+			return engine.execute(query, parameters);
 		}
 
-		return resultList;
+		return engine.execute(query);
 	}
 
 }
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.GraphObjectMap;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.property.GenericProperty;
+
+/**
+ * The result of a Cypher query, converted lazily into {@link GraphObject}s.
+ *
+ * Nodes and relationships are instantiated when the iteration reaches the
+ * row that contains them, so iterating over the first page of a large
+ * result does not instantiate the remaining rows. All other values of a
+ * row are collected in a {@link GraphObjectMap}.
+ *
+ * @author Christian Morgner
+ */
+public class CypherResult implements Iterable<GraphObject> {
+
+	private static final Logger logger = Logger.getLogger(CypherResult.class.getName());
+
+	private Iterable<Map<String, Object>> rows = null;
+	private RelationshipFactory relFactory     = null;
+	private NodeFactory nodeFactory            = null;
+	private boolean includeHiddenAndDeleted    = false;
+	private boolean publicOnly                 = false;
+
+	public CypherResult(final SecurityContext securityContext, final Iterable<Map<String, Object>> rows, final boolean includeHiddenAndDeleted, final boolean publicOnly) {
+
+		this.rows                    = rows;
+		this.relFactory              = new RelationshipFactory(securityContext);
+		this.nodeFactory             = new NodeFactory(securityContext);
+		this.includeHiddenAndDeleted = includeHiddenAndDeleted;
+		this.publicOnly              = publicOnly;
+	}
+
+	/**
+	 * Returns the given page of this result, instantiating only the objects
+	 * up to the end of the page. Pages start at 1, a page size of 0 or less
+	 * returns the whole result.
+	 */
+	public List<GraphObject> getPage(final int pageSize, final int page) {
+
+		List<GraphObject> resultList = new LinkedList<GraphObject>();
+		int offset                   = pageSize > 0 ? Math.max(0, page - 1) * pageSize : 0;
+		int count                    = 0;
+
+		for (GraphObject obj : this) {
+
+			if (pageSize > 0 && count >= offset + pageSize) {
+				break;
+			}
+
+			if (count++ >= offset) {
+				resultList.add(obj);
+			}
+		}
+
+		return resultList;
+	}
+
+	public List<GraphObject> getResults() {
+		return getPage(0, 0);
+	}
+
+	// ----- interface Iterable<GraphObject> -----
+	@Override
+	public Iterator<GraphObject> iterator() {
+
+		final Iterator<Map<String, Object>> rowIterator = rows.iterator();
+
+		return new Iterator<GraphObject>() {
+
+			private LinkedList<GraphObject> buffer = new LinkedList<GraphObject>();
+
+			@Override
+			public boolean hasNext() {
+
+				while (buffer.isEmpty() && rowIterator.hasNext()) {
+					convert(rowIterator.next(), buffer);
+				}
+
+				return !buffer.isEmpty();
+			}
+
+			@Override
+			public GraphObject next() {
+
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				return buffer.removeFirst();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Removal not supported.");
+			}
+		};
+	}
+
+	// ----- private methods -----
+	private void convert(final Map<String, Object> row, final List<GraphObject> objects) {
+
+		GraphObjectMap dummyObject = null;
+
+		for (Entry<String, Object> entry : row.entrySet()) {
+
+			String key   = entry.getKey();
+			Object value = entry.getValue();
+
+			try {
+
+				if (value instanceof Node) {
+
+					AbstractNode node = nodeFactory.instantiate((Node) value, includeHiddenAndDeleted, publicOnly);
+
+					if (node != null) {
+
+						objects.add(node);
+					}
+
+				} else if (value instanceof Relationship) {
+
+					AbstractRelationship rel = relFactory.instantiate((Relationship) value);
+
+					if (rel != null) {
+
+						objects.add(rel);
+					}
+
+				} else {
+
+					if (dummyObject == null) {
+
+						dummyObject = new GraphObjectMap();
+						objects.add(dummyObject);
+					}
+
+					dummyObject.setProperty(new GenericProperty(key), value);
+				}
+
+			} catch (FrameworkException fex) {
+
+				logger.log(Level.WARNING, "Unable to convert value of column {0}: {1}", new Object[] { key, fex.getMessage() });
+			}
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.neo4j.cypher.javacompat.ExecutionEngine;
+import org.neo4j.cypher.javacompat.ExecutionResult;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.structr.core.Services;
+
+/**
+ * Cache for the raw result rows of Cypher queries.
+ *
+ * Entries are keyed by the query text and its parameters and are valid
+ * for one transaction epoch only, i.e. until the next transaction is
+ * committed. The rows contain database nodes and relationships, not
+ * instantiated entities, so a cached result can be shared between
+ * different security contexts; visibility is checked when the rows are
+ * converted (see {@link CypherResult}).
+ *
+ * Queries that are executed inside a transaction are never cached,
+ * because they might see uncommitted modifications.
+ *
+ * @author Christian Morgner
+ */
+public class CypherResultCache implements TransactionEventHandler<Object> {
+
+	private static final Logger logger               = Logger.getLogger(CypherResultCache.class.getName());
+	private static final CypherResultCache instance  = new CypherResultCache();
+
+	private final AtomicLong epoch                   = new AtomicLong(0);
+	private final EntityCache<String, CachedResult> results;
+
+	private CypherResultCache() {
+
+		// weight is the number of rows, default is 100000 rows
+		long maxWeight = 100000;
+
+		try {
+			maxWeight = Long.parseLong(Services.getConfigurationValue(Services.CYPHER_RESULT_CACHE_MAX_WEIGHT, Long.toString(maxWeight)));
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid value for {0}, using default", Services.CYPHER_RESULT_CACHE_MAX_WEIGHT);
+		}
+
+		results = new EntityCache<String, CachedResult>(maxWeight);
+	}
+
+	public static CypherResultCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the result rows of the given query, executing it only if
+	 * there is no cached result for the current epoch.
+	 */
+	public Iterable<Map<String, Object>> execute(final ExecutionEngine engine, final String query, final Map<String, Object> parameters) {
+
+		if (TransactionCommand.inTransaction()) {
+			return executeQuery(engine, query, parameters);
+		}
+
+		String key          = getKey(query, parameters);
+		long currentEpoch   = epoch.get();
+		CachedResult cached = results.get(key);
+
+		if (cached != null && cached.epoch == currentEpoch) {
+			return cached.rows;
+		}
+
+		List<Map<String, Object>> rows = materialize(executeQuery(engine, query, parameters));
+
+		// do not store results that might be outdated already
+		if (epoch.get() == currentEpoch) {
+
+			results.put(key, new CachedResult(rows, currentEpoch), rows.size());
+		}
+
+		return rows;
+	}
+
+	public long getEpoch() {
+		return epoch.get();
+	}
+
+	public void clear() {
+		results.clear();
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>(results.getStatistics());
+
+		stats.put("epoch", epoch.get());
+
+		return stats;
+	}
+
+	// ----- interface TransactionEventHandler -----
+	@Override
+	public Object beforeCommit(TransactionData data) throws Exception {
+		return null;
+	}
+
+	@Override
+	public void afterCommit(TransactionData data, Object state) {
+
+		// entries of older epochs are removed lazily
+		epoch.incrementAndGet();
+	}
+
+	@Override
+	public void afterRollback(TransactionData data, Object state) {
+	}
+
+	// ----- private methods -----
+	private String getKey(final String query, final Map<String, Object> parameters) {
+
+		StringBuilder buf = new StringBuilder(query);
+
+		if (parameters != null) {
+
+			buf.append('\u0000');
+			buf.append(parameters.toString());
+		}
+
+		return buf.toString();
+	}
+
+	private ExecutionResult executeQuery(final ExecutionEngine engine, final String query, final Map<String, Object> parameters) {
+
+		if (parameters != null) {
+
+			return engine.execute(query, parameters);
+		}
+
+		return engine.execute(query);
+	}
+
+	private List<Map<String, Object>> materialize(final Iterable<Map<String, Object>> result) {
+
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+
+		for (Map<String, Object> row : result) {
+			rows.add(Collections.unmodifiableMap(new LinkedHashMap<String, Object>(row)));
+		}
+
+		return Collections.unmodifiableList(rows);
+	}
+
+	// ----- nested classes -----
+	private static class CachedResult {
+
+		private List<Map<String, Object>> rows = null;
+		private long epoch                     = 0;
+
+		public CachedResult(final List<Map<String, Object>> rows, final long epoch) {
+
+			this.rows  = rows;
+			this.epoch = epoch;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent, weight-bounded LRU cache.
+ *
+ * The cache is split into segments with separate locks, each of them
+ * holding an access-ordered map and a share of the maximum weight, so
+ * concurrent lookups of different keys rarely contend. When a segment
+ * exceeds its share of the weight, the least recently used entries of
+ * that segment are evicted.
+ *
+ * @author Christian Morgner
+ */
+public class EntityCache<K, V> {
+
+	private static final int SEGMENT_COUNT = 32;
+
+	private final AtomicLong evictions = new AtomicLong(0);
+	private final AtomicLong misses    = new AtomicLong(0);
+	private final AtomicLong hits      = new AtomicLong(0);
+	private Segment<K, V>[] segments   = null;
+	private volatile long maxWeight    = 0;
+
+	public EntityCache(final long maxWeight) {
+
+		this.segments  = new Segment[SEGMENT_COUNT];
+		this.maxWeight = maxWeight;
+
+		for (int i=0; i<SEGMENT_COUNT; i++) {
+			segments[i] = new Segment<K, V>();
+		}
+	}
+
+	public V get(final K key) {
+
+		V value = getSegment(key).get(key);
+		if (value != null) {
+
+			hits.incrementAndGet();
+
+		} else {
+
+			misses.incrementAndGet();
+		}
+
+		return value;
+	}
+
+	public void put(final K key, final V value, final int weight) {
+
+		if (key != null && value != null) {
+			evictions.addAndGet(getSegment(key).put(key, value, Math.max(1, weight), maxWeight / SEGMENT_COUNT));
+		}
+	}
+
+	public void remove(final K key) {
+
+		if (key != null) {
+			getSegment(key).remove(key);
+		}
+	}
+
+	public void clear() {
+
+		for (Segment<K, V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	public void setMaxWeight(final long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		long weight               = 0;
+		int size                  = 0;
+
+		for (Segment<K, V> segment : segments) {
+
+			synchronized (segment) {
+
+				weight += segment.weight;
+				size   += segment.map.size();
+			}
+		}
+
+		long h = hits.get();
+		long m = misses.get();
+
+		stats.put("size", size);
+		stats.put("weight", weight);
+		stats.put("maxWeight", maxWeight);
+		stats.put("hits", h);
+		stats.put("misses", m);
+		stats.put("hitRate", (h + m) > 0 ? (double) h / (double) (h + m) : 0.0);
+		stats.put("evictions", evictions.get());
+
+		return stats;
+	}
+
+	// ----- private methods -----
+	private Segment<K, V> getSegment(final K key) {
+
+		// spread hash bits, keys are often similar strings
+		int hash = key.hashCode();
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+
+		return segments[(hash & 0x7fffffff) % SEGMENT_COUNT];
+	}
+
+	// ----- nested classes -----
+	private static class Segment<K, V> {
+
+		private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+		private long weight                          = 0;
+
+		public synchronized V get(final K key) {
+
+			Entry<V> entry = map.get(key);
+			if (entry != null) {
+
+				return entry.value;
+			}
+
+			return null;
+		}
+
+		/**
+		 * Stores the given value and returns the number of evicted entries.
+		 */
+		public synchronized int put(final K key, final V value, final int entryWeight, final long maxSegmentWeight) {
+
+			Entry<V> previous = map.put(key, new Entry<V>(value, entryWeight));
+			int evicted       = 0;
+
+			if (previous != null) {
+				weight -= previous.weight;
+			}
+
+			weight += entryWeight;
+
+			// evict least recently used entries, but keep the new one
+			for (Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator(); weight > maxSegmentWeight && map.size() > 1 && it.hasNext();) {
+
+				Map.Entry<K, Entry<V>> eldest = it.next();
+
+				weight -= eldest.getValue().weight;
+				it.remove();
+				evicted++;
+			}
+
+			return evicted;
+		}
+
+		public synchronized void remove(final K key) {
+
+			Entry<V> entry = map.remove(key);
+			if (entry != null) {
+
+				weight -= entry.weight;
+			}
+		}
+
+		public synchronized void clear() {
+
+			map.clear();
+			weight = 0;
+		}
+	}
+
+	private static class Entry<V> {
+
+		private V value    = null;
+		private int weight = 0;
+
+		public Entry(final V value, final int weight) {
+
+			this.value  = value;
+			this.weight = weight;
+		}
+	}
+}
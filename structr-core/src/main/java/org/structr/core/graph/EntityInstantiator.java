@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates node and relationship entities from their default constructors.
+ *
+ * The constructors are resolved once per class and shared by all
+ * factories. Accessibility checks are disabled on resolution, so repeated
+ * invocations are compiled into direct constructor calls by the VM. Classes
+ * that cannot be instantiated are remembered as well, so they are not
+ * probed again for each entity.
+ *
+ * @author Christian Morgner
+ */
+public class EntityInstantiator {
+
+	private static final Logger logger                           = Logger.getLogger(EntityInstantiator.class.getName());
+	private static final Map<Class, Constructor> constructors    = new ConcurrentHashMap<Class, Constructor>();
+	private static final Map<Class, Boolean> uninstantiableTypes = new ConcurrentHashMap<Class, Boolean>();
+
+	/**
+	 * Resolves the default constructor of the given type in advance.
+	 *
+	 * @param type the entity type
+	 * @return whether the type can be instantiated
+	 */
+	public static boolean register(final Class type) {
+		return getConstructor(type) != null;
+	}
+
+	/**
+	 * Forgets all types that could not be instantiated, so they are
+	 * probed again after new classes have been loaded.
+	 */
+	public static void clearUninstantiableTypes() {
+		uninstantiableTypes.clear();
+	}
+
+	/**
+	 * Returns a new instance of the given type, or null if the type cannot
+	 * be instantiated.
+	 *
+	 * @param type the entity type
+	 * @return a new instance or null
+	 */
+	public static <T> T newInstance(final Class<T> type) {
+
+		if (type == null) {
+			return null;
+		}
+
+		Constructor<T> constructor = getConstructor(type);
+		if (constructor != null) {
+
+			try {
+				return constructor.newInstance();
+
+			} catch (Throwable t) {
+
+				// type has a usable constructor, so this is unexpected
+				logger.log(Level.WARNING, "Unable to instantiate " + type.getName(), t);
+			}
+		}
+
+		return null;
+	}
+
+	// ----- private methods -----
+	private static <T> Constructor<T> getConstructor(final Class<T> type) {
+
+		Constructor<T> constructor = constructors.get(type);
+		if (constructor == null && !uninstantiableTypes.containsKey(type)) {
+
+			try {
+
+				if (!Modifier.isAbstract(type.getModifiers()) && !type.isInterface()) {
+
+					constructor = type.getConstructor();
+					constructor.setAccessible(true);
+
+					constructors.put(type, constructor);
+				}
+
+			} catch (Throwable t) {
+
+				logger.log(Level.FINE, "No default constructor for {0}", type.getName());
+			}
+
+			if (constructor == null) {
+				uninstantiableTypes.put(type, Boolean.TRUE);
+			}
+		}
+
+		return constructor;
+	}
+}
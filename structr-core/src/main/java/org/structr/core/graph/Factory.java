@@ -18,6 +18,9 @@
  */
 package org.structr.core.graph;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
@@ -171,17 +174,30 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 
 	// <editor-fold defaultstate="collapsed" desc="private methods">
-	protected List<S> read(final Iterable<S> it) {
+	/**
+	 * Indicates whether every raw object will be instantiated to a
+	 * non-null entity in the current factory profile, i.e. whether
+	 * paging can skip objects without instantiating them first.
+	 *
+	 * @return
+	 */
+	protected boolean isUnfiltered() {
 
-		List<S> nodes = new LinkedList();
+		return factoryProfile.getSecurityContext().isSuperUser() && factoryProfile.includeDeletedAndHidden() && !factoryProfile.publicOnly();
+	}
 
-		while (it.iterator().hasNext()) {
+	/**
+	 * Append the given element and drop the oldest one if the
+	 * deque exceeds the given capacity.
+	 */
+	private static <X> void addBounded(final Deque<X> deque, final X element, final long capacity) {
 
-			nodes.add(it.iterator().next());
-		}
+		deque.addLast(element);
 
-		return nodes;
+		if (deque.size() > capacity) {
 
+			deque.removeFirst();
+		}
 	}
 
 	protected Result resultWithOffsetId(final IndexHits<S> input) throws FrameworkException {
@@ -190,15 +206,18 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		final int pageSize       = Math.min(size, factoryProfile.getPageSize());
 		final int page           = factoryProfile.getPage();
 		final String offsetId    = factoryProfile.getOffsetId();
-		List<T> elements         = new LinkedList<T>();
+		List<T> elements         = new ArrayList<T>();
 		int position             = 0;
 		int count                = 0;
 		int offset               = 0;
 
 		// We have an offsetId, so first we need to
-		// find the node with this uuid to get the offset
-		List<T> nodesUpToOffset = new LinkedList();
-		int i                   = 0;
+		// find the node with this uuid to get the offset.
+		// Positive pages start at the offset node, so only
+		// negative pages need to keep the preceding nodes.
+		Deque<T> nodesUpToOffset = new ArrayDeque<T>();
+		long windowSize          = page > 0 ? 1 : ((long) -page) * pageSize + 1;
+		int i                    = 0;
 		boolean gotOffset        = false;
 
 		for (S node : input) {
@@ -211,7 +230,7 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 				
 			}
 			
-			nodesUpToOffset.add(n);
+			addBounded(nodesUpToOffset, n, windowSize);
 
 			if (!gotOffset) {
 
@@ -242,11 +261,14 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		if (offset < 0) {
 			
 			// Remove last item
-			nodesUpToOffset.remove(nodesUpToOffset.size()-1);
+			nodesUpToOffset.removeLast();
 			
-			return new Result(nodesUpToOffset, size, true, false);
+			return new Result(new ArrayList<T>(nodesUpToOffset), size, true, false);
 		}
 
+		// absolute position of the first node in the window
+		position = i + 1 - nodesUpToOffset.size();
+
 		for (T node : nodesUpToOffset) {
 
 			if (node != null) {
@@ -300,17 +322,38 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 		if (page < 0) {
 
-			List<S> rawNodes = read(input);
-			int size         = rawNodes.size();
+			// Keep only the raw hits that can end up on the requested
+			// page instead of copying all of them into a list.
+			Deque<S> rawNodes = new ArrayDeque<S>();
+			long windowSize   = ((long) -page) * pageSize;
+			int size          = 0;
+
+			for (S node : input) {
+
+				addBounded(rawNodes, node, windowSize);
+				size++;
+			}
+
+			fromIndex = (int) Math.max(0, size + ((long) page * pageSize));
+
+			final List<T> nodes = new ArrayList<T>();
+			long toIndex        = Math.min(size, (long) fromIndex + pageSize);
+
+			// absolute position of the first raw hit in the window
+			int position        = size - rawNodes.size();
 
-			fromIndex = Math.max(0, size + (page * pageSize));
+			for (S n : rawNodes) {
 
-			final List<T> nodes = new LinkedList<T>();
-			int toIndex         = Math.min(size, fromIndex + pageSize);
+				if (position >= fromIndex && position < toIndex) {
 
-			for (S n : rawNodes.subList(fromIndex, toIndex)) {
+					T node = instantiate(n);
+					if (node != null) {
+
+						nodes.add(node);
+					}
+				}
 
-				nodes.add(instantiate(n));
+				position++;
 			}
 
 			// We've run completely through the iterator,
@@ -333,7 +376,7 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 	protected Result page(final IndexHits<S> input, final int overallResultCount, final int offset, final int pageSize) throws FrameworkException {
 
-		final List<T> nodes = new LinkedList<T>();
+		final List<T> nodes = new ArrayList<T>();
 		int position		= 0;
 		int count		= 0;
 		int overallCount	= 0;
@@ -344,8 +387,20 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		// In case of superuser or in public context, don't check the overall result count
 		boolean dontCheckCount  = securityContext.isSuperUser() || securityContext.getUser(false) == null;
 		
+		// If no hit can be filtered out, the hits before the requested
+		// page don't need to be instantiated at all.
+		boolean skipBeforeOffset = isUnfiltered();
+		
 		for (S node : input) {
 
+			if (skipBeforeOffset && position < offset) {
+
+				overallCount++;
+				position++;
+
+				continue;
+			}
+
 			T n = instantiate(node);
 
 			if (n != null) {
@@ -18,9 +18,14 @@
  */
 package org.structr.core.graph;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.neo4j.graphdb.PropertyContainer;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
@@ -48,10 +53,12 @@ public class GraphObjectModificationState {
 	private static final int STATE_PROPAGATING_MODIFICATION = 128;
 	private static final int STATE_PROPAGATED_MODIFICATION =  256;
 	
-	private PropertyMap removedProperties = new PropertyMap();
-	private boolean modified              = false;
-	private GraphObject object            = null;
-	private int status                    = 0;
+	private PropertyMap removedProperties          = new PropertyMap();
+	private Map<PropertyKey, Object> pendingIndex  = null;
+	private boolean pendingLastModifiedDate        = false;
+	private boolean modified                       = false;
+	private GraphObject object                     = null;
+	private int status                             = 0;
 
 	public GraphObjectModificationState(GraphObject object) {
 		this.object = object;
@@ -133,6 +140,68 @@ public class GraphObjectModificationState {
 		}
 	}
 
+	/**
+	 * Defers the index update for the given key to {@link #doIndexing},
+	 * only the last value of each key is indexed.
+	 */
+	public void deferIndexing(PropertyKey key, Object value) {
+
+		if (pendingIndex == null) {
+			pendingIndex = new LinkedHashMap<PropertyKey, Object>();
+		}
+
+		pendingIndex.put(key, value);
+	}
+
+	public void deferLastModifiedDate() {
+		pendingLastModifiedDate = true;
+	}
+
+	/**
+	 * Applies the deferred index updates and sets the last modified date,
+	 * once per object. Called at commit time, and before searches in the
+	 * same transaction so that they see the modifications.
+	 */
+	public void doIndexing() {
+
+		if ((status & (STATE_DELETED | STATE_DELETED_PASSIVELY)) != 0) {
+
+			// object is gone
+			pendingIndex            = null;
+			pendingLastModifiedDate = false;
+
+			return;
+		}
+
+		if (pendingLastModifiedDate) {
+
+			pendingLastModifiedDate = false;
+
+			PropertyContainer propertyContainer = object.getPropertyContainer();
+			if (propertyContainer != null) {
+
+				propertyContainer.setProperty(AbstractNode.lastModifiedDate.dbName(), System.currentTimeMillis());
+			}
+		}
+
+		if (pendingIndex != null) {
+
+			Map<PropertyKey, Object> values = pendingIndex;
+			pendingIndex = null;
+
+			for (Entry<PropertyKey, Object> entry : values.entrySet()) {
+
+				try {
+					entry.getKey().index(object, entry.getValue());
+
+				} catch (Throwable t) {
+
+					logger.log(Level.WARNING, "Unable to index property {0} of {1}: {2}", new Object[] { entry.getKey().dbName(), object, t.getMessage() });
+				}
+			}
+		}
+	}
+
 	public void delete(boolean passive) {
 		
 		int statusBefore = status;
@@ -254,6 +323,9 @@ public class GraphObjectModificationState {
 	public boolean doValidationAndIndexing(ModificationQueue modificationQueue, SecurityContext securityContext, ErrorBuffer errorBuffer, boolean doValidation) throws FrameworkException {
 
 		boolean valid = true;
+
+		// deferred index updates first, validators may search the index
+		doIndexing();
 	
 		// examine only the last 4 bits here
 		switch (status & 0x000f) {
@@ -0,0 +1,319 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+
+/**
+ * Coalesces concurrent small top-level transactions into a single
+ * physical database transaction to save log forces.
+ *
+ * Submitted transactions are collected by a single committer thread for
+ * a short time window (or until the batch is full) and then executed in
+ * one physical transaction. Every logical transaction has its own
+ * modification queue, callbacks and validation. If any of them fails,
+ * the whole physical transaction is rolled back and the transactions of
+ * the batch are executed again one by one, so each caller gets exactly
+ * the result or error it would have gotten without grouping.
+ *
+ * Transactions submitted here must be safe to execute more than once,
+ * like they already must be for deadlock retries.
+ *
+ * The transactions of a batch are executed serially on the committer
+ * thread, so a slow transaction delays all others of its batch and of
+ * the following ones. Only short transactions should be grouped; the
+ * batch size and collection window are limited by
+ * {@link Services#TRANSACTION_GROUP_COMMIT_SIZE} and
+ * {@link Services#TRANSACTION_GROUP_COMMIT_WINDOW}.
+ *
+ * @author Christian Morgner
+ */
+public class GroupCommitter implements Runnable {
+
+	private static final Logger logger = Logger.getLogger(GroupCommitter.class.getName());
+
+	private static GroupCommitter instance = null;
+
+	private final BlockingQueue<Job> queue = new LinkedBlockingQueue<Job>();
+	private GraphDatabaseService graphDb   = null;
+	private Thread committerThread         = null;
+	private volatile boolean running       = true;
+	private int maxBatchSize               = 50;
+	private long windowMillis              = 5;
+
+	private GroupCommitter(final GraphDatabaseService graphDb) {
+
+		this.graphDb      = graphDb;
+		this.maxBatchSize = getIntValue(Services.TRANSACTION_GROUP_COMMIT_SIZE, 50);
+		this.windowMillis = getIntValue(Services.TRANSACTION_GROUP_COMMIT_WINDOW, 5);
+
+		committerThread = new Thread(this, "GroupCommitter");
+		committerThread.setDaemon(true);
+		committerThread.start();
+	}
+
+	public static boolean isEnabled() {
+		return Boolean.parseBoolean(Services.getConfigurationValue(Services.TRANSACTION_GROUP_COMMIT, "false"));
+	}
+
+	public static synchronized GroupCommitter getInstance(final GraphDatabaseService graphDb) {
+
+		if (instance == null || instance.graphDb != graphDb) {
+
+			if (instance != null) {
+				instance.stop();
+			}
+
+			instance = new GroupCommitter(graphDb);
+		}
+
+		return instance;
+	}
+
+	public static synchronized void shutdown() {
+
+		if (instance != null) {
+
+			instance.stop();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Indicates whether the current thread is the committer thread, i.e.
+	 * whether we are in a transaction or callback executed by the group
+	 * committer.
+	 */
+	public static boolean isCommitterThread() {
+
+		GroupCommitter committer = instance;
+
+		return committer != null && Thread.currentThread().equals(committer.committerThread);
+	}
+
+	public <T> T submit(final TransactionCommand command, final StructrTransaction<T> transaction) throws FrameworkException {
+
+		Job<T> job = new Job<T>(command, transaction);
+
+		if (!running) {
+
+			// committer was stopped, execute directly
+			return command.execute(transaction);
+		}
+
+		queue.add(job);
+
+		try {
+			while (!job.await(1, TimeUnit.SECONDS)) {
+
+				// committer was stopped while we were waiting
+				if (!running && queue.remove(job)) {
+					job.executeIndividually();
+				}
+			}
+
+		} catch (InterruptedException iex) {
+
+			// not picked up by the committer yet, make sure it never runs
+			if (queue.remove(job)) {
+
+				Thread.currentThread().interrupt();
+
+				throw new FrameworkException(500, "Interrupted while waiting for group commit");
+			}
+
+			// already being committed, the caller must get its outcome
+			job.awaitUninterruptibly();
+
+			// restore interrupted status for the caller
+			Thread.currentThread().interrupt();
+		}
+
+		return job.getResult();
+	}
+
+	@Override
+	public void run() {
+
+		while (running) {
+
+			try {
+
+				Job first = queue.poll(1, TimeUnit.SECONDS);
+				if (first != null) {
+
+					List<Job> batch = new LinkedList<Job>();
+					long deadline   = System.currentTimeMillis() + windowMillis;
+
+					batch.add(first);
+
+					// collect more jobs until the window closes or the batch is full
+					while (batch.size() < maxBatchSize) {
+
+						long remaining = deadline - System.currentTimeMillis();
+						if (remaining <= 0) {
+							break;
+						}
+
+						Job next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+						if (next == null) {
+							break;
+						}
+
+						batch.add(next);
+					}
+
+					commit(batch);
+				}
+
+			} catch (InterruptedException iex) {
+
+				// stop() was called
+
+			} catch (Throwable t) {
+
+				logger.log(Level.WARNING, "Unexpected exception in group committer", t);
+			}
+		}
+
+		// execute remaining jobs individually
+		for (Job job = queue.poll(); job != null; job = queue.poll()) {
+			job.executeIndividually();
+		}
+	}
+
+	// ----- private methods -----
+	private void stop() {
+
+		running = false;
+		committerThread.interrupt();
+	}
+
+	private void commit(final List<Job> batch) {
+
+		if (batch.size() > 1 && TransactionCommand.executeGroup(graphDb, batch)) {
+
+			for (Job job : batch) {
+				job.done();
+			}
+
+			logger.log(Level.FINE, "Committed {0} transactions in one group", batch.size());
+
+		} else {
+
+			// single transaction or group failed => isolate errors
+			for (Job job : batch) {
+				job.executeIndividually();
+			}
+		}
+	}
+
+	private int getIntValue(final String key, final int defaultValue) {
+
+		try { return Integer.parseInt(Services.getConfigurationValue(key, Integer.toString(defaultValue))); } catch (Throwable t) {}
+
+		return defaultValue;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * A logical transaction waiting to be committed.
+	 */
+	static class Job<T> {
+
+		private final CountDownLatch latch           = new CountDownLatch(1);
+		private StructrTransaction<T> transaction    = null;
+		private TransactionCommand command           = null;
+		private FrameworkException exception         = null;
+		private T result                             = null;
+
+		public Job(final TransactionCommand command, final StructrTransaction<T> transaction) {
+
+			this.command     = command;
+			this.transaction = transaction;
+		}
+
+		public TransactionCommand getCommand() {
+			return command;
+		}
+
+		public StructrTransaction<T> getTransaction() {
+			return transaction;
+		}
+
+		public void setResult(final T result) {
+			this.result = result;
+		}
+
+		public T getResult() throws FrameworkException {
+
+			if (exception != null) {
+				throw exception;
+			}
+
+			return result;
+		}
+
+		public void executeIndividually() {
+
+			try {
+				result = command.execute(transaction);
+
+			} catch (FrameworkException fex) {
+
+				exception = fex;
+
+			} catch (Throwable t) {
+
+				exception = new FrameworkException(500, t);
+			}
+
+			done();
+		}
+
+		public void done() {
+			latch.countDown();
+		}
+
+		public boolean await(final long timeout, final TimeUnit unit) throws InterruptedException {
+			return latch.await(timeout, unit);
+		}
+
+		public void awaitUninterruptibly() {
+
+			while (latch.getCount() > 0) {
+
+				try {
+					latch.await();
+
+				} catch (InterruptedException ignore) {}
+			}
+		}
+	}
+}
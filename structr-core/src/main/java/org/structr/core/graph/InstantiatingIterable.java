@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.neo4j.graphdb.PropertyContainer;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.Predicate;
+
+/**
+ * An iterable that instantiates the database objects of the given source
+ * one by one while it is iterated, so that only the current object needs
+ * to be held in memory. An optional filter is evaluated on the database
+ * object <b>before</b> instantiation.
+ *
+ * @author Christian Morgner
+ */
+public class InstantiatingIterable<S extends PropertyContainer, T extends GraphObject> implements Iterable<T> {
+
+	private static final Logger logger = Logger.getLogger(InstantiatingIterable.class.getName());
+
+	private SecurityContext securityContext = null;
+	private Factory<S, T> factory           = null;
+	private Iterable<S> source              = null;
+	private Predicate<S> filter             = null;
+
+	public InstantiatingIterable(final SecurityContext securityContext, final Factory<S, T> factory, final Iterable<S> source, final Predicate<S> filter) {
+
+		this.securityContext = securityContext;
+		this.factory         = factory;
+		this.source          = source;
+		this.filter          = filter;
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+
+		final Iterator<S> sourceIterator = source.iterator();
+
+		return new Iterator<T>() {
+
+			private T next = null;
+
+			@Override
+			public boolean hasNext() {
+
+				while (next == null && sourceIterator.hasNext()) {
+
+					S obj = sourceIterator.next();
+
+					if (filter == null || filter.evaluate(securityContext, obj)) {
+
+						try {
+							next = factory.instantiate(obj);
+
+						} catch (FrameworkException fex) {
+
+							logger.log(Level.WARNING, "Unable to instantiate {0}: {1}", new Object[] { obj, fex.getMessage() });
+						}
+					}
+				}
+
+				return next != null;
+			}
+
+			@Override
+			public T next() {
+
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				T current = next;
+				next      = null;
+
+				return current;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Removal not supported.");
+			}
+		};
+	}
+}
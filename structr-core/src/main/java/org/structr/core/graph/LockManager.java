@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Striped lock manager that protects the validation and indexing part of
+ * concurrent transactions.
+ *
+ * Synchronization keys are mapped to a fixed number of lock stripes, and
+ * the stripes are always acquired in ascending order, so two transactions
+ * can never wait for each other in opposite order. Transactions whose
+ * keys map to disjoint stripes can commit in parallel.
+ *
+ * The time spent waiting for a lock is recorded per type, i.e. per key
+ * prefix up to the first dot.
+ *
+ * @author Christian Morgner
+ */
+public class LockManager {
+
+	private static final Logger logger = Logger.getLogger(LockManager.class.getName());
+
+	public static final int DEFAULT_STRIPE_COUNT = 1024;
+
+	private final Map<String, WaitStatistics> statistics = new ConcurrentHashMap<String, WaitStatistics>();
+	private ReentrantLock[] stripes                       = null;
+
+	public LockManager() {
+		this(DEFAULT_STRIPE_COUNT);
+	}
+
+	public LockManager(final int stripeCount) {
+
+		stripes = new ReentrantLock[stripeCount];
+
+		for (int i=0; i<stripeCount; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+
+	public void acquire(final Set<String> keys) throws InterruptedException {
+
+		if (keys != null && !keys.isEmpty()) {
+
+			Map<Integer, String> sortedStripes = getStripes(keys);
+
+			for (Map.Entry<Integer, String> entry : sortedStripes.entrySet()) {
+
+				ReentrantLock lock = stripes[entry.getKey()];
+				long t0            = System.nanoTime();
+
+				try {
+					lock.lockInterruptibly();
+
+				} catch (InterruptedException iex) {
+
+					// release what we already got
+					release(keys);
+
+					throw iex;
+				}
+
+				getStatistics(entry.getValue()).record(System.nanoTime() - t0);
+			}
+		}
+	}
+
+	public void release(final Set<String> keys) {
+
+		if (keys != null && !keys.isEmpty()) {
+
+			for (Integer stripe : getStripes(keys).keySet()) {
+
+				ReentrantLock lock = stripes[stripe];
+
+				// releasing is safe even if acquire() was interrupted
+				if (lock.isHeldByCurrentThread()) {
+					lock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the lock wait statistics, mapped by type.
+	 *
+	 * @return a map containing count, total and maximum wait time in ms for each type
+	 */
+	public Map<String, Map<String, Object>> getStatistics() {
+
+		Map<String, Map<String, Object>> result = new TreeMap<String, Map<String, Object>>();
+
+		for (Map.Entry<String, WaitStatistics> entry : statistics.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().toMap());
+		}
+
+		return result;
+	}
+
+	// ----- private methods -----
+	private Map<Integer, String> getStripes(final Set<String> keys) {
+
+		// sorted by stripe index => deterministic lock order
+		Map<Integer, String> sortedStripes = new TreeMap<Integer, String>();
+
+		for (String key : keys) {
+
+			if (key != null) {
+
+				sortedStripes.put((key.hashCode() & 0x7fffffff) % stripes.length, getType(key));
+			}
+		}
+
+		return sortedStripes;
+	}
+
+	private WaitStatistics getStatistics(final String type) {
+
+		WaitStatistics stats = statistics.get(type);
+		if (stats == null) {
+
+			// may be created twice under contention, which only loses a sample
+			stats = new WaitStatistics();
+			statistics.put(type, stats);
+		}
+
+		return stats;
+	}
+
+	private String getType(final String key) {
+
+		int pos = key.indexOf(".");
+		if (pos > 0) {
+
+			return key.substring(0, pos);
+		}
+
+		return key;
+	}
+
+	// ----- nested classes -----
+	private static class WaitStatistics {
+
+		private final AtomicLong count     = new AtomicLong(0);
+		private final AtomicLong totalWait = new AtomicLong(0);
+		private final AtomicLong maxWait   = new AtomicLong(0);
+
+		public void record(final long waitNanos) {
+
+			count.incrementAndGet();
+			totalWait.addAndGet(waitNanos);
+
+			long max = maxWait.get();
+			while (waitNanos > max && !maxWait.compareAndSet(max, waitNanos)) {
+				max = maxWait.get();
+			}
+
+			// log long waits
+			if (waitNanos > 1000000000L) {
+				logger.log(Level.INFO, "Waited {0} ms for commit lock", waitNanos / 1000000L);
+			}
+		}
+
+		public Map<String, Object> toMap() {
+
+			Map<String, Object> map = new LinkedHashMap<String, Object>();
+			long c                  = count.get();
+
+			map.put("count", c);
+			map.put("totalWaitMs", totalWait.get() / 1000000L);
+			map.put("averageWaitMs", c > 0 ? (totalWait.get() / c) / 1000000.0 : 0.0);
+			map.put("maxWaitMs", maxWait.get() / 1000000L);
+
+			return map;
+		}
+	}
+}
@@ -18,7 +18,9 @@
  */
 package org.structr.core.graph;
 
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
@@ -26,12 +28,16 @@ import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.neo4j.graphdb.RelationshipType;
+import org.structr.common.PermissionCache;
 import org.structr.common.RelType;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.SecurityRelationship;
 import org.structr.core.property.PropertyKey;
 
 /**
@@ -45,16 +51,29 @@ public class ModificationQueue {
 	
 	private ConcurrentSkipListMap<String, GraphObjectModificationState> modifications = new ConcurrentSkipListMap<String, GraphObjectModificationState>();
 	private Set<String> alreadyPropagated                                             = new LinkedHashSet<String>();
+	private Map<String, SynchronizedModification> synchronizedModifications         = new LinkedHashMap<String, SynchronizedModification>();
 	private Set<String> synchronizationKeys                                           = new TreeSet<String>();
+	private boolean permissionsModified                                               = false;
+	private boolean indexingPending                                                   = false;
 	
 	/**
-	 * Returns a set containing the different entity types of
-	 * nodes modified in this queue.
+	 * Returns a sorted set containing the synchronization keys of the
+	 * objects modified in this queue. Modifications of properties that
+	 * require synchronization are keyed by type, property and value,
+	 * so that transactions writing different values don't block each
+	 * other.
 	 * 
-	 * @return the types
+	 * @return the keys
 	 */
 	public Set<String> getSynchronizationKeys() {
-		return synchronizationKeys;
+
+		Set<String> keys = new TreeSet<String>(synchronizationKeys);
+
+		for (SynchronizedModification modification : synchronizedModifications.values()) {
+			keys.add(modification.getSynchronizationKey());
+		}
+
+		return keys;
 	}
 	
 	public boolean doInnerCallbacks(SecurityContext securityContext, ErrorBuffer errorBuffer) throws FrameworkException {
@@ -79,6 +98,11 @@ public class ModificationQueue {
 			}
 		}
 
+		// cached permission decisions are outdated after commit
+		if (permissionsModified) {
+			PermissionCache.invalidateAfterCommit();
+		}
+
 		long t = System.currentTimeMillis() - t0;
 		if (t > 1000) {
 			logger.log(Level.INFO, "{0} ms", t);
@@ -99,6 +123,9 @@ public class ModificationQueue {
 			valid &= entry.getValue().doValidationAndIndexing(this, securityContext, errorBuffer, doValidation);
 		}
 
+		// properties set during validation
+		doIndexing();
+
 		long t = System.currentTimeMillis() - t0;
 		if (t > 1000) {
 			logger.log(Level.INFO, "{0} ms", t);
@@ -107,6 +134,22 @@ public class ModificationQueue {
 		return valid;
 	}
 
+	/**
+	 * Applies the deferred index updates of all objects in this queue.
+	 */
+	public void doIndexing() {
+
+		if (indexingPending) {
+
+			indexingPending = false;
+
+			for (GraphObjectModificationState state : modifications.values()) {
+
+				state.doIndexing();
+			}
+		}
+	}
+
 	public void doOuterCallbacks(SecurityContext securityContext) {
 
 		long t0 = System.currentTimeMillis();
@@ -131,6 +174,20 @@ public class ModificationQueue {
 		// clear collections afterwards
 		alreadyPropagated.clear();
 		modifications.clear();
+		synchronizedModifications.clear();
+		permissionsModified = false;
+		indexingPending     = false;
+	}
+
+	/**
+	 * Indicates whether this queue contains modifications that can affect
+	 * access control decisions (security relationships, group memberships,
+	 * admin flags or deleted nodes).
+	 *
+	 * @return true if permissions were modified
+	 */
+	public boolean isPermissionsModified() {
+		return permissionsModified;
 	}
 
 	public void create(AbstractNode node) {
@@ -143,6 +200,8 @@ public class ModificationQueue {
 
 		getState(relationship).create();
 
+		checkPermissionsModified(relationship);
+
 		modifyEndNodes(relationship.getStartNode(), relationship.getEndNode(), relationship.getRelType());
 		
 		String combinedType = relationship.getProperty(AbstractRelationship.combinedType);
@@ -157,6 +216,7 @@ public class ModificationQueue {
 	
 	public void modifySecurity(AbstractNode node) {
 		getState(node).modifySecurity();
+		permissionsModified = true;
 	}
 	
 	public void modifyLocation(AbstractNode node) {
@@ -165,20 +225,56 @@ public class ModificationQueue {
 	
 	public void modify(AbstractNode node, PropertyKey key, Object previousValue) {
 		getState(node).modify(key, previousValue);
+
+		if (node instanceof Principal && Principal.isAdmin.equals(key)) {
+			permissionsModified = true;
+		}
 		
-		if (key != null&& key.requiresSynchronization()) {
-			synchronizationKeys.add(node.getClass().getSimpleName().concat(".").concat(key.getSynchronizationKey()));
+		if (key != null && key.requiresSynchronization()) {
+			synchronizedModifications.put(hash(node).concat(key.dbName()), new SynchronizedModification(node, key));
 		}
 	}
 
 	public void modify(AbstractRelationship relationship, PropertyKey key, Object previousValue) {
 		getState(relationship).modify(key, previousValue);
+
+		if (relationship instanceof SecurityRelationship) {
+			permissionsModified = true;
+		}
 		
 		if (key != null && key.requiresSynchronization()) {
-			synchronizationKeys.add(relationship.getClass().getSimpleName().concat(".").concat(key.getSynchronizationKey()));
+			synchronizedModifications.put(hash(relationship).concat(key.dbName()), new SynchronizedModification(relationship, key));
 		}
 	}
 	
+	public boolean deferIndexing(GraphObject obj, PropertyKey key, Object value) {
+
+		GraphObjectModificationState state = getState(obj);
+		if (state != null) {
+
+			state.deferIndexing(key, value);
+			indexingPending = true;
+
+			return true;
+		}
+
+		return false;
+	}
+
+	public boolean deferLastModifiedDate(GraphObject obj) {
+
+		GraphObjectModificationState state = getState(obj);
+		if (state != null) {
+
+			state.deferLastModifiedDate();
+			indexingPending = true;
+
+			return true;
+		}
+
+		return false;
+	}
+
 	public void propagatedModification(AbstractNode node) {
 
 		if (node != null) {
@@ -196,15 +292,26 @@ public class ModificationQueue {
 
 	public void delete(AbstractNode node) {
 		getState(node).delete(false);
+		permissionsModified = true;
 	}
 
 	public void delete(AbstractRelationship relationship, boolean passive) {
 
 		getState(relationship).delete(passive);
 
+		checkPermissionsModified(relationship);
+
 		modifyEndNodes(relationship.getStartNode(), relationship.getEndNode(), relationship.getRelType());
 	}
 
+	private void checkPermissionsModified(AbstractRelationship relationship) {
+
+		// group membership changes alter the effective permissions of the members
+		if (relationship instanceof SecurityRelationship || relationship.getStartNode() instanceof Principal || relationship.getEndNode() instanceof Principal) {
+			permissionsModified = true;
+		}
+	}
+
 	private void modifyEndNodes(AbstractNode startNode, AbstractNode endNode, RelationshipType relType) {
 		
 //		synchronizationKeys.add(relType.name());
@@ -237,6 +344,20 @@ public class ModificationQueue {
 	private GraphObjectModificationState getState(AbstractNode node) {
 		return getState(node, false);
 	}
+
+	private GraphObjectModificationState getState(GraphObject obj) {
+
+		if (obj instanceof AbstractNode) {
+
+			return getState((AbstractNode) obj);
+
+		} else if (obj instanceof AbstractRelationship) {
+
+			return getState((AbstractRelationship) obj);
+		}
+
+		return null;
+	}
 	
 	private GraphObjectModificationState getState(AbstractNode node, boolean checkPropagation) {
 
@@ -273,4 +394,44 @@ public class ModificationQueue {
 	private String hash(AbstractRelationship rel) {
 		return "R" + rel.getId();
 	}
+
+	// ----- nested classes -----
+	private static class SynchronizedModification {
+
+		private GraphObject obj = null;
+		private PropertyKey key = null;
+
+		public SynchronizedModification(final GraphObject obj, final PropertyKey key) {
+
+			this.obj = obj;
+			this.key = key;
+		}
+
+		/**
+		 * Returns a key of the form Type.key.valueHash. The value is read
+		 * when the locks are acquired, i.e. after all modifications of
+		 * the transaction are done. The hash is case-insensitive so that
+		 * case-insensitive uniqueness validators are covered as well.
+		 */
+		public String getSynchronizationKey() {
+
+			Class declaringClass = key.getDeclaringClass();
+			String type          = declaringClass != null ? declaringClass.getSimpleName() : obj.getClass().getSimpleName();
+			String baseKey       = type.concat(".").concat(key.getSynchronizationKey());
+
+			try {
+				Object value = obj.getProperty(key);
+				if (value != null) {
+
+					return baseKey.concat(".").concat(Integer.toString(value.toString().toLowerCase().hashCode()));
+				}
+
+			} catch (Throwable t) {
+
+				// object was deleted, fall back to the key itself
+			}
+
+			return baseKey;
+		}
+	}
 }
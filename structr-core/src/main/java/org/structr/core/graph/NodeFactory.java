@@ -29,8 +29,6 @@ import org.structr.core.Result;
 import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 
-import java.lang.reflect.Constructor;
-
 import java.util.*;
 import java.util.List;
 import java.util.logging.Level;
@@ -53,10 +51,6 @@ public class NodeFactory<T extends AbstractNode> extends Factory<Node, T> {
 
 	private static final Logger logger        = Logger.getLogger(NodeFactory.class.getName());
 
-	//~--- fields ---------------------------------------------------------
-
-	private Map<Class, Constructor<T>> constructors = new LinkedHashMap<Class, Constructor<T>>();
-
 	//~--- constructors ---------------------------------------------------
 
 	public NodeFactory(final SecurityContext securityContext) {
@@ -80,7 +74,14 @@ public class NodeFactory<T extends AbstractNode> extends Factory<Node, T> {
 	@Override
 	public T instantiate(final Node node) throws FrameworkException {
 
-		String nodeType = factoryDefinition.determineNodeType(node);
+		// entity already instantiated in this request, no need to determine the type
+		T cachedNode = (T)factoryProfile.getSecurityContext().lookup(node);
+		if (cachedNode != null) {
+
+			return checkAccess(cachedNode, false);
+		}
+
+		String nodeType = NodeTypeCache.getInstance().getNodeType(node, factoryDefinition);
 
 		return instantiateWithType(node, nodeType, false);
 
@@ -95,29 +96,8 @@ public class NodeFactory<T extends AbstractNode> extends Factory<Node, T> {
 		if (newNode == null) {
 
 			Class<T> nodeClass = Services.getService(ModuleService.class).getNodeEntityClass(nodeType);
-			if (nodeClass != null) {
 
-				try {
-
-					Constructor<T> constructor = constructors.get(nodeClass);
-					if (constructor == null) {
-
-						constructor = nodeClass.getConstructor();
-
-						constructors.put(nodeClass, constructor);
-
-					}
-
-					// newNode = (AbstractNode) nodeClass.newInstance();
-					newNode = constructor.newInstance();
-
-				} catch (Throwable t) {
-
-					newNode = null;
-
-				}
-
-			}
+			newNode = EntityInstantiator.newInstance(nodeClass);
 
 			if (newNode == null) {
 				// FIXME
@@ -128,8 +108,8 @@ public class NodeFactory<T extends AbstractNode> extends Factory<Node, T> {
 			newNode.init(factoryProfile.getSecurityContext(), node);
 			newNode.onNodeInstantiation();
 
-			String newNodeType = newNode.getProperty(AbstractNode.type);
-			if (newNodeType == null) { //  || (newNodeType != null && !newNodeType.equals(nodeType))) {
+			// check the raw value, no need to convert the type property
+			if (!node.hasProperty(AbstractNode.type.dbName())) {
 				
 				try {
 
@@ -146,13 +126,7 @@ public class NodeFactory<T extends AbstractNode> extends Factory<Node, T> {
 			securityContext.store(newNode);
 		}
 		
-		// check access
-		if (isCreation || securityContext.isReadable(newNode, factoryProfile.includeDeletedAndHidden(), factoryProfile.publicOnly())) {
-
-			return newNode;
-		}
-		
-		return null;
+		return checkAccess(newNode, isCreation);
 	}
 
 	@Override
@@ -174,37 +148,21 @@ public class NodeFactory<T extends AbstractNode> extends Factory<Node, T> {
 		return super.instantiate(input);
 	}
 
-	public T instantiateDummy(final String nodeType) throws FrameworkException {
-
-		Class<T> nodeClass = Services.getService(ModuleService.class).getNodeEntityClass(nodeType);
-		T newNode          = null;
-
-		if (nodeClass != null) {
-
-			try {
-
-				Constructor<T> constructor = constructors.get(nodeClass);
-
-				if (constructor == null) {
-
-					constructor = nodeClass.getConstructor();
+	private T checkAccess(final T node, final boolean isCreation) {
 
-					constructors.put(nodeClass, constructor);
+		if (isCreation || factoryProfile.getSecurityContext().isReadable(node, factoryProfile.includeDeletedAndHidden(), factoryProfile.publicOnly())) {
 
-				}
-
-				// newNode = (AbstractNode) nodeClass.newInstance();
-				newNode = constructor.newInstance();
-
-			} catch (Throwable t) {
+			return node;
+		}
 
-				newNode = null;
+		return null;
+	}
 
-			}
+	public T instantiateDummy(final String nodeType) throws FrameworkException {
 
-		}
+		Class<T> nodeClass = Services.getService(ModuleService.class).getNodeEntityClass(nodeType);
 
-		return newNode;
+		return EntityInstantiator.newInstance(nodeClass);
 
 	}
 	
@@ -20,23 +20,25 @@
 
 package org.structr.core.graph;
 
-import org.apache.commons.collections.map.LRUMap;
-
 import org.neo4j.gis.spatial.indexprovider.LayerNodeIndex;
 import org.neo4j.gis.spatial.indexprovider.SpatialIndexProvider;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.factory.GraphDatabaseFactory;
 import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
 import org.neo4j.helpers.collection.MapUtil;
 import org.neo4j.index.impl.lucene.LuceneIndexImplementation;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
 
+import org.structr.common.PermissionCache;
 import org.structr.core.Command;
 import org.structr.core.RunnableService;
 import org.structr.core.Services;
 import org.structr.core.SingletonService;
+import org.structr.core.auth.SessionRegistry;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Location;
 
@@ -45,6 +47,7 @@ import org.structr.core.entity.Location;
 import java.io.File;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.neo4j.cypher.javacompat.ExecutionEngine;
@@ -62,7 +65,7 @@ import org.neo4j.shell.ShellSettings;
 public class NodeService implements SingletonService {
 
 	private static final Logger logger                       = Logger.getLogger(NodeService.class.getName());
-	private static final Map<String, AbstractNode> nodeCache = (Map<String, AbstractNode>) Collections.synchronizedMap(new LRUMap(100000));
+	private static final String TYPE_INDEX_COMPLETE          = "structr_complete";
 
 	//~--- fields ---------------------------------------------------------
 
@@ -85,6 +88,11 @@ public class NodeService implements SingletonService {
 	private Map<RelationshipIndex, Index<Relationship>> relIndices = new EnumMap<RelationshipIndex, Index<Relationship>>(RelationshipIndex.class);
 	private Map<NodeIndex, Index<Node>> nodeIndices                = new EnumMap<NodeIndex, Index<Node>>(NodeIndex.class);
 
+	// per-type keyword and fulltext indices, see Services.INDEX_PER_TYPE
+	private final Map<String, Index<Node>> typeIndices             = new ConcurrentHashMap<String, Index<Node>>();
+	private final Set<String> completeTypeIndices                  = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private boolean typeIndicesEnabled                             = false;
+
 	/** Dependent services */
 	private Set<RunnableService> registeredServices = new HashSet<RunnableService>();
 	private boolean isInitialized                   = false;
@@ -178,6 +186,16 @@ public class NodeService implements SingletonService {
 			files.mkdir();
 		}
 
+		NodeTypeCache.getInstance().setEnabled(Boolean.parseBoolean(Services.getConfigurationValue(Services.NODE_CACHE_SHARED, "true")));
+
+		try {
+			NodeTypeCache.getInstance().setMaxWeight(Long.parseLong(Services.getConfigurationValue(Services.NODE_CACHE_MAX_WEIGHT, "100000")));
+
+		} catch (NumberFormatException nfe) {
+
+			logger.log(Level.WARNING, "Invalid value for {0}, using default", Services.NODE_CACHE_MAX_WEIGHT);
+		}
+
 		logger.log(Level.INFO, "Database ready.");
 		logger.log(Level.FINE, "Initializing UUID index...");
 
@@ -209,6 +227,17 @@ public class NodeService implements SingletonService {
 		nodeIndices.put(NodeIndex.keyword, keywordIndex);
 
 		logger.log(Level.FINE, "Keyword node index ready.");
+
+		typeIndicesEnabled = Boolean.parseBoolean(Services.getConfigValue(context, Services.INDEX_PER_TYPE, "false"));
+		if (typeIndicesEnabled) {
+
+			logger.log(Level.INFO, "Per-type keyword and fulltext node indices enabled.");
+
+		} else {
+
+			resetTypeIndices();
+		}
+
 		logger.log(Level.FINE, "Initializing layer index...");
 
 		final Map<String, String> config = new HashMap<String, String>();
@@ -244,6 +273,14 @@ public class NodeService implements SingletonService {
 		logger.log(Level.FINE, "Relationship factory ready.");
 		cypherExecutionEngine = new ExecutionEngine(graphDb);
 		
+		// cached cypher results and node types are valid until the next commit
+		graphDb.registerTransactionEventHandler(CypherResultCache.getInstance());
+		graphDb.registerTransactionEventHandler(NodeTypeCache.getInstance());
+		graphDb.registerTransactionEventHandler(PermissionCache.getInstance());
+
+		// session ids are tracked in memory
+		graphDb.registerTransactionEventHandler(SessionRegistry.getInstance());
+
 		logger.log(Level.FINE, "Cypher execution engine ready.");
 		
 		isInitialized = true;
@@ -261,11 +298,23 @@ public class NodeService implements SingletonService {
 
 			// Wait for all registered services to end
 			waitFor(registeredServices.isEmpty());
+			GroupCommitter.shutdown();
+			graphDb.unregisterTransactionEventHandler(CypherResultCache.getInstance());
+			graphDb.unregisterTransactionEventHandler(NodeTypeCache.getInstance());
+			graphDb.unregisterTransactionEventHandler(PermissionCache.getInstance());
+			graphDb.unregisterTransactionEventHandler(SessionRegistry.getInstance());
 			graphDb.shutdown();
 
 			graphDb       = null;
 			isInitialized = false;
 
+			typeIndices.clear();
+			completeTypeIndices.clear();
+
+			NodeTypeCache.getInstance().clear();
+			CypherResultCache.getInstance().clear();
+			SessionRegistry.getInstance().clear();
+
 		}
 
 	}
@@ -296,18 +345,6 @@ public class NodeService implements SingletonService {
 
 	}
 
-	public static void addNodeToCache(String uuid, AbstractNode node) {
-
-		nodeCache.put(uuid, node);
-
-	}
-
-	public static void removeNodeFromCache(String uuid) {
-
-		nodeCache.remove(uuid);
-
-	}
-
 	//~--- get methods ----------------------------------------------------
 
 	@Override
@@ -317,9 +354,15 @@ public class NodeService implements SingletonService {
 
 	}
 
-	public static AbstractNode getNodeFromCache(String uuid) {
+	/**
+	 * Returns size, weight, hit, miss and eviction counts of the shared
+	 * node type cache.
+	 * 
+	 * @return the statistics
+	 */
+	public static Map<String, Object> getNodeCacheStatistics() {
 
-		return nodeCache.get(uuid);
+		return NodeTypeCache.getInstance().getStatistics();
 
 	}
 
@@ -350,4 +393,264 @@ public class NodeService implements SingletonService {
 	public Index<Relationship> getRelationshipIndex(RelationshipIndex name) {
 		return relIndices.get(name);
 	}
+
+	public boolean isTypeIndexEnabled() {
+		return typeIndicesEnabled;
+	}
+
+	/**
+	 * Returns the per-type index for the given index name and node type,
+	 * creating it if necessary. Only the keyword and the fulltext index
+	 * are partitioned, null is returned for all other indices and when
+	 * per-type indices are disabled.
+	 * 
+	 * Nodes are written to the per-type index in addition to the global
+	 * index, so queries without a type constraint are not affected.
+	 * 
+	 * @param name the index
+	 * @param type the simple type name of the node
+	 * @return the per-type index or null
+	 */
+	public Index<Node> getTypeIndex(final NodeIndex name, final String type) {
+		return getTypeIndex(name, type, null);
+	}
+
+	/**
+	 * Returns the per-type index for the given index name and node type,
+	 * see {@link #getTypeIndex(NodeIndex, String)}. The given node is the
+	 * node that is about to be indexed, it is ignored when checking whether
+	 * a new per-type index is complete.
+	 * 
+	 * @param name the index
+	 * @param type the simple type name of the node
+	 * @param node the node to be indexed, may be null
+	 * @return the per-type index or null
+	 */
+	public Index<Node> getTypeIndex(final NodeIndex name, final String type, final Node node) {
+
+		if (!typeIndicesEnabled || type == null || !(NodeIndex.keyword.equals(name) || NodeIndex.fulltext.equals(name))) {
+			return null;
+		}
+
+		final String indexName = getTypeIndexName(name, type);
+		Index<Node> index      = typeIndices.get(indexName);
+
+		if (index == null) {
+
+			synchronized (typeIndices) {
+
+				index = typeIndices.get(indexName);
+				if (index == null) {
+
+					boolean created = !graphDb.index().existsForNodes(indexName);
+
+					index = graphDb.index().forNodes(indexName, NodeIndex.fulltext.equals(name) ? LuceneIndexImplementation.FULLTEXT_CONFIG : LuceneIndexImplementation.EXACT_CONFIG);
+
+					if ("true".equals(graphDb.index().getConfiguration(index).get(TYPE_INDEX_COMPLETE))) {
+
+						completeTypeIndices.add(indexName);
+
+					} else if (created && !hasNodesOfType(type, node)) {
+
+						// new type, nothing to migrate
+						setTypeIndexComplete(name, type, index);
+					}
+
+					typeIndices.put(indexName, index);
+				}
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Returns the per-type index for the given index name and node type
+	 * if it can be used for queries, i.e. if it contains all nodes of the
+	 * type. Indices of types that existed before per-type indices were
+	 * enabled need to be migrated first, see {@link BulkMigrateTypeIndexCommand}.
+	 * 
+	 * @param name the index
+	 * @param type the simple type name
+	 * @return the per-type index or null
+	 */
+	public Index<Node> getQueryableTypeIndex(final NodeIndex name, final String type) {
+
+		if (!typeIndicesEnabled || type == null) {
+			return null;
+		}
+
+		final String indexName = getTypeIndexName(name, type);
+
+		// don't create indices for queries
+		if (!typeIndices.containsKey(indexName) && !graphDb.index().existsForNodes(indexName)) {
+			return null;
+		}
+
+		Index<Node> index = getTypeIndex(name, type);
+
+		if (index != null && completeTypeIndices.contains(indexName)) {
+			return index;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns all existing per-type indices of the given type, used to
+	 * remove nodes from the index.
+	 * 
+	 * @param type the simple type name
+	 * @return the per-type indices, empty if per-type indices are disabled
+	 */
+	public List<Index<Node>> getTypeIndices(final String type) {
+
+		List<Index<Node>> indices = new LinkedList<Index<Node>>();
+
+		if (!typeIndicesEnabled || type == null) {
+			return indices;
+		}
+
+		for (NodeIndex name : new NodeIndex[] { NodeIndex.keyword, NodeIndex.fulltext }) {
+
+			final String indexName = getTypeIndexName(name, type);
+
+			// don't create indices to remove nodes from them
+			if (!typeIndices.containsKey(indexName) && !graphDb.index().existsForNodes(indexName)) {
+				continue;
+			}
+
+			Index<Node> index = getTypeIndex(name, type);
+			if (index != null) {
+
+				indices.add(index);
+			}
+		}
+
+		return indices;
+	}
+
+	/**
+	 * Marks the per-type indices of the given type as complete, so that
+	 * queries for the type are routed to them.
+	 * 
+	 * @param type the simple type name
+	 */
+	public void setTypeIndexComplete(final String type) {
+
+		for (NodeIndex name : new NodeIndex[] { NodeIndex.keyword, NodeIndex.fulltext }) {
+
+			Index<Node> index = getTypeIndex(name, type);
+			if (index != null) {
+
+				setTypeIndexComplete(name, type, index);
+			}
+		}
+	}
+
+	/**
+	 * Indicates whether the per-type keyword index of the given type
+	 * contains as many nodes of the type as the global keyword index.
+	 * 
+	 * @param type the simple type name
+	 * @return whether the per-type index contains all nodes of the type
+	 */
+	public boolean containsAllNodesOfType(final String type) {
+
+		Index<Node> index = getTypeIndex(NodeIndex.keyword, type);
+		if (index == null) {
+			return false;
+		}
+
+		return countNodesOfType(index, type) >= countNodesOfType(keywordIndex, type);
+	}
+
+	// ----- private methods -----
+	private int countNodesOfType(final Index<Node> index, final String type) {
+
+		IndexHits<Node> hits = null;
+
+		synchronized (index) {
+
+			hits = index.get(AbstractNode.type.dbName(), type);
+		}
+
+		try {
+			return hits.size();
+
+		} finally {
+
+			hits.close();
+		}
+	}
+
+	private void setTypeIndexComplete(final NodeIndex name, final String type, final Index<Node> index) {
+
+		// persist the flag in the index configuration, so it survives restarts
+		graphDb.index().setConfiguration(index, TYPE_INDEX_COMPLETE, "true");
+		completeTypeIndices.add(getTypeIndexName(name, type));
+	}
+
+	private boolean hasNodesOfType(final String type, final Node ignoredNode) {
+
+		IndexHits<Node> hits = null;
+
+		synchronized (keywordIndex) {
+
+			hits = keywordIndex.get(AbstractNode.type.dbName(), type);
+		}
+
+		try {
+			for (Node node : hits) {
+
+				if (ignoredNode == null || node.getId() != ignoredNode.getId()) {
+					return true;
+				}
+			}
+
+		} finally {
+
+			hits.close();
+		}
+
+		return false;
+	}
+
+	/**
+	 * Per-type indices are not updated while they are disabled, so they
+	 * need to be migrated again when they are re-enabled.
+	 */
+	private void resetTypeIndices() {
+
+		Transaction tx = graphDb.beginTx();
+
+		try {
+			for (String indexName : graphDb.index().nodeIndexNames()) {
+
+				if (indexName.startsWith(NodeIndex.keyword.name() + "_") || indexName.startsWith(NodeIndex.fulltext.name() + "_")) {
+
+					Index<Node> index = graphDb.index().forNodes(indexName);
+
+					if (graphDb.index().getConfiguration(index).containsKey(TYPE_INDEX_COMPLETE)) {
+
+						graphDb.index().removeConfiguration(index, TYPE_INDEX_COMPLETE);
+					}
+				}
+			}
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "Unable to reset per-type indices", t);
+
+		} finally {
+
+			tx.finish();
+		}
+	}
+
+	private String getTypeIndexName(final NodeIndex name, final String type) {
+		return name.name() + "_" + type;
+	}
 }
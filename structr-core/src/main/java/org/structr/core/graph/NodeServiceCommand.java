@@ -18,12 +18,28 @@
  */
 package org.structr.core.graph;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.neo4j.kernel.DeadlockDetectedException;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
+import org.structr.common.error.RetryException;
 import org.structr.core.Command;
 import org.structr.core.GraphObject;
 import org.structr.core.Predicate;
@@ -37,6 +53,8 @@ import org.structr.core.Services;
 public abstract class NodeServiceCommand extends Command {
 	
 	private static final Logger logger = Logger.getLogger(NodeServiceCommand.class.getName());
+
+	private static final Map<String, BulkStatistics> bulkStatistics = new ConcurrentHashMap<String, BulkStatistics>();
 	
 	@Override
 	public Class getServiceClass()	{
@@ -69,13 +87,14 @@ public abstract class NodeServiceCommand extends Command {
 	public static <T extends GraphObject> long bulkGraphOperation(final SecurityContext securityContext, final Iterable<T> nodes, final long commitCount, String description, final BulkGraphOperation<T> operation, boolean validation) throws FrameworkException {
 
 		final Iterator<T> iterator = nodes.iterator();
+		final BulkStatistics stats = startStatistics(description, 1);
 		long objectCount           = 0L;
 		
 		while (iterator.hasNext()) {
 
 			try {
 
-				objectCount += Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction<Integer>(validation) {
+				int batchCount = Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction<Integer>(validation) {
 
 					@Override
 					public Integer execute() throws FrameworkException {
@@ -105,6 +124,9 @@ public abstract class NodeServiceCommand extends Command {
 					}
 				});
 
+				objectCount += batchCount;
+				stats.batchFinished(batchCount, -1L);
+
 			} catch (Throwable t) {
 				
 				// bulk transaction failed, what to do?
@@ -115,10 +137,203 @@ public abstract class NodeServiceCommand extends Command {
 				logger.log(Level.INFO, "{0}: {1} objects processed", new Object[] { description, objectCount } );
 			}
 		}
+
+		stats.finish();
 		
 		return objectCount;
 	}
 	
+	/**
+	 * Executes the given operation on all nodes in the given list, using the
+	 * given number of threads. The objects are read from the iterable on the
+	 * calling thread and handed to the worker threads in batches of
+	 * commitCount objects, each of which is processed in its own transaction.
+	 * Only a few batches per thread are held in memory at any time.
+	 * 
+	 * Idle workers take the next batch from a shared queue, so slow batches
+	 * don't hold up the others. A deadlock in a batch rolls back and retries
+	 * the whole batch (see {@link TransactionCommand#execute}).
+	 * 
+	 * If the objects are ordered by id, the log output contains a checkpoint,
+	 * i.e. the id up to which all objects were processed successfully.
+	 * Throughput statistics are available via {@link #getBulkStatistics}.
+	 * 
+	 * @param <T>
+	 * @param securityContext
+	 * @param nodes the nodes to operate on
+	 * @param operation the operation to execute
+	 * @param threads the number of worker threads
+	 * @return the number of nodes processed
+	 * @throws FrameworkException 
+	 */
+	public static <T extends GraphObject> long bulkGraphOperation(final SecurityContext securityContext, final Iterable<T> nodes, final long commitCount, final String description, final BulkGraphOperation<T> operation, final boolean validation, final int threads) throws FrameworkException {
+
+		if (threads <= 1) {
+			return bulkGraphOperation(securityContext, nodes, commitCount, description, operation, validation);
+		}
+
+		final ExecutorService executor     = Executors.newFixedThreadPool(threads);
+		final Semaphore pendingBatches     = new Semaphore(threads * 2);
+		final BatchCheckpoint checkpoint   = new BatchCheckpoint();
+		final BulkStatistics stats         = startStatistics(description, threads);
+		final AtomicLong objectCount       = new AtomicLong(0L);
+		final Iterator<T> iterator         = nodes.iterator();
+		long batchCount                    = 0L;
+
+		try {
+
+			while (iterator.hasNext()) {
+
+				final List<T> batch = new ArrayList<T>((int)Math.min(commitCount, 10000));
+				final long sequence = batchCount++;
+
+				while (iterator.hasNext() && batch.size() < commitCount) {
+					batch.add(iterator.next());
+				}
+
+				checkpoint.batchStarted(sequence, batch.get(batch.size() - 1).getId());
+
+				// don't read ahead too far
+				pendingBatches.acquire();
+
+				executor.execute(new Runnable() {
+
+					@Override
+					public void run() {
+
+						try {
+
+							objectCount.addAndGet(Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction<Integer>(validation) {
+
+								@Override
+								public Integer execute() throws FrameworkException {
+
+									for (T node : batch) {
+
+										try {
+
+											operation.handleGraphObject(securityContext, node);
+
+										} catch (DeadlockDetectedException ddex) {
+
+											stats.deadlockDetected();
+
+											// roll back and retry the whole batch
+											throw ddex;
+
+										} catch (RetryException rex) {
+
+											stats.deadlockDetected();
+
+											// deadlock in a nested transaction
+											throw rex;
+
+										} catch (Throwable t) {
+
+											operation.handleThrowable(securityContext, t, node);
+										}
+									}
+
+									return batch.size();
+								}
+							}));
+
+							checkpoint.batchFinished(sequence);
+							stats.batchFinished(batch.size(), checkpoint.getCheckpointId());
+
+						} catch (Throwable t) {
+
+							// bulk transaction failed, the checkpoint stays before this batch
+							checkpoint.batchFailed(sequence);
+							operation.handleTransactionFailure(securityContext, t);
+
+						} finally {
+
+							pendingBatches.release();
+						}
+
+						if (description != null) {
+							logger.log(Level.INFO, "{0}: {1} objects processed, checkpoint at id {2}", new Object[] { description, objectCount.get(), checkpoint.getCheckpointId() } );
+						}
+					}
+				});
+			}
+
+		} catch (InterruptedException iex) {
+
+			Thread.currentThread().interrupt();
+
+		} finally {
+
+			executor.shutdown();
+
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+			} catch (InterruptedException iex) {
+
+				Thread.currentThread().interrupt();
+			}
+
+			stats.finish();
+		}
+
+		return objectCount.get();
+	}
+	
+	/**
+	 * Returns the number of threads to use for a bulk operation, from the
+	 * "threads" attribute or the {@link Services#BULK_THREADS} setting.
+	 * Defaults to the number of available processors.
+	 * 
+	 * @param attributes the attributes of the maintenance command, may be null
+	 * @return the number of threads
+	 */
+	public static int getBulkThreads(final Map<String, Object> attributes) {
+
+		Object value = attributes != null ? attributes.get("threads") : null;
+
+		if (value == null) {
+			value = Services.getConfigurationValue(Services.BULK_THREADS, Integer.toString(Runtime.getRuntime().availableProcessors()));
+		}
+
+		try {
+			return Math.max(1, Integer.parseInt(value.toString()));
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid number of threads: {0}", value);
+		}
+
+		return 1;
+	}
+
+	/**
+	 * Returns throughput statistics of the current and the last run of
+	 * every bulk operation, keyed by description.
+	 */
+	public static Map<String, Object> getBulkStatistics() {
+
+		Map<String, Object> stats = new TreeMap<String, Object>();
+
+		for (Entry<String, BulkStatistics> entry : bulkStatistics.entrySet()) {
+			stats.put(entry.getKey(), entry.getValue().toMap());
+		}
+
+		return stats;
+	}
+
+	private static BulkStatistics startStatistics(final String description, final int threads) {
+
+		BulkStatistics stats = new BulkStatistics(threads);
+
+		if (description != null) {
+			bulkStatistics.put(description, stats);
+		}
+
+		return stats;
+	}
+
 	/**
 	 * Executes the given transaction until the stop condition evaluates to
 	 * <b>true</b>.
@@ -154,4 +369,120 @@ public abstract class NodeServiceCommand extends Command {
 			});
 		}
 	}
+
+	// ----- nested classes -----
+	private static class BulkStatistics {
+
+		private final AtomicLong objects    = new AtomicLong(0L);
+		private final AtomicLong batches    = new AtomicLong(0L);
+		private final AtomicLong deadlocks  = new AtomicLong(0L);
+		private final long startTime        = System.currentTimeMillis();
+		private volatile long endTime       = 0L;
+		private volatile long checkpointId  = -1L;
+		private int threads                 = 1;
+
+		public BulkStatistics(final int threads) {
+			this.threads = threads;
+		}
+
+		public void batchFinished(final long count, final long checkpointId) {
+
+			this.objects.addAndGet(count);
+			this.batches.incrementAndGet();
+			this.checkpointId = checkpointId;
+		}
+
+		public void deadlockDetected() {
+			deadlocks.incrementAndGet();
+		}
+
+		public void finish() {
+			endTime = System.currentTimeMillis();
+		}
+
+		public Map<String, Object> toMap() {
+
+			Map<String, Object> map = new LinkedHashMap<String, Object>();
+			long end                = endTime > 0 ? endTime : System.currentTimeMillis();
+			double seconds          = Math.max(1L, end - startTime) / 1000.0;
+
+			map.put("running", endTime == 0);
+			map.put("threads", threads);
+			map.put("objects", objects.get());
+			map.put("batches", batches.get());
+			map.put("deadlocks", deadlocks.get());
+			map.put("seconds", seconds);
+			map.put("objectsPerSecond", objects.get() / seconds);
+
+			if (checkpointId >= 0) {
+				map.put("checkpoint", checkpointId);
+			}
+
+			return map;
+		}
+	}
+
+	/**
+	 * Keeps track of finished batches that may complete out of order. The
+	 * checkpoint is the last id of the last batch for which all previous
+	 * batches have finished as well. Once a batch has failed, the checkpoint
+	 * cannot move past it, so later batches are not tracked any more.
+	 */
+	private static class BatchCheckpoint {
+
+		private final Map<Long, Long> lastIds = new HashMap<Long, Long>();
+		private final Set<Long> finished      = new HashSet<Long>();
+		private long firstFailedSequence      = Long.MAX_VALUE;
+		private long nextSequence             = 0L;
+		private long checkpointId             = -1L;
+
+		public synchronized void batchStarted(final long sequence, final long lastId) {
+
+			if (sequence < firstFailedSequence) {
+				lastIds.put(sequence, lastId);
+			}
+		}
+
+		public synchronized void batchFailed(final long sequence) {
+
+			if (sequence < firstFailedSequence) {
+
+				firstFailedSequence = sequence;
+
+				// drop everything the checkpoint can never reach
+				for (Iterator<Long> it = lastIds.keySet().iterator(); it.hasNext();) {
+
+					if (it.next() >= sequence) {
+						it.remove();
+					}
+				}
+
+				for (Iterator<Long> it = finished.iterator(); it.hasNext();) {
+
+					if (it.next() >= sequence) {
+						it.remove();
+					}
+				}
+			}
+		}
+
+		public synchronized void batchFinished(final long sequence) {
+
+			if (sequence >= firstFailedSequence) {
+				return;
+			}
+
+			finished.add(sequence);
+
+			while (finished.remove(nextSequence)) {
+
+				checkpointId = lastIds.remove(nextSequence);
+				nextSequence++;
+			}
+		}
+
+		public synchronized long getCheckpointId() {
+			return checkpointId;
+		}
+	}
 }
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.structr.common.FactoryDefinition;
+
+/**
+ * Shared cache for the entity type of database nodes.
+ *
+ * The entries are plain type names, so they can be shared between all
+ * security contexts; entities themselves are only cached per request in
+ * {@link org.structr.common.SecurityContext}. Committed transactions that
+ * modify or delete a node remove its entry.
+ *
+ * The cache is neither read nor written inside a transaction, because the
+ * transaction might have modified the type of a node.
+ *
+ * @author Christian Morgner
+ */
+public class NodeTypeCache implements TransactionEventHandler<Object> {
+
+	private static final NodeTypeCache instance = new NodeTypeCache();
+
+	private final AtomicLong generation         = new AtomicLong(0);
+	private final EntityCache<Long, String> types;
+	private volatile boolean enabled            = true;
+
+	private NodeTypeCache() {
+
+		// weight is 1 per node
+		types = new EntityCache<Long, String>(100000);
+	}
+
+	public static NodeTypeCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the entity type of the given node, determining it with the
+	 * given factory definition if it is not cached.
+	 */
+	public String getNodeType(final Node node, final FactoryDefinition factoryDefinition) {
+
+		if (!enabled || TransactionCommand.inTransaction()) {
+			return factoryDefinition.determineNodeType(node);
+		}
+
+		long id                = node.getId();
+		long currentGeneration = generation.get();
+		String type            = types.get(id);
+
+		if (type == null) {
+
+			type = factoryDefinition.determineNodeType(node);
+
+			// do not store types that might be outdated already
+			if (type != null && generation.get() == currentGeneration) {
+
+				types.put(id, type, 1);
+
+				// re-check, invalidation might have missed the new entry
+				if (generation.get() != currentGeneration) {
+					types.remove(id);
+				}
+			}
+		}
+
+		return type;
+	}
+
+	public void setEnabled(final boolean enabled) {
+
+		this.enabled = enabled;
+
+		if (!enabled) {
+			clear();
+		}
+	}
+
+	public void setMaxWeight(final long maxWeight) {
+		types.setMaxWeight(maxWeight);
+	}
+
+	public void clear() {
+		types.clear();
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>(types.getStatistics());
+
+		stats.put("enabled", enabled);
+
+		return stats;
+	}
+
+	// ----- interface TransactionEventHandler -----
+	@Override
+	public Object beforeCommit(TransactionData data) throws Exception {
+		return null;
+	}
+
+	@Override
+	public void afterCommit(TransactionData data, Object state) {
+
+		generation.incrementAndGet();
+
+		for (Node node : data.deletedNodes()) {
+			types.remove(node.getId());
+		}
+
+		for (PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+			types.remove(entry.entity().getId());
+		}
+
+		for (PropertyEntry<Node> entry : data.removedNodeProperties()) {
+			types.remove(entry.entity().getId());
+		}
+	}
+
+	@Override
+	public void afterRollback(TransactionData data, Object state) {
+	}
+}
@@ -63,20 +63,11 @@ public class RelationshipFactory<T extends AbstractRelationship> extends Factory
 	public T instantiate(final String combinedRelType) throws FrameworkException {
 
 		Class<T> relClass = EntityContext.getNamedRelationClass(combinedRelType);
-		T newRel          = null;
-
-		if (relClass != null) {
+		T newRel          = EntityInstantiator.newInstance(relClass);
 
-			try {
-				newRel = relClass.newInstance();				
-				newRel.onRelationshipInstantiation();
-				
-			} catch (InstantiationException ex) {
-				logger.log(Level.FINE, "Could not instantiate relationship", ex);
-			} catch (IllegalAccessException ex) {
-				logger.log(Level.SEVERE, "Could not access relationship", ex);
-			}
+		if (newRel != null) {
 
+			newRel.onRelationshipInstantiation();
 		}
 
 
@@ -123,11 +114,7 @@ public class RelationshipFactory<T extends AbstractRelationship> extends Factory
 			
 			if (relClass != null && newRel == null) {
 
-				try {
-					newRel = relClass.newInstance();
-				} catch (Throwable t2) {
-					newRel = null;
-				}
+				newRel = EntityInstantiator.newInstance(relClass);
 			}
 
 		} catch (Throwable t) { }
@@ -20,6 +20,8 @@
 
 package org.structr.core.graph;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.EOFException;
@@ -31,6 +33,8 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.Serializable;
@@ -38,6 +42,7 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -46,6 +51,11 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -63,8 +73,6 @@ import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.Services;
-import org.structr.core.StaticValue;
-import org.structr.core.Value;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 
@@ -76,6 +84,12 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 	private static final Logger logger                 = Logger.getLogger(SyncCommand.class.getName());
 	private static final String STRUCTR_ZIP_DB_NAME    = "db";
+	private static final int PIPE_SIZE                 = 1024 * 1024;
+	private static final int STREAM_BUFFER_SIZE        = 65536;
+	private static final int DEFAULT_BATCH_SIZE        = 1000;
+	private static final long PROGRESS_INTERVAL        = 100000;
+
+	public static final String SYNC_COMPRESSION_LEVEL  = "sync.export.compression";
 	
 	private static final Map<Class, String> typeMap    = new LinkedHashMap<Class, String>();
 	private static final Map<Class, Method> methodMap  = new LinkedHashMap<Class, Method>();
@@ -116,7 +130,9 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		String mode                  = (String)attributes.get("mode");
 		String fileName              = (String)attributes.get("file");
 		String validate              = (String)attributes.get("validate");
+		String batchSizeSource       = (String)attributes.get("batchSize");
 		boolean doValidation         = true;
+		int batchSize                = DEFAULT_BATCH_SIZE;
 
 		// should we validate imported nodes?
 		if (validate != null) {
@@ -130,6 +146,19 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 				logger.log(Level.WARNING, "Unable to parse value for validation flag: {0}", t.getMessage());
 			}
 		}
+
+		// number of objects to import per transaction
+		if (batchSizeSource != null) {
+
+			try {
+
+				batchSize = Integer.parseInt(batchSizeSource);
+
+			} catch (Throwable t) {
+
+				logger.log(Level.WARNING, "Unable to parse value for batch size: {0}", t.getMessage());
+			}
+		}
 		
 		if (fileName == null) {
 			
@@ -142,7 +171,7 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 			
 		} else if ("import".equals(mode)) {
 			
-			importFromFile(graphDb, securityContext, fileName, doValidation);
+			importFromFile(graphDb, securityContext, fileName, doValidation, batchSize);
 			
 		} else {
 			
@@ -209,8 +238,17 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		try {
 			
 			Set<String> filesToInclude = new LinkedHashSet<String>();
-			ZipOutputStream zos        = new ZipOutputStream(outputStream);
-			PrintWriter writer         = new PrintWriter(new BufferedWriter(new OutputStreamWriter(zos)));
+			ZipOutputStream zos        = new ZipOutputStream(new BufferedOutputStream(outputStream, STREAM_BUFFER_SIZE));
+			int compressionLevel       = 6;
+
+			try {
+
+				compressionLevel = Integer.parseInt(Services.getConfigurationValue(SYNC_COMPRESSION_LEVEL, "6"));
+
+			} catch (NumberFormatException nfex) {
+
+				logger.log(Level.WARNING, "Invalid value for {0}, using default", SYNC_COMPRESSION_LEVEL);
+			}
 
 			// collect files to include in export
 			if (filePaths != null) {
@@ -222,19 +260,19 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 			}
 			
 			// set compression
-			zos.setLevel(6);
+			zos.setLevel(compressionLevel);
 			
 			// export files first
 			exportDirectory(zos, new File("files"), "", filesToInclude.isEmpty() ? null : filesToInclude);
 
 			// export database
-			exportDatabase(zos, writer, nodes, relationships);
+			exportDatabase(zos, nodes, relationships);
 			
 			// finish ZIP file
 			zos.finish();
 
 			// close stream
-			writer.close();
+			zos.close();
 
 		} catch (Throwable t) {
 			
@@ -245,9 +283,13 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 	}
 	
 	public static void importFromFile(final GraphDatabaseService graphDb, final SecurityContext securityContext, final String fileName, boolean doValidation) throws FrameworkException {
+		importFromFile(graphDb, securityContext, fileName, doValidation, DEFAULT_BATCH_SIZE);
+	}
+	
+	public static void importFromFile(final GraphDatabaseService graphDb, final SecurityContext securityContext, final String fileName, boolean doValidation, int batchSize) throws FrameworkException {
 		
 		try {
-			importFromStream(graphDb, securityContext, new FileInputStream(fileName), doValidation);
+			importFromStream(graphDb, securityContext, new FileInputStream(fileName), doValidation, batchSize);
 			
 		} catch (Throwable t) {
 			
@@ -256,16 +298,32 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 	}
 	
 	public static void importFromStream(final GraphDatabaseService graphDb, final SecurityContext securityContext, final InputStream inputStream, boolean doValidation) throws FrameworkException {
+		importFromStream(graphDb, securityContext, inputStream, doValidation, DEFAULT_BATCH_SIZE);
+	}
+	
+	/**
+	 * Imports the contents of the given stream. The database is imported in
+	 * chunks of the given number of objects, each in its own transaction, so
+	 * the import is not atomic.
+	 * 
+	 * @param graphDb
+	 * @param securityContext
+	 * @param inputStream
+	 * @param doValidation
+	 * @param batchSize
+	 * @throws FrameworkException 
+	 */
+	public static void importFromStream(final GraphDatabaseService graphDb, final SecurityContext securityContext, final InputStream inputStream, boolean doValidation, int batchSize) throws FrameworkException {
 
 		try {
-			ZipInputStream zis = new ZipInputStream(inputStream);
+			ZipInputStream zis = new ZipInputStream(new BufferedInputStream(inputStream, STREAM_BUFFER_SIZE));
 			ZipEntry entry     = zis.getNextEntry();
 			
 			while (entry != null) {
 
 				if (STRUCTR_ZIP_DB_NAME.equals(entry.getName())) {
 
-					importDatabase(graphDb, securityContext, zis, doValidation);
+					importDatabase(graphDb, securityContext, zis, doValidation, batchSize);
 
 				} else {
 					
@@ -481,72 +539,138 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		
 	}
 	
-	private static void exportDatabase(ZipOutputStream zos, PrintWriter writer, Iterable<Node> nodes, Iterable<Relationship> relationships) throws IOException, FrameworkException {
+	private static void exportDatabase(final ZipOutputStream zos, Iterable<Node> nodes, Iterable<Relationship> relationships) throws IOException, FrameworkException {
 		
 		// start database zip entry
-		ZipEntry dbEntry           = new ZipEntry(STRUCTR_ZIP_DB_NAME);
-		int nodeCount              = 0;
-		int relCount               = 0;
+		ZipEntry dbEntry                = new ZipEntry(STRUCTR_ZIP_DB_NAME);
+		ExecutorService executor        = Executors.newSingleThreadExecutor();
+		final PipedInputStream pipeIn   = new PipedInputStream(PIPE_SIZE);
+		PipedOutputStream pipeOut       = new PipedOutputStream(pipeIn);
+		PrintWriter writer              = new PrintWriter(new BufferedWriter(new OutputStreamWriter(pipeOut)));
+		boolean writeError              = false;
+		long nodeCount                  = 0;
+		long relCount                   = 0;
 		
-		zos.putNextEntry(dbEntry);
+		try {
 
-		for (Node node : nodes) {
+			zos.putNextEntry(dbEntry);
 
-			// ignore non-structr nodes
-			if (node.hasProperty(GraphObject.uuid.dbName())) {
+			// compress in a separate thread while the database is serialized
+			Future<Long> compressor = executor.submit(new Callable<Long>() {
 
-				writer.print("N");
+				@Override
+				public Long call() throws Exception {
 
-				for (String key : node.getPropertyKeys()) {
+					try {
+						return IOUtils.copyLarge(pipeIn, zos);
+
+					} finally {
 
-					serialize(writer, key);
-					serialize(writer, node.getProperty(key));
+						// makes the writing side fail instead of blocking forever
+						pipeIn.close();
+					}
 				}
+			});
 
-				// do not use platform-specific line ending here!
-				writer.print("\n");
+			try {
 
-				nodeCount++;
-			}
-		}
+				for (Node node : nodes) {
 
-		writer.flush();
+					// ignore non-structr nodes
+					if (node.hasProperty(GraphObject.uuid.dbName())) {
 
-		for (Relationship rel : relationships) {
+						writer.print("N");
 
-			// ignore non-structr nodes
-			if (rel.hasProperty(GraphObject.uuid.dbName())) {
+						for (String key : node.getPropertyKeys()) {
 
-				Node startNode = rel.getStartNode();
-				Node endNode   = rel.getEndNode();
+							serialize(writer, key);
+							serialize(writer, node.getProperty(key));
+						}
+
+						// do not use platform-specific line ending here!
+						writer.print("\n");
 
-				if (startNode.hasProperty("uuid") && endNode.hasProperty("uuid")) {
+						nodeCount++;
 
-					String startId = (String)startNode.getProperty("uuid");
-					String endId   = (String)endNode.getProperty("uuid");
+						if (nodeCount % PROGRESS_INTERVAL == 0) {
+							logger.log(Level.INFO, "Exported {0} nodes..", nodeCount);
+						}
+					}
+				}
 
-					writer.print("R");
-					serialize(writer, startId);
-					serialize(writer, endId);
-					serialize(writer, rel.getType().name());
+				writer.flush();
 
-					for (String key : rel.getPropertyKeys()) {
+				for (Relationship rel : relationships) {
 
-						serialize(writer, key);
-						serialize(writer, rel.getProperty(key));
-					}
+					// ignore non-structr nodes
+					if (rel.hasProperty(GraphObject.uuid.dbName())) {
 
-					// do not use platform-specific line ending here!
-					writer.print("\n");
+						Node startNode = rel.getStartNode();
+						Node endNode   = rel.getEndNode();
+
+						if (startNode.hasProperty("uuid") && endNode.hasProperty("uuid")) {
+
+							String startId = (String)startNode.getProperty("uuid");
+							String endId   = (String)endNode.getProperty("uuid");
+
+							writer.print("R");
+							serialize(writer, startId);
+							serialize(writer, endId);
+							serialize(writer, rel.getType().name());
+
+							for (String key : rel.getPropertyKeys()) {
+
+								serialize(writer, key);
+								serialize(writer, rel.getProperty(key));
+							}
+
+							// do not use platform-specific line ending here!
+							writer.print("\n");
+
+							relCount++;
+
+							if (relCount % PROGRESS_INTERVAL == 0) {
+								logger.log(Level.INFO, "Exported {0} rels..", relCount);
+							}
+						}
+
+					}
 
-					relCount++;
 				}
 
+				writer.flush();
+
+				// PrintWriter doesn't throw exceptions
+				writeError = writer.checkError();
+
+			} finally {
+
+				// signals the end of the data to the compressor
+				writer.close();
 			}
 
+			try {
+
+				compressor.get();
+
+			} catch (ExecutionException eex) {
+
+				throw new IOException(eex.getCause());
+
+			} catch (InterruptedException iex) {
+
+				throw new IOException(iex);
+			}
+
+		} finally {
+
+			// also reached if serialization fails, the compressor ends when the pipe is closed
+			executor.shutdown();
 		}
 
-		writer.flush();
+		if (writeError) {
+			throw new IOException("Unable to write database to ZIP file");
+		}
 
 		// finish db entry
 		zos.closeEntry();
@@ -593,149 +717,362 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		}
 	}
 	
-	private static void importDatabase(final GraphDatabaseService graphDb, final SecurityContext securityContext, final ZipInputStream zis, boolean doValidation) throws FrameworkException {
+	private static void importDatabase(final GraphDatabaseService graphDb, final SecurityContext securityContext, final ZipInputStream zis, boolean doValidation, final int batchSize) throws FrameworkException {
 	
-		final Value<Long> nodeCountValue = new StaticValue<Long>(0L);
-		final Value<Long> relCountValue  = new StaticValue<Long>(0L);
-		double t0                        = System.nanoTime();
-		
-		Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction(doValidation) {
-
-			@Override
-			public Object execute() throws FrameworkException {
-
-				Map<String, Node> uuidMap       = new LinkedHashMap<String, Node>();
-				List<Relationship> rels         = new LinkedList<Relationship>();
-				List<Node> nodes                = new LinkedList<Node>();
-				PropertyContainer currentObject = null;
-				BufferedReader reader           = null;
-				String currentKey               = null;
-				boolean finished                = false;
-				long nodeCount                  = 0;
-				long relCount                   = 0;
-					
-				try {
-					reader = new BufferedReader(new InputStreamReader(zis));
+		final DatabaseImporter importer = new DatabaseImporter(graphDb, securityContext, zis, batchSize);
+		double t0                       = System.nanoTime();
+		long lastProgress               = 0;
 
-					do {
+		while (!importer.isFinished()) {
 
-						try {
+			// every chunk is imported in its own transaction to limit memory usage
+			Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction(doValidation) {
 
-							// store current position
-							reader.mark(4);
+				@Override
+				public Object execute() throws FrameworkException {
 
-							// read one byte
-							String objectType = read(reader, 1);
+					importer.importChunk();
 
-							// skip newlines
-							if ("\n".equals(objectType)) {
-								continue;
-							}
+					return null;
+				}
 
-							if ("N".equals(objectType)) {
+			});
 
-								currentObject = graphDb.createNode();
-								nodeCount++;
+			long total = importer.getNodeCount() + importer.getRelCount();
+			if (total - lastProgress >= PROGRESS_INTERVAL) {
 
-								// store for later use
-								nodes.add((Node)currentObject);
+				logger.log(Level.INFO, "Imported {0} nodes and {1} rels..", new Object[] { importer.getNodeCount(), importer.getRelCount() } );
+				lastProgress = total;
+			}
+		}
+
+		double t1   = System.nanoTime();
+		double time = ((t1 - t0) / 1000000000.0);
+
+		DecimalFormat decimalFormat  = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+		logger.log(Level.INFO, "Imported {0} nodes and {1} rels in {2} s", new Object[] { importer.getNodeCount(), importer.getRelCount(), decimalFormat.format(time) });
+	}
 
-							} else if ("R".equals(objectType)) {
+	// ----- nested classes -----
+	/**
+	 * Reads the database entry of a sync file in chunks. The state of the
+	 * reader is kept between chunks, a chunk always ends before the start
+	 * of a new object.
+	 */
+	private static class DatabaseImporter {
+
+		private GraphDatabaseService graphDb    = null;
+		private SecurityContext securityContext = null;
+		private BufferedReader reader           = null;
+		private UuidMap uuidMap                 = new UuidMap();
+		private boolean finished                = false;
+		private int batchSize                   = 0;
+		private long nodeCount                  = 0;
+		private long relCount                   = 0;
+
+		public DatabaseImporter(final GraphDatabaseService graphDb, final SecurityContext securityContext, final InputStream inputStream, final int batchSize) {
+
+			this.graphDb         = graphDb;
+			this.securityContext = securityContext;
+			this.reader          = new BufferedReader(new InputStreamReader(inputStream), STREAM_BUFFER_SIZE);
+			this.batchSize       = Math.max(1, batchSize);
+		}
 
-								String startId     = (String)deserialize(reader);
-								String endId       = (String)deserialize(reader);
-								String relTypeName = (String)deserialize(reader);
+		public void importChunk() throws FrameworkException {
 
-								Node endNode   = uuidMap.get(endId);
-								Node startNode = uuidMap.get(startId);
+			List<Relationship> rels         = new LinkedList<Relationship>();
+			List<Node> nodes                = new LinkedList<Node>();
+			PropertyContainer currentObject = null;
+			String currentKey               = null;
+			int objectCount                 = 0;
 
-								if (startNode != null && endNode != null) {
+			try {
 
-									RelationshipType relType = DynamicRelationshipType.withName(relTypeName);
-									currentObject = startNode.createRelationshipTo(endNode, relType);
+				do {
 
-									// store for later use
-									rels.add((Relationship)currentObject);
-								}
+					try {
 
-								relCount++;
+						// store current position
+						reader.mark(4);
 
-							} else {
+						// read one byte
+						String objectType = read(reader, 1);
+
+						// skip newlines
+						if ("\n".equals(objectType)) {
+							continue;
+						}
+
+						if ("N".equals(objectType) || "R".equals(objectType)) {
+
+							// chunk is full, continue with this object in the next transaction
+							if (objectCount++ >= batchSize) {
 
-								// reset if not at the beginning of a line
 								reader.reset();
+								break;
+							}
+						}
+
+						if ("N".equals(objectType)) {
+
+							currentObject = graphDb.createNode();
+							nodeCount++;
+
+							// store for later use
+							nodes.add((Node)currentObject);
+
+						} else if ("R".equals(objectType)) {
+
+							String startId     = (String)deserialize(reader);
+							String endId       = (String)deserialize(reader);
+							String relTypeName = (String)deserialize(reader);
+
+							long endNodeId   = uuidMap.get(endId);
+							long startNodeId = uuidMap.get(startId);
+
+							// don't store properties of relationships that could not be created
+							currentObject = null;
+
+							if (startNodeId >= 0 && endNodeId >= 0) {
+
+								Node startNode           = graphDb.getNodeById(startNodeId);
+								Node endNode             = graphDb.getNodeById(endNodeId);
+								RelationshipType relType = DynamicRelationshipType.withName(relTypeName);
+
+								currentObject = startNode.createRelationshipTo(endNode, relType);
+
+								// store for later use
+								rels.add((Relationship)currentObject);
+
+							} else {
 
-								if (currentKey == null) {
+								logger.log(Level.WARNING, "Unable to find start or end node of relationship {0} -> {1}, ignoring.", new Object[] { startId, endId });
+							}
 
-									currentKey = (String)deserialize(reader);
+							relCount++;
 
-								} else {
+						} else {
 
-									if (currentObject != null) {
+							// reset if not at the beginning of a line
+							reader.reset();
 
-										Object obj = deserialize(reader);
+							if (currentKey == null) {
 
-										if ("uuid".equals(currentKey) && currentObject instanceof Node) {
+								currentKey = (String)deserialize(reader);
 
-											String uuid = (String)obj;
-											uuidMap.put(uuid, (Node)currentObject);
-										}
+							} else {
 
-										// store object in DB
-										currentObject.setProperty(currentKey, obj);
+								Object obj = deserialize(reader);
 
-										currentKey = null;
+								if (currentObject != null) {
 
-									} else {
+									if ("uuid".equals(currentKey) && currentObject instanceof Node) {
 
-										logger.log(Level.WARNING, "No current object to store property in.");
+										String uuid = (String)obj;
+										uuidMap.put(uuid, ((Node)currentObject).getId());
 									}
+
+									// store object in DB
+									currentObject.setProperty(currentKey, obj);
 								}
+
+								currentKey = null;
 							}
+						}
 
-						} catch (EOFException eofex) {
+					} catch (EOFException eofex) {
 
-							finished = true;
-						}
+						finished = true;
+					}
 
-					} while (!finished);
-					
-				} catch (IOException ioex) {
+				} while (!finished);
+
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "Unable to read database from sync file: {0}", ioex.getMessage());
+
+				finished = true;
+			}
+
+			// make nodes visible in transaction context
+			RelationshipFactory relFactory     = new RelationshipFactory(securityContext);
+			NodeFactory nodeFactory            = new NodeFactory(securityContext);
+
+			for (Node node : nodes) {
+
+				AbstractNode entity = nodeFactory.instantiate(node);
+				TransactionCommand.nodeCreated(entity);
+				entity.addToIndex();
+
+			}
+
+			for (Relationship rel : rels) {
+
+				AbstractRelationship entity = relFactory.instantiate(rel);
+				TransactionCommand.relationshipCreated(entity);
+				entity.addToIndex();
+			}
+		}
+
+		public boolean isFinished() {
+			return finished;
+		}
+
+		public long getNodeCount() {
+			return nodeCount;
+		}
+
+		public long getRelCount() {
+			return relCount;
+		}
+	}
+
+	/**
+	 * Maps uuids to node ids. Regular uuids (32 hex digits) are stored as
+	 * two longs in an open-addressing hash table, which needs a fraction of
+	 * the memory of a map with String keys. Other identifiers are stored
+	 * in a regular map.
+	 */
+	private static class UuidMap {
+
+		private Map<String, Long> fallback = new HashMap<String, Long>();
+		private long[] high                = null;
+		private long[] low                 = null;
+		private long[] values              = null;
+		private int size                   = 0;
+
+		public UuidMap() {
+			allocate(1 << 16);
+		}
+
+		public void put(final String uuid, final long nodeId) {
+
+			if (!isHex(uuid)) {
+
+				fallback.put(uuid, nodeId);
+				return;
+			}
+
+			if ((size + 1) > (values.length / 4) * 3) {
+				resize();
+			}
+
+			insert(parseHex(uuid, 0), parseHex(uuid, 16), nodeId);
+		}
+
+		/**
+		 * Returns the node id for the given uuid, or -1 if there is none.
+		 */
+		public long get(final String uuid) {
+
+			if (uuid == null) {
+				return -1;
+			}
+
+			if (!isHex(uuid)) {
+
+				Long nodeId = fallback.get(uuid);
+				return nodeId != null ? nodeId : -1;
+			}
+
+			long h   = parseHex(uuid, 0);
+			long l   = parseHex(uuid, 16);
+			int mask = values.length - 1;
+
+			for (int i = hash(h, l) & mask; values[i] != 0; i = (i + 1) & mask) {
+
+				if (high[i] == h && low[i] == l) {
+					return values[i] - 1;
 				}
-				
-				logger.log(Level.INFO, "Imported {0} nodes and {1} rels, committing transaction..", new Object[] { nodeCount, relCount } );
-				
-				nodeCountValue.set(securityContext, nodeCount);
-				relCountValue.set(securityContext, relCount);
+			}
 
-				// make nodes visible in transaction context
-				RelationshipFactory relFactory     = new RelationshipFactory(securityContext);
-				NodeFactory nodeFactory            = new NodeFactory(securityContext);
-				
-				for (Node node : nodes) {
-					
-					AbstractNode entity = nodeFactory.instantiate(node);
-					TransactionCommand.nodeCreated(entity);
-					entity.addToIndex();
-					
+			return -1;
+		}
+
+		private void insert(final long h, final long l, final long nodeId) {
+
+			int mask = values.length - 1;
+			int i    = hash(h, l) & mask;
+
+			while (values[i] != 0) {
+
+				if (high[i] == h && low[i] == l) {
+
+					values[i] = nodeId + 1;
+					return;
 				}
-				
-				for (Relationship rel : rels) {
-					
-					AbstractRelationship entity = relFactory.instantiate(rel);
-					TransactionCommand.relationshipCreated(entity);
-					entity.addToIndex();
+
+				i = (i + 1) & mask;
+			}
+
+			high[i]   = h;
+			low[i]    = l;
+
+			// 0 marks an empty slot
+			values[i] = nodeId + 1;
+
+			size++;
+		}
+
+		private void resize() {
+
+			long[] oldHigh   = high;
+			long[] oldLow    = low;
+			long[] oldValues = values;
+
+			allocate(oldValues.length * 2);
+
+			for (int i = 0; i < oldValues.length; i++) {
+
+				if (oldValues[i] != 0) {
+					insert(oldHigh[i], oldLow[i], oldValues[i] - 1);
 				}
-				
-				return null;
 			}
+		}
 
-		});
+		private void allocate(final int capacity) {
 
-		double t1   = System.nanoTime();
-		double time = ((t1 - t0) / 1000000000.0);
+			high   = new long[capacity];
+			low    = new long[capacity];
+			values = new long[capacity];
+			size   = 0;
+		}
 
-		DecimalFormat decimalFormat  = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
-		logger.log(Level.INFO, "Import done in {0} s", decimalFormat.format(time));
+		private static int hash(final long h, final long l) {
+
+			long x = (h * 0x9E3779B97F4A7C15L) ^ l;
+
+			x ^= (x >>> 32);
+			x ^= (x >>> 16);
+
+			return (int)x;
+		}
+
+		private static boolean isHex(final String uuid) {
+
+			if (uuid.length() != 32) {
+				return false;
+			}
+
+			for (int i = 0; i < 32; i++) {
+
+				if (Character.digit(uuid.charAt(i), 16) < 0) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		private static long parseHex(final String uuid, final int offset) {
+
+			long value = 0;
+
+			for (int i = offset; i < offset + 16; i++) {
+				value = (value << 4) | Character.digit(uuid.charAt(i), 16);
+			}
+
+			return value;
+		}
 	}
 }
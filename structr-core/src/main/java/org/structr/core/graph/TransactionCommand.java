@@ -21,7 +21,10 @@
 package org.structr.core.graph;
 
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Transaction;
@@ -33,6 +36,8 @@ import org.neo4j.kernel.DeadlockDetectedException;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.RetryException;
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.property.PropertyKey;
@@ -60,7 +65,7 @@ public class TransactionCommand extends NodeServiceCommand {
 	private static final Logger logger                                  = Logger.getLogger(TransactionCommand.class.getName());
 	private static final ThreadLocal<TransactionCommand> currentCommand = new ThreadLocal<TransactionCommand>();
 	private static final ThreadLocal<Transaction>        transactions   = new ThreadLocal<Transaction>();
-	private static final MultiSemaphore                  semaphore      = new MultiSemaphore();
+	private static final LockManager                     lockManager    = new LockManager();
 	
 	private ModificationQueue modificationQueue = null;
 	private ErrorBuffer errorBuffer             = null;
@@ -99,6 +104,131 @@ public class TransactionCommand extends NodeServiceCommand {
 		}
 	}
 
+	/**
+	 * Executes the given transaction like {@link #execute}, but allows
+	 * it to be committed together with other concurrent transactions if
+	 * group commit is enabled (see {@link Services#TRANSACTION_GROUP_COMMIT}).
+	 * 
+	 * Use this for small, independent top-level transactions that can
+	 * safely be executed more than once.
+	 */
+	public <T> T executeGrouped(StructrTransaction<T> transaction) throws FrameworkException {
+
+		if (transactions.get() == null && GroupCommitter.isEnabled() && !GroupCommitter.isCommitterThread()) {
+
+			GraphDatabaseService graphDb = (GraphDatabaseService) arguments.get("graphDb");
+
+			return GroupCommitter.getInstance(graphDb).submit(this, transaction);
+		}
+
+		return execute(transaction);
+	}
+
+	/**
+	 * Executes the transactions of the given jobs in a single physical
+	 * transaction, with separate callbacks and validation for each of
+	 * them. If any of them fails, the physical transaction is rolled
+	 * back and false is returned.
+	 */
+	static boolean executeGroup(final GraphDatabaseService graphDb, final List<GroupCommitter.Job> jobs) {
+
+		Set<String> synchronizationKeys = new TreeSet<String>();
+		Transaction tx                  = graphDb.beginTx();
+		boolean success                 = true;
+
+		transactions.set(tx);
+
+		try {
+
+			for (GroupCommitter.Job job : jobs) {
+
+				TransactionCommand command = job.getCommand();
+				StructrTransaction tr      = job.getTransaction();
+
+				command.modificationQueue  = new ModificationQueue();
+				command.errorBuffer        = new ErrorBuffer();
+
+				currentCommand.set(command);
+
+				job.setResult(tr.execute());
+
+				if (!command.modificationQueue.doInnerCallbacks(command.securityContext, command.errorBuffer) && tr.doValidation) {
+
+					success = false;
+					break;
+				}
+			}
+
+			if (success) {
+
+				// modifications of later transactions may have changed
+				// the values of earlier ones, so collect keys afterwards
+				for (GroupCommitter.Job job : jobs) {
+					synchronizationKeys.addAll(job.getCommand().modificationQueue.getSynchronizationKeys());
+				}
+
+				lockManager.acquire(synchronizationKeys);
+
+				for (GroupCommitter.Job job : jobs) {
+
+					TransactionCommand command = job.getCommand();
+
+					currentCommand.set(command);
+
+					if (!command.modificationQueue.doValidation(command.securityContext, command.errorBuffer, job.getTransaction().doValidation)) {
+
+						success = false;
+						break;
+					}
+				}
+			}
+
+		} catch (Throwable t) {
+
+			// the jobs are executed again one by one, which reports the error to the caller
+			logger.log(Level.WARNING, "Group transaction failed, executing transactions individually", t);
+			success = false;
+
+		} finally {
+
+			if (success) {
+				tx.success();
+			} else {
+				tx.failure();
+			}
+
+			try {
+				tx.finish();
+
+			} catch (Throwable t) {
+
+				logger.log(Level.WARNING, "Group commit failed: {0}", t.getMessage());
+				success = false;
+
+			} finally {
+
+				lockManager.release(synchronizationKeys);
+
+				currentCommand.remove();
+				transactions.remove();
+			}
+		}
+
+		if (success) {
+
+			// no error, notify entities
+			for (GroupCommitter.Job job : jobs) {
+
+				TransactionCommand command = job.getCommand();
+
+				command.modificationQueue.doOuterCallbacks(command.securityContext);
+				command.modificationQueue.clear();
+			}
+		}
+
+		return success;
+	}
+
 	private <T> T executeInternal(StructrTransaction<T> transaction) throws FrameworkException {
 		
 		GraphDatabaseService graphDb    = (GraphDatabaseService) arguments.get("graphDb");
@@ -142,10 +272,10 @@ public class TransactionCommand extends NodeServiceCommand {
 
 				// we need to protect the validation and indexing part of every transaction
 				// from being entered multiple times in the presence of validators
-				// 3. acquire semaphores for each modified type
-				try { semaphore.acquire(synchronizationKeys); } catch (InterruptedException iex) { return null; }
+				// 3. acquire locks for each modified type, property and value
+				try { lockManager.acquire(synchronizationKeys); } catch (InterruptedException iex) { return null; }
 
-				// finally, do validation under the protection of the semaphores for each type
+				// finally, do validation under the protection of the locks
 				if (!modificationQueue.doValidation(securityContext, errorBuffer, transaction.doValidation)) {
 
 					// create error
@@ -202,8 +332,8 @@ public class TransactionCommand extends NodeServiceCommand {
 					
 				} finally {
 
-					// release semaphores as the transaction is now finished
-					semaphore.release(synchronizationKeys);	// careful: this can be null
+					// release locks as the transaction is now finished
+					lockManager.release(synchronizationKeys);	// careful: this can be null
 
 					// cleanup
 					currentCommand.remove();
@@ -356,6 +486,90 @@ public class TransactionCommand extends NodeServiceCommand {
 		}
 	}
 	
+	/**
+	 * Returns the commit lock wait statistics, mapped by type.
+	 * 
+	 * @return the statistics
+	 */
+	public static Map<String, Map<String, Object>> getLockStatistics() {
+		return lockManager.getStatistics();
+	}
+	
+	/**
+	 * Indicates whether the transaction of the current thread has modified
+	 * data that access control decisions depend on. Cached permission
+	 * decisions must not be used in that case.
+	 * 
+	 * @return true if permissions were modified in the current transaction
+	 */
+	public static boolean permissionsModified() {
+		
+		TransactionCommand command = currentCommand.get();
+		if (command != null) {
+			
+			ModificationQueue modificationQueue = command.getModificationQueue();
+			if (modificationQueue != null) {
+				
+				return modificationQueue.isPermissionsModified();
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Defers the index update of the given property to commit time, so
+	 * that each property of an object is indexed only once per transaction
+	 * (see {@link Services#INDEX_DEFERRED}).
+	 * 
+	 * @return false if the index needs to be updated immediately
+	 */
+	public static boolean deferIndexing(GraphObject obj, PropertyKey key, Object value) {
+
+		ModificationQueue modificationQueue = getCurrentModificationQueue();
+		if (modificationQueue != null && isDeferredIndexing()) {
+
+			return modificationQueue.deferIndexing(obj, key, value);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Defers setting the last modified date of the given object to commit
+	 * time, so that it is written only once per transaction.
+	 * 
+	 * @return false if the date needs to be set immediately
+	 */
+	public static boolean deferLastModifiedDate(GraphObject obj) {
+
+		ModificationQueue modificationQueue = getCurrentModificationQueue();
+		if (modificationQueue != null && isDeferredIndexing()) {
+
+			return modificationQueue.deferLastModifiedDate(obj);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Applies the deferred index updates of the current transaction. Must
+	 * be called before the index is queried, so that queries see the
+	 * modifications of their own transaction.
+	 */
+	public static void applyDeferredIndexing() {
+
+		ModificationQueue modificationQueue = getCurrentModificationQueue();
+		if (modificationQueue != null) {
+
+			modificationQueue.doIndexing();
+		}
+	}
+
+	public static boolean isDeferredIndexing() {
+		return Boolean.parseBoolean(Services.getConfigurationValue(Services.INDEX_DEFERRED, "true"));
+	}
+
 	public static boolean inTransaction() {
 		return currentCommand.get() != null;
 	}
@@ -363,4 +577,15 @@ public class TransactionCommand extends NodeServiceCommand {
 	private ModificationQueue getModificationQueue() {
 		return modificationQueue;
 	}
+
+	private static ModificationQueue getCurrentModificationQueue() {
+
+		TransactionCommand command = currentCommand.get();
+		if (command != null) {
+
+			return command.getModificationQueue();
+		}
+
+		return null;
+	}
 }
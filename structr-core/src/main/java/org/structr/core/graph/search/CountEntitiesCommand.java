@@ -32,6 +32,7 @@ import org.neo4j.graphdb.index.IndexHits;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.graph.NodeService;
 import org.structr.core.graph.NodeServiceCommand;
+import org.structr.core.graph.TransactionCommand;
 
 /**
  * A special command that uses a Lucene index lookup to count the number of
@@ -54,6 +55,9 @@ public class CountEntitiesCommand extends NodeServiceCommand {
 		String type       = entityType.getSimpleName();
 		int count = -1;
 
+		// make modifications of the current transaction visible
+		TransactionCommand.applyDeferredIndexing();
+
 		if(type != null) {
 
 			// create type query first
@@ -28,6 +28,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
@@ -45,10 +46,14 @@ import org.structr.common.geo.GeoCodingResult;
 import org.structr.common.geo.GeoHelper;
 import org.structr.core.GraphObject;
 import org.structr.core.Result;
+import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.Factory;
+import org.structr.core.graph.InstantiatingIterable;
 import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.NodeService.NodeIndex;
 import org.structr.core.graph.NodeServiceCommand;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.property.PropertyKey;
 
 /**
@@ -69,6 +74,14 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 	public abstract Index<S> getFulltextIndex();
 	public abstract Index<S> getKeywordIndex();
 	public abstract LayerNodeIndex getSpatialIndex();
+
+	/**
+	 * Returns the per-type index for the given index name and type, or
+	 * null if there is no queryable per-type index.
+	 */
+	public Index<S> getTypeIndex(final NodeIndex name, final String type) {
+		return null;
+	}
 	
 
 	// ----- public command methods -----
@@ -158,9 +171,11 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 			return Result.EMPTY_RESULT;
 		}
 
+		// make modifications of the current transaction visible
+		TransactionCommand.applyDeferredIndexing();
+
 		Factory<S, T> factory        = getFactory(securityContext, includeDeletedAndHidden, publicOnly, pageSize, page, offsetId);
 		boolean filterResults        = true;
-		final Index<S> index;
 		
 		if (securityContext.getUser(false) == null) {
 			
@@ -243,38 +258,9 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 
 		} else {
 
-			BooleanQuery query    = new BooleanQuery();
-			boolean allExactMatch = true;
-
-			// build query
-			for (SearchAttribute attr : searchAttrs) {
-
-				Query queryElement = attr.getQuery();
-				if (queryElement != null) {
-
-					query.add(queryElement, attr.getOccur());
-				}
-
-				allExactMatch &= attr.isExactMatch();
-			}
-
-			QueryContext queryContext = new QueryContext(query);
+			QueryContext queryContext = buildQuery(searchAttrs, sortKey, sortDescending);
 			IndexHits hits            = null;
 
-			if (sortKey != null) {
-
-				Integer sortType = sortKey.getSortType();
-				if (sortType != null) {
-
-					queryContext.sort(new Sort(new SortField(sortKey.dbName(), sortType, sortDescending)));
-
-				} else {
-
-					queryContext.sort(new Sort(new SortField(sortKey.dbName(), Locale.getDefault(), sortDescending)));
-				}
-
-			}
-
 			if (distanceSearch != null) {
 
 				if (coords != null) {
@@ -298,50 +284,9 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 				// as the results must be filtered by type anyway
 				intermediateResult = new NodeFactory(securityContext).instantiate(hits);
 
-			} else if (allExactMatch) {
-
-				index = getKeywordIndex();
-
-				synchronized (index) {
-
-					try {
-						hits = index.query(queryContext);
-
-					} catch (NumberFormatException nfe) {
-
-						logger.log(Level.SEVERE, "Could not sort results", nfe);
-
-						// retry without sorting
-						queryContext.sort(null);
-						hits = index.query(queryContext);
-
-					}
-				}
-
-				// all luecene query, do not filter results
-				filterResults = hasEmptySearchFields;
-				intermediateResult = factory.instantiate(hits);
-
 			} else {
 
-				// Default: Mixed or fulltext-only search: Use fulltext index
-				index = getFulltextIndex();
-
-				synchronized (index) {
-
-					try {
-						hits = index.query(queryContext);
-
-					} catch (NumberFormatException nfe) {
-
-						logger.log(Level.SEVERE, "Could not sort results", nfe);
-
-						// retry without sorting
-						queryContext.sort(null);
-						hits = index.query(queryContext);
-
-					}
-				}
+				hits = queryIndex(getIndex(searchAttrs), queryContext);
 
 				// all luecene query, do not filter results
 				filterResults = hasEmptySearchFields;
@@ -356,8 +301,8 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		if (filterResults) {
 
 			// sorted result set
-			List<GraphObject> finalResult            = new LinkedList<GraphObject>();
 			List<GraphObject> intermediateResultList = intermediateResult.getResults();
+			List<GraphObject> finalResult            = new ArrayList<GraphObject>(intermediateResultList.size());
 			int resultCount                          = 0;
 
 			if (intermediateResultList.isEmpty()) {
@@ -403,6 +348,214 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		}
 	}
 	
+	/**
+	 * Returns an iterable over all nodes which fit to all search criteria,
+	 * sorted by the given key. Unlike {@link #search}, the results of a
+	 * pure Lucene query are instantiated one by one while the iterable is
+	 * iterated, so the complete result set is never held in memory. The
+	 * index hits are closed when the iterable has been iterated completely.
+	 * 
+	 * Searches that need to filter or merge results in memory (distance,
+	 * source or empty field searches) return the list of a normal search.
+	 *
+	 * @param includeDeletedAndHidden       If true, include nodes marked as deleted or hidden
+	 * @param publicOnly                    If true, don't include nodes which are not public
+	 * @param searchAttrs                   List with search attributes
+	 * @param sortKey                       Key to sort results
+	 * @param sortDescending                If true, sort results in descending order (higher values first)
+	 * @return the results
+	 */
+	public Iterable<T> iterate(final boolean includeDeletedAndHidden, final boolean publicOnly, final List<SearchAttribute> searchAttrs, final PropertyKey sortKey, final boolean sortDescending) throws FrameworkException {
+
+		for (SearchAttribute attr : searchAttrs) {
+
+			if (attr instanceof DistanceSearchAttribute || attr instanceof SourceSearchAttribute || attr instanceof EmptySearchAttribute) {
+
+				return search(includeDeletedAndHidden, publicOnly, searchAttrs, sortKey, sortDescending, NodeFactory.DEFAULT_PAGE_SIZE, NodeFactory.DEFAULT_PAGE, null).getResults();
+			}
+		}
+
+		// make modifications of the current transaction visible
+		TransactionCommand.applyDeferredIndexing();
+
+		Factory<S, T> factory = getFactory(securityContext, includeDeletedAndHidden, publicOnly, NodeFactory.DEFAULT_PAGE_SIZE, NodeFactory.DEFAULT_PAGE, null);
+
+		if (securityContext.getUser(false) == null) {
+			
+			searchAttrs.add(Search.andExactProperty(securityContext, GraphObject.visibleToPublicUsers, true));
+			
+		}
+
+		IndexHits<S> hits = queryIndex(getIndex(searchAttrs), buildQuery(searchAttrs, sortKey, sortDescending));
+
+		return new InstantiatingIterable<S, T>(securityContext, factory, hits, null);
+	}
+	
+	/**
+	 * Combines the given search attributes into one Lucene query, sorted
+	 * by the given key.
+	 */
+	private QueryContext buildQuery(final List<SearchAttribute> searchAttrs, final PropertyKey sortKey, final boolean sortDescending) {
+
+		BooleanQuery query = new BooleanQuery();
+
+		for (SearchAttribute attr : searchAttrs) {
+
+			Query queryElement = attr.getQuery();
+			if (queryElement != null) {
+
+				query.add(queryElement, attr.getOccur());
+			}
+		}
+
+		QueryContext queryContext = new QueryContext(query);
+
+		if (sortKey != null) {
+
+			Integer sortType = sortKey.getSortType();
+			if (sortType != null) {
+
+				queryContext.sort(new Sort(new SortField(sortKey.dbName(), sortType, sortDescending)));
+
+			} else {
+
+				queryContext.sort(new Sort(new SortField(sortKey.dbName(), Locale.getDefault(), sortDescending)));
+			}
+
+		}
+
+		return queryContext;
+	}
+
+	/**
+	 * Returns the index to query for the given search attributes: the
+	 * keyword index if all attributes match exactly, the fulltext index
+	 * otherwise (mixed or fulltext-only search).
+	 */
+	private Index<S> getIndex(final List<SearchAttribute> searchAttrs) {
+
+		boolean allExactMatch = true;
+
+		for (SearchAttribute attr : searchAttrs) {
+
+			allExactMatch &= attr.isExactMatch();
+		}
+
+		String type = getRequiredType(searchAttrs);
+
+		if (allExactMatch) {
+
+			return getIndex(NodeIndex.keyword, getKeywordIndex(), type);
+		}
+
+		return getIndex(NodeIndex.fulltext, getFulltextIndex(), type);
+	}
+
+	/**
+	 * Returns the per-type index if the query is restricted to a single
+	 * type and a complete per-type index exists, the given global index
+	 * otherwise. The type clause stays in the query, so the result is the
+	 * same in both cases.
+	 */
+	private Index<S> getIndex(final NodeIndex name, final Index<S> globalIndex, final String type) {
+
+		if (type != null) {
+
+			Index<S> typeIndex = getTypeIndex(name, type);
+			if (typeIndex != null) {
+
+				return typeIndex;
+			}
+		}
+
+		return globalIndex;
+	}
+
+	/**
+	 * Returns the type all results must have, i.e. the value of a single
+	 * required type attribute, or null.
+	 */
+	private String getRequiredType(final List<SearchAttribute> searchAttrs) {
+
+		String type = null;
+
+		for (SearchAttribute attr : searchAttrs) {
+
+			if (Occur.MUST.equals(attr.getOccur())) {
+
+				SearchAttribute typeAttr = attr;
+
+				// type and subtypes of a type without subtypes
+				if (attr instanceof SearchAttributeGroup) {
+
+					List<SearchAttribute> groupAttrs = ((SearchAttributeGroup) attr).getSearchAttributes();
+					if (groupAttrs.size() == 1) {
+
+						typeAttr = groupAttrs.get(0);
+					}
+				}
+
+				if (typeAttr instanceof TypeSearchAttribute) {
+
+					if (type != null) {
+
+						// more than one type
+						return null;
+					}
+
+					type = typeAttr.getStringValue();
+				}
+			}
+		}
+
+		return type;
+	}
+
+	/**
+	 * Queries the given index. Unless concurrent search is enabled (see
+	 * {@link Services#SEARCH_CONCURRENT}), queries are serialized on the
+	 * index monitor like index writes are.
+	 * 
+	 * In concurrent mode, the Lucene index provider takes care of searcher
+	 * reuse and refreshes its readers when a transaction commits, so no
+	 * additional locking is needed for read access.
+	 * 
+	 * @param index
+	 * @param queryContext
+	 * @return the index hits
+	 */
+	private IndexHits<S> queryIndex(final Index<S> index, final QueryContext queryContext) {
+
+		if (isConcurrentSearch()) {
+
+			return doQueryIndex(index, queryContext);
+		}
+
+		synchronized (index) {
+
+			return doQueryIndex(index, queryContext);
+		}
+	}
+
+	private IndexHits<S> doQueryIndex(final Index<S> index, final QueryContext queryContext) {
+
+		try {
+			return index.query(queryContext);
+
+		} catch (NumberFormatException nfe) {
+
+			logger.log(Level.SEVERE, "Could not sort results", nfe);
+
+			// retry without sorting
+			queryContext.sort(null);
+			return index.query(queryContext);
+		}
+	}
+
+	public static boolean isConcurrentSearch() {
+		return Boolean.parseBoolean(Services.getConfigurationValue(Services.SEARCH_CONCURRENT, "false"));
+	}
+	
 	private List<GraphObject> mergeSources(List<SourceSearchAttribute> sources) {
 		
 		LinkedList<GraphObject> mergedResult = new LinkedList<GraphObject>();
@@ -22,6 +22,7 @@ package org.structr.core.graph.search;
 
 
 import org.structr.core.GraphObject;
+import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.NodeFactory;
 
@@ -74,4 +75,9 @@ public class SearchNodeCommand<T extends GraphObject> extends SearchCommand<Node
 	public LayerNodeIndex getSpatialIndex() {
 		 return (LayerNodeIndex) arguments.get(NodeService.NodeIndex.layer.name());
 	}
+
+	@Override
+	public Index<Node> getTypeIndex(NodeService.NodeIndex name, String type) {
+		return Services.getService(NodeService.class).getQueryableTypeIndex(name, type);
+	}
 }
@@ -29,6 +29,7 @@ import org.structr.core.property.PropertyKey;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.NodeService.NodeIndex;
 import org.structr.core.graph.NodeServiceCommand;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.entity.Principal;
 import org.structr.core.graph.NodeFactory;
@@ -46,6 +47,9 @@ public class SearchUserCommand extends NodeServiceCommand {
 
 		final NodeFactory nodeFactory = new NodeFactory(securityContext);
 
+		// make modifications of the current transaction visible
+		TransactionCommand.applyDeferredIndexing();
+
 		switch (parameters.length) {
 
 			case 1 : {
@@ -79,11 +83,19 @@ public class SearchUserCommand extends NodeServiceCommand {
 				final Index<Node> index = getIndexFromArguments(idx, arguments);
 				IndexHits<Node> indexHits = null;
 
-				synchronized (index) {
+				if (SearchCommand.isConcurrentSearch()) {
 
 					// see: http://docs.neo4j.org/chunked/milestone/indexing-create-advanced.html
 					indexHits = index.query( key.dbName(), "\"" + userNickName + "\"" );
-					
+
+				} else {
+
+					synchronized (index) {
+
+						// see: http://docs.neo4j.org/chunked/milestone/indexing-create-advanced.html
+						indexHits = index.query( key.dbName(), "\"" + userNickName + "\"" );
+
+					}
 				}
 				
 				try {
@@ -24,25 +24,41 @@ import org.structr.core.agent.Agent;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.entity.GenericNode;
+import org.structr.core.graph.EntityInstantiator;
 
 //~--- JDK imports ------------------------------------------------------------
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import java.lang.reflect.Modifier;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.structr.core.*;
 
@@ -62,6 +78,10 @@ public class ModuleService implements SingletonService {
 	private static final Map<String, Class> relationshipClassCache           = new ConcurrentHashMap<String, Class>(10, 0.9f, 8);
 	private static final Map<String, Class> nodeEntityClassCache             = new ConcurrentHashMap<String, Class>(100, 0.9f, 8);
 	private static final Map<String, Set<Class>> interfaceCache              = new ConcurrentHashMap<String, Set<Class>>(10, 0.9f, 8);
+	private static final Map<String, Boolean> unknownNodeEntityTypes         = new ConcurrentHashMap<String, Boolean>(10, 0.9f, 8);
+	private static final Map<String, Boolean> unknownRelationshipTypes       = new ConcurrentHashMap<String, Boolean>(10, 0.9f, 8);
+	private static final int MAX_UNKNOWN_TYPES                               = 10000;
+	private static final String SCAN_INDEX_FILE                              = "modules.index";
 	private static final Set<String> agentPackages                           = new LinkedHashSet<String>();
 	private static final String fileSep                                      = System.getProperty("file.separator");
 	private static final String fileSepEscaped                               = fileSep.replaceAll("\\\\", "\\\\\\\\");	// ....
@@ -113,7 +133,23 @@ public class ModuleService implements SingletonService {
 	@Override
 	public void initialize(Map<String, String> context) {
 
-		scanResources();
+		int threads = Runtime.getRuntime().availableProcessors();
+		File index  = null;
+
+		try {
+			threads = Math.max(1, Integer.parseInt(Services.getConfigurationValue(Services.MODULE_SCAN_THREADS, Integer.toString(threads))));
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid value for {0}, using default", Services.MODULE_SCAN_THREADS);
+		}
+
+		if (Boolean.parseBoolean(Services.getConfigurationValue(Services.MODULE_SCAN_INDEX, "true"))) {
+
+			index = new File(Services.getConfigurationValue(Services.BASE_PATH, "."), SCAN_INDEX_FILE);
+		}
+
+		scanResources(threads, index);
 
 	}
 
@@ -126,19 +162,110 @@ public class ModuleService implements SingletonService {
 
 	}
 
-	private void scanResources() {
+	/**
+	 * Scans all resources in parallel and imports the classes found in
+	 * resource order, so the first match still wins for each type name.
+	 *
+	 * The scan threads only load the classes, all classes are initialized
+	 * by {@link #importResource} on the calling thread, because many of
+	 * them register themselves in static initializers (websocket commands,
+	 * maintenance commands etc.). The class names found in JAR and WAR
+	 * files are stored in the given index file, keyed by the size and
+	 * modification date of the file, so unmodified files are not
+	 * enumerated again on the next start.
+	 */
+	private void scanResources(final int threads, final File indexFile) {
+
+		final ScanIndex index           = new ScanIndex(indexFile);
+		final AtomicInteger indexHits   = new AtomicInteger(0);
+		final ClassLoader classLoader   = ModuleService.class.getClassLoader();
+		Set<String> resourcePaths       = getResourcesToScan();
+		List<Future<Module>> modules    = new ArrayList<Future<Module>>();
+		ExecutorService executorService = Executors.newFixedThreadPool(threads);
+		long t0                         = System.currentTimeMillis();
+
+		for (final String resourcePath : resourcePaths) {
+
+			modules.add(executorService.submit(new Callable<Module>() {
 
-		Set<String> resourcePaths = getResourcesToScan();
+				@Override
+				public Module call() throws Exception {
 
-		for (String resourcePath : resourcePaths) {
+					Module module = index.get(resourcePath);
+					if (module != null) {
 
-			scanResource(resourcePath);
+						indexHits.incrementAndGet();
+
+					} else {
+
+						module = scanModule(resourcePath, index);
+					}
+
+					loadClasses(module, classLoader);
+
+					return module;
+				}
+			}));
 		}
 
-		logger.log(Level.INFO, "{0} JARs scanned", resourcePaths.size());
+		executorService.shutdown();
+
+		for (Future<Module> future : modules) {
+
+			try {
+
+				importResource(future.get());
+
+			} catch (InterruptedException iex) {
+
+				logger.log(Level.WARNING, "Interrupted while scanning resources");
+
+				// restore interrupt flag and stop importing
+				Thread.currentThread().interrupt();
+				executorService.shutdownNow();
+				break;
+
+			} catch (ExecutionException eex) {
+
+				logger.log(Level.WARNING, "Error scanning resource: {0}", eex.getCause());
+
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "Error importing resource: {0}", ioex);
+			}
+		}
+
+		index.store();
+
+		logger.log(Level.INFO, "{0} JARs scanned in {1} ms, {2} from index", new Object[] { resourcePaths.size(), System.currentTimeMillis() - t0, indexHits.get() });
 
 	}
 
+	private Module scanModule(final String resourcePath, final ScanIndex index) throws IOException {
+
+		Module module = loadResource(resourcePath);
+
+		index.put(resourcePath, module.getClasses());
+
+		return module;
+	}
+
+	/**
+	 * Loads the classes of the given module without initializing them,
+	 * so that the initialization in {@link #importResource} does not
+	 * have to wait for the class loader.
+	 */
+	private void loadClasses(final Module module, final ClassLoader classLoader) {
+
+		for (String name : module.getClasses()) {
+
+			try {
+				Class.forName(StringUtils.removeStart(name, "."), false, classLoader);
+
+			} catch (Throwable t) {}
+		}
+	}
+
 	/**
 	 * Processes the information from the given module and makes them available for the service layer.
 	 *
@@ -169,6 +296,7 @@ public class ModuleService implements SingletonService {
 					if (AbstractNode.class.isAssignableFrom(clazz)) {
 
 						EntityContext.init(clazz);
+						EntityInstantiator.register(clazz);
 						
 						String simpleName = clazz.getSimpleName();
 						String fullName   = clazz.getName();
@@ -199,6 +327,7 @@ public class ModuleService implements SingletonService {
 					if (AbstractRelationship.class.isAssignableFrom(clazz)) {
 
 						EntityContext.init(clazz);
+						EntityInstantiator.register(clazz);
 
 						String simpleName = clazz.getSimpleName();
 						String fullName   = clazz.getName();
@@ -246,6 +375,20 @@ public class ModuleService implements SingletonService {
 
 		}
 
+		// new classes might resolve previously unknown types
+		unknownNodeEntityTypes.clear();
+		unknownRelationshipTypes.clear();
+		EntityInstantiator.clearUninstantiableTypes();
+	}
+
+	private static void rememberUnknownType(final Map<String, Boolean> unknownTypes, final String name) {
+
+		// type names can come from user input, so the number of entries is limited
+		if (unknownTypes.size() > MAX_UNKNOWN_TYPES) {
+			unknownTypes.clear();
+		}
+
+		unknownTypes.put(name, Boolean.TRUE);
 	}
 
 	private Module loadResource(String resource) throws IOException {
@@ -413,7 +556,8 @@ public class ModuleService implements SingletonService {
 
 			ret = nodeEntityClassCache.get(name);
 
-			if (ret == null) {
+			// do not probe the class path again for types that are known to be missing
+			if (ret == null && !unknownNodeEntityTypes.containsKey(name)) {
 
 				for (String possiblePath : nodeEntityPackages) {
 
@@ -426,6 +570,7 @@ public class ModuleService implements SingletonService {
 							if (!Modifier.isAbstract(nodeClass.getModifiers())) {
 
 								nodeEntityClassCache.put(name, nodeClass);
+								ret = nodeClass;
 
 								// first match wins
 								break;
@@ -441,6 +586,9 @@ public class ModuleService implements SingletonService {
 
 				}
 
+				if (ret == null) {
+					rememberUnknownType(unknownNodeEntityTypes, name);
+				}
 			}
 
 		}
@@ -457,7 +605,8 @@ public class ModuleService implements SingletonService {
 
 			ret = relationshipClassCache.get(name);
 
-			if (ret == null) {
+			// do not probe the class path again for types that are known to be missing
+			if (ret == null && !unknownRelationshipTypes.containsKey(name)) {
 
 				for (String possiblePath : relationshipPackages) {
 
@@ -470,6 +619,7 @@ public class ModuleService implements SingletonService {
 							if (!Modifier.isAbstract(nodeClass.getModifiers())) {
 
 								relationshipClassCache.put(name, nodeClass);
+								ret = nodeClass;
 
 								// first match wins
 								break;
@@ -485,6 +635,9 @@ public class ModuleService implements SingletonService {
 
 				}
 
+				if (ret == null) {
+					rememberUnknownType(unknownRelationshipTypes, name);
+				}
 			}
 
 		}
@@ -604,4 +757,116 @@ public class ModuleService implements SingletonService {
 		// we're always running :)
 		return (true);
 	}
+
+	// ----- nested classes -----
+	/**
+	 * The relevant class names of JAR and WAR files, keyed by file name
+	 * and stored along with the size and modification date of the file,
+	 * which are used as a checksum. Directories are
+	 * never indexed, as they change during development.
+	 */
+	private static class ScanIndex {
+
+		private final Properties entries     = new Properties();
+		private final Properties usedEntries = new Properties();
+		private File indexFile               = null;
+		private boolean modified             = false;
+
+		public ScanIndex(final File indexFile) {
+
+			this.indexFile = indexFile;
+
+			if (indexFile != null && indexFile.exists()) {
+
+				InputStream in = null;
+
+				try {
+
+					in = new FileInputStream(indexFile);
+					entries.load(in);
+
+				} catch (IOException ioex) {
+
+					logger.log(Level.WARNING, "Unable to read module index {0}: {1}", new Object[] { indexFile, ioex.getMessage() });
+
+				} finally {
+
+					IOUtils.closeQuietly(in);
+				}
+			}
+		}
+
+		public Module get(final String resourcePath) throws IOException {
+
+			String checksum = getChecksum(resourcePath);
+			if (checksum != null) {
+
+				String entry = entries.getProperty(resourcePath);
+				if (entry != null && entry.startsWith(checksum.concat(";"))) {
+
+					DefaultModule module = new DefaultModule(resourcePath);
+					String classNames    = entry.substring(checksum.length() + 1);
+
+					if (!classNames.isEmpty()) {
+
+						module.getClasses().addAll(Arrays.asList(classNames.split(",")));
+					}
+
+					usedEntries.setProperty(resourcePath, entry);
+
+					return module;
+				}
+			}
+
+			return null;
+		}
+
+		public synchronized void put(final String resourcePath, final Set<String> classes) throws IOException {
+
+			String checksum = getChecksum(resourcePath);
+			if (checksum != null) {
+
+				usedEntries.setProperty(resourcePath, checksum.concat(";").concat(StringUtils.join(classes, ",")));
+				modified = true;
+			}
+		}
+
+		public synchronized void store() {
+
+			// entries of resources that are no longer scanned are removed
+			if (indexFile != null && (modified || usedEntries.size() != entries.size())) {
+
+				OutputStream out = null;
+
+				try {
+
+					out = new FileOutputStream(indexFile);
+					usedEntries.store(out, "structr module index");
+
+				} catch (IOException ioex) {
+
+					logger.log(Level.WARNING, "Unable to write module index {0}: {1}", new Object[] { indexFile, ioex.getMessage() });
+
+				} finally {
+
+					IOUtils.closeQuietly(out);
+				}
+			}
+		}
+
+		private String getChecksum(final String resourcePath) throws IOException {
+
+			if (indexFile == null || !(resourcePath.endsWith(".jar") || resourcePath.endsWith(".war"))) {
+				return null;
+			}
+
+			File file = new File(resourcePath);
+			if (!file.exists()) {
+				throw new IOException("File not found: " + resourcePath);
+			}
+
+			// size and modification date, reading the whole file would be too expensive
+			return Long.toHexString(file.length()).concat("-").concat(Long.toHexString(file.lastModified()));
+		}
+	}
 }
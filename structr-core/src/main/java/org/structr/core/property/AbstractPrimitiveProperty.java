@@ -177,8 +177,11 @@ public abstract class AbstractPrimitiveProperty<T> extends Property<T> {
 
 						propertyContainer.setProperty(dbName(), convertedValue);
 
-						// set last modified date if not already happened
-						propertyContainer.setProperty(AbstractNode.lastModifiedDate.dbName(), System.currentTimeMillis());
+						// set last modified date once per object at commit time
+						if (!TransactionCommand.deferLastModifiedDate(obj)) {
+
+							propertyContainer.setProperty(AbstractNode.lastModifiedDate.dbName(), System.currentTimeMillis());
+						}
 
 					} else {
 
@@ -192,7 +195,7 @@ public abstract class AbstractPrimitiveProperty<T> extends Property<T> {
 					// do indexing, needs to be done after
 					// setProperty to make spatial index
 					// work
-					if (!isPassivelyIndexed()) {
+					if (!isPassivelyIndexed() && !TransactionCommand.deferIndexing(obj, AbstractPrimitiveProperty.this, convertedValue)) {
 
 						index(obj, convertedValue);
 					}
@@ -362,27 +362,8 @@ public abstract class Property<T> implements PropertyKey<T> {
 
 			for (NodeIndex indexName : nodeIndices()) {
 
-				Index<Node> index = nodeService.getNodeIndex(indexName);
-				if (index != null) {
-
-					synchronized (index) {
-
-						index.remove(dbNode, dbName);
-						
-						if (value != null && !StringUtils.isBlank(value.toString())) {
-							
-							index.add(dbNode, dbName, value);
-							
-						} else if (isIndexedWhenEmpty()) {
-							
-							value = getValueForEmptyFields();
-							if (value != null) {
-								
-								index.add(dbNode, dbName, value);
-							}
-						}
-					}
-				}
+				indexNode(nodeService.getNodeIndex(indexName), dbNode, value);
+				indexNode(nodeService.getTypeIndex(indexName, node.getType(), dbNode), dbNode, value);
 			}
 			
 		} else {
@@ -419,6 +400,30 @@ public abstract class Property<T> implements PropertyKey<T> {
 		
 	}
 	
+	private void indexNode(final Index<Node> index, final Node dbNode, Object value) {
+
+		if (index != null) {
+
+			synchronized (index) {
+
+				index.remove(dbNode, dbName);
+
+				if (value != null && !StringUtils.isBlank(value.toString())) {
+
+					index.add(dbNode, dbName, value);
+
+				} else if (isIndexedWhenEmpty()) {
+
+					value = getValueForEmptyFields();
+					if (value != null) {
+
+						index.add(dbNode, dbName, value);
+					}
+				}
+			}
+		}
+	}
+	
 	@Override
 	public SearchAttribute getSearchAttribute(SecurityContext securityContext, BooleanClause.Occur occur, T searchValue, boolean exactMatch) {
 		return new PropertySearchAttribute(this, searchValue, occur, exactMatch);
@@ -60,6 +60,7 @@ import org.structr.core.entity.Person;
 import org.structr.core.entity.Principal;
 import org.structr.core.entity.User;
 import org.structr.core.graph.CreateNodeCommand;
+import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.StructrTransaction;
 import org.structr.core.graph.search.SearchNodeCommand;
 import org.structr.core.property.PropertyKey;
@@ -411,6 +412,107 @@ public class AccessControlTest extends StructrTest {
 
 	}
 
+	public void test08CachedPermissionIsInvalidated() {
+
+		try {
+
+			List<AbstractNode> users = createTestNodes(User.class, 2);
+			User user1 = (User) users.get(0);
+			final User user2 = (User) users.get(1);
+
+			final TestOne t1 = createTestNode(TestOne.class, user1);
+
+			transactionCommand.execute(new StructrTransaction<Object>() {
+				@Override
+				public Object execute() throws FrameworkException {
+
+					user2.grant(Permission.read, t1);
+					user2.grant(Permission.write, t1);
+					return null;
+				}
+			});
+
+			// repeated checks are answered from the permission cache
+			assertTrue(t1.isGranted(Permission.read, user2));
+			assertTrue(t1.isGranted(Permission.read, user2));
+			assertTrue(!t1.isGranted(Permission.delete, user2));
+
+			transactionCommand.execute(new StructrTransaction<Object>() {
+				@Override
+				public Object execute() throws FrameworkException {
+
+					// security relationship stays in place because of the write permission
+					user2.revoke(Permission.read, t1);
+
+					// decision must not be served from cache inside the modifying transaction
+					assertTrue(!t1.isGranted(Permission.read, user2));
+					return null;
+				}
+			});
+
+			assertTrue(!t1.isGranted(Permission.read, user2));
+			assertTrue(t1.isGranted(Permission.write, user2));
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	public void test09EntitiesAreNotSharedBetweenContexts() {
+
+		try {
+
+			List<AbstractNode> users = createTestNodes(User.class, 2);
+			User user1 = (User) users.get(0);
+			final User user2 = (User) users.get(1);
+
+			final TestOne t1 = createTestNode(TestOne.class, user1);
+
+			transactionCommand.execute(new StructrTransaction<Object>() {
+				@Override
+				public Object execute() throws FrameworkException {
+
+					user2.grant(Permission.read, t1);
+					return null;
+				}
+			});
+
+			SecurityContext context1      = SecurityContext.getInstance(user1, AccessMode.Backend);
+			SecurityContext context2      = SecurityContext.getInstance(user2, AccessMode.Backend);
+			SecurityContext publicContext = SecurityContext.getInstance(null, AccessMode.Frontend);
+
+			TestOne node1 = new NodeFactory<TestOne>(context1).instantiate(t1.getNode());
+			TestOne node2 = new NodeFactory<TestOne>(context2).instantiate(t1.getNode());
+
+			assertNotNull(node1);
+			assertNotNull(node2);
+			assertTrue(node1 != node2);
+			assertEquals(context1, node1.getSecurityContext());
+			assertEquals(context2, node2.getSecurityContext());
+
+			// identity map of the request
+			assertTrue(node1 == new NodeFactory<TestOne>(context1).instantiate(t1.getNode()));
+
+			// node is cached for other users, but must not be visible in public context
+			assertNull(new NodeFactory<TestOne>(publicContext).instantiate(t1.getNode()));
+
+			context1.cleanUp();
+
+			assertTrue(node1 != new NodeFactory<TestOne>(context1).instantiate(t1.getNode()));
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
 	protected <T extends AbstractNode> T createTestNode(final Class<T> type, final Principal user) throws FrameworkException {
 		return (T)createTestNode(type, new PropertyMap(), user);
 	}
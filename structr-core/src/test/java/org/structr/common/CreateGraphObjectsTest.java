@@ -32,14 +32,22 @@ import org.structr.core.entity.GenericRelationship;
 import org.structr.core.entity.Location;
 import org.structr.core.entity.Person;
 import org.structr.core.graph.StructrTransaction;
+import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.search.Search;
 
 //~--- JDK imports ------------------------------------------------------------
 
 import java.io.IOException;
 import java.util.Collections;
 
+import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static junit.framework.Assert.assertTrue;
@@ -427,4 +435,85 @@ public class CreateGraphObjectsTest extends StructrTest {
 
 	}
 
+	/**
+	 * Tests that concurrent transactions are committed correctly in group
+	 * commit mode, and that a failing transaction does not affect the
+	 * other transactions of its group.
+	 */
+	public void test07GroupCommit() {
+
+		try {
+
+			context.put(Services.TRANSACTION_GROUP_COMMIT, "true");
+
+			final int number                = 20;
+			final AtomicInteger errors      = new AtomicInteger(0);
+			final List<Thread> threads      = new LinkedList<Thread>();
+
+			for (int i = 0; i < number; i++) {
+
+				final boolean fail = (i == 10);
+
+				threads.add(new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+
+						try {
+
+							Services.command(securityContext, TransactionCommand.class).executeGrouped(new StructrTransaction<AbstractNode>() {
+
+								@Override
+								public AbstractNode execute() throws FrameworkException {
+
+									AbstractNode node = createNodeCommand.execute(new NodeAttribute(AbstractNode.type, TestOne.class.getSimpleName()));
+
+									if (fail) {
+										throw new FrameworkException(422, "Failing on purpose");
+									}
+
+									return node;
+								}
+
+							});
+
+						} catch (FrameworkException fex) {
+
+							errors.incrementAndGet();
+						}
+					}
+				}));
+			}
+
+			for (Thread thread : threads) {
+				thread.start();
+			}
+
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			assertEquals(1, errors.get());
+
+			Result result = searchNodeCommand.execute(Search.andExactType(TestOne.class));
+
+			assertEquals(number - 1, result.size());
+
+		} catch (InterruptedException iex) {
+
+			logger.log(Level.SEVERE, iex.toString());
+			fail("Unexpected exception");
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		} finally {
+
+			context.remove(Services.TRANSACTION_GROUP_COMMIT);
+		}
+
+	}
+
 }
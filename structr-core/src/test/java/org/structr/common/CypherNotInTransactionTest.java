@@ -21,12 +21,16 @@
 package org.structr.common;
 
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 
@@ -38,10 +42,13 @@ import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 
 import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
 import org.structr.core.TestRelType;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.entity.GenericNode;
+import org.structr.core.graph.CypherQueryCommand;
+import org.structr.core.graph.CypherResultCache;
 import org.structr.core.graph.search.Search;
 
 /**
@@ -290,5 +297,39 @@ public class CypherNotInTransactionTest extends StructrTest {
 
 		}
 
-	}	
+	}
+
+	public void test05CachedResultIsValidUntilCommit() {
+
+		try {
+
+			createTestNodes(GenericNode.class, 2);
+
+			CypherQueryCommand cypherQueryCommand = Services.command(securityContext, CypherQueryCommand.class);
+			Map<String, Object> parameters        = new LinkedHashMap<String, Object>();
+			String query                          = "start n = node:keywordAllNodes({query}) return n";
+			long epoch                            = CypherResultCache.getInstance().getEpoch();
+
+			parameters.put("query", "type:GenericNode");
+
+			Iterable<Map<String, Object>> rows = cypherQueryCommand.getRows(query, parameters, true);
+
+			assertSame("Result should be cached until the next commit", rows, cypherQueryCommand.getRows(query, parameters, true));
+			assertEquals(2, cypherQueryCommand.execute(query, parameters, false, false, true).getResults().size());
+
+			createTestNodes(GenericNode.class, 1);
+
+			assertTrue("Commit should start a new epoch", CypherResultCache.getInstance().getEpoch() > epoch);
+			assertEquals(3, cypherQueryCommand.execute(query, parameters, false, false, true).getResults().size());
+			assertEquals(2, cypherQueryCommand.execute(query, parameters, false, false, true).getPage(2, 1).size());
+			assertEquals(1, cypherQueryCommand.execute(query, parameters, false, false, true).getPage(2, 2).size());
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
 }
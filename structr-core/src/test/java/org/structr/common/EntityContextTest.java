@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.Set;
+import org.structr.core.EntityContext;
+import org.structr.core.entity.TestOne;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.StringProperty;
+
+/**
+ * Tests for the per-type metadata snapshots of {@link EntityContext}.
+ *
+ * @author Christian Morgner
+ */
+public class EntityContextTest extends StructrTest {
+
+	public void test01PropertyLookup() {
+
+		assertEquals(TestOne.aString, EntityContext.getPropertyKeyForJSONName(TestOne.class, "aString"));
+		assertEquals(TestOne.aString, EntityContext.getPropertyKeyForDatabaseName(TestOne.class, "aString"));
+		assertTrue(EntityContext.getPropertySet(TestOne.class, PropertyView.All).contains(TestOne.aString));
+
+		// unknown keys
+		assertNull(EntityContext.getPropertyKeyForJSONName(TestOne.class, "unknown", false));
+		assertTrue(EntityContext.getPropertySet(TestOne.class, "unknownView").isEmpty());
+	}
+
+	public void test02RegistrationAfterLookup() {
+
+		PropertyKey<String> key = new StringProperty("registeredLater");
+
+		// create snapshot
+		assertNull(EntityContext.getPropertyKeyForJSONName(MetadataTestType.class, "registeredLater", false));
+		assertTrue(EntityContext.getPropertySet(MetadataTestType.class, PropertyView.Public).isEmpty());
+
+		EntityContext.registerProperty(MetadataTestType.class, key);
+		EntityContext.registerPropertySet(MetadataTestType.class, PropertyView.Public, key);
+
+		assertEquals(key, EntityContext.getPropertyKeyForJSONName(MetadataTestType.class, "registeredLater", false));
+		assertTrue(EntityContext.getPropertySet(MetadataTestType.class, PropertyView.Public).contains(key));
+		assertTrue(EntityContext.getPropertyViews().contains(PropertyView.Public));
+	}
+
+	public void test03PropertySetIsReadOnly() {
+
+		Set<PropertyKey> properties = EntityContext.getPropertySet(TestOne.class, PropertyView.All);
+
+		try {
+
+			properties.add(new StringProperty("notAllowed"));
+			fail("Property set must not be modifiable");
+
+		} catch (UnsupportedOperationException expected) {
+		}
+	}
+
+	// ----- nested classes -----
+	private static class MetadataTestType {
+	}
+}
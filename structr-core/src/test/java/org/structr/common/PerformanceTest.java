@@ -26,14 +26,34 @@ import org.structr.core.entity.AbstractRelationship;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.tooling.GlobalGraphOperations;
+import org.structr.core.GraphObject;
+import org.structr.core.Result;
+import org.structr.core.Services;
 import org.structr.core.entity.GenericNode;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.BulkRebuildIndexCommand;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.SyncCommand;
+import org.structr.core.graph.search.Search;
+import org.structr.core.graph.search.SearchNodeCommand;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -131,4 +151,320 @@ public class PerformanceTest extends StructrTest {
 
 	}
 
+	/**
+	 * Tests throughput of concurrent search operations with an increasing
+	 * number of threads, both with serialized and with concurrent index
+	 * access (see {@link Services#SEARCH_CONCURRENT}).
+	 * 
+	 * Like the other tests in this class, this is just a very rough
+	 * benchmark, the numbers are logged for comparison.
+	 */
+	public void test03PerformanceOfConcurrentSearch() {
+
+		try {
+
+			final int number            = 100;
+			final int searchesPerThread = 200;
+
+			createTestNodes(TestOne.class, number);
+
+			DecimalFormat decimalFormat = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+
+			for (String concurrent : new String[] { "false", "true" }) {
+
+				context.put(Services.SEARCH_CONCURRENT, concurrent);
+
+				for (int threadCount = 1; threadCount <= 8; threadCount *= 2) {
+
+					final AtomicInteger errors = new AtomicInteger(0);
+					List<Thread> threads       = new LinkedList<Thread>();
+
+					for (int i = 0; i < threadCount; i++) {
+
+						threads.add(new Thread(new Runnable() {
+
+							@Override
+							public void run() {
+
+								SearchNodeCommand searchCommand = Services.command(securityContext, SearchNodeCommand.class);
+
+								for (int j = 0; j < searchesPerThread; j++) {
+
+									try {
+
+										Result result = searchCommand.execute(Search.andExactType(TestOne.class));
+										if (result.size() != number) {
+
+											errors.incrementAndGet();
+										}
+
+									} catch (FrameworkException fex) {
+
+										errors.incrementAndGet();
+									}
+								}
+							}
+						}));
+					}
+
+					long t0 = System.nanoTime();
+
+					for (Thread thread : threads) {
+						thread.start();
+					}
+
+					for (Thread thread : threads) {
+						thread.join();
+					}
+
+					long t1 = System.nanoTime();
+
+					assertEquals(0, errors.get());
+
+					int searches = threadCount * searchesPerThread;
+					Double time  = (t1 - t0) / 1000000000.0;
+					Double rate  = searches / ((t1 - t0) / 1000000000.0);
+
+					logger.log(Level.INFO, "Concurrent search {0}: {1} searches with {2} threads in {3} seconds ({4} per s)",
+						new Object[] { concurrent, searches, threadCount, decimalFormat.format(time), decimalFormat.format(rate) });
+
+					assertTrue(rate > 50);
+				}
+			}
+
+		} catch (InterruptedException iex) {
+
+			logger.log(Level.SEVERE, iex.toString());
+			fail("Unexpected exception");
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	/**
+	 * Tests a round trip of export and import of a synthetic graph with
+	 * {@link SyncCommand}, importing in small chunks.
+	 * 
+	 * Like the other tests in this class, this is just a very rough
+	 * benchmark, the numbers are logged for comparison.
+	 */
+	public void test04PerformanceOfSyncRoundTrip() {
+
+		try {
+
+			int number = 1000;
+
+			createTestNodes(TestOne.class, number);
+			createTestRelationships(RelType.IS_AT, number);
+
+			GraphDatabaseService graphDb = graphDbCommand.execute();
+			GlobalGraphOperations ggop   = GlobalGraphOperations.at(graphDb);
+			long nodeCount               = countStructrObjects(ggop.getAllNodes());
+			long relCount                = countStructrObjects(ggop.getAllRelationships());
+			ByteArrayOutputStream out    = new ByteArrayOutputStream();
+
+			DecimalFormat decimalFormat = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+			long t0                     = System.nanoTime();
+
+			SyncCommand.exportToStream(out, ggop.getAllNodes(), ggop.getAllRelationships(), null);
+
+			long t1 = System.nanoTime();
+
+			SyncCommand.importFromStream(graphDb, securityContext, new ByteArrayInputStream(out.toByteArray()), true, 100);
+
+			long t2 = System.nanoTime();
+
+			// import adds a copy of each object
+			assertEquals(nodeCount * 2, countStructrObjects(ggop.getAllNodes()));
+			assertEquals(relCount * 2, countStructrObjects(ggop.getAllRelationships()));
+
+			logger.log(Level.INFO, "Exported {0} nodes and {1} relationships in {2} seconds ({3} bytes), imported in {4} seconds",
+				new Object[] { nodeCount, relCount, decimalFormat.format((t1 - t0) / 1000000000.0), out.size(), decimalFormat.format((t2 - t1) / 1000000000.0) });
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	/**
+	 * Tests parallel (re-)indexing of a single node type with
+	 * {@link BulkRebuildIndexCommand}.
+	 */
+	public void test05PerformanceOfIndexRebuild() {
+
+		try {
+
+			int number = 1000;
+
+			createTestNodes(TestOne.class, number);
+			createTestNodes(GenericNode.class, number);
+
+			Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+
+			attributes.put("type", "TestOne");
+			attributes.put("threads", "4");
+
+			DecimalFormat decimalFormat = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+			long t0                     = System.nanoTime();
+
+			Services.command(securityContext, BulkRebuildIndexCommand.class).execute(attributes);
+
+			long t1 = System.nanoTime();
+
+			Result result = Services.command(securityContext, SearchNodeCommand.class).execute(Search.andExactType(TestOne.class));
+			assertEquals(number, result.size());
+
+			logger.log(Level.INFO, "Rebuilt index of {0} nodes in {1} seconds", new Object[] { number, decimalFormat.format((t1 - t0) / 1000000000.0) });
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	/**
+	 * Compares immediate and deferred index updates (see
+	 * {@link Services#INDEX_DEFERRED}) for transactions that set several
+	 * indexed properties of the same objects, and checks that searches
+	 * in the same transaction see the modifications in both modes.
+	 */
+	public void test06PerformanceOfPropertyIndexing() {
+
+		try {
+
+			final int number               = 100;
+			final int rounds               = 10;
+			final List<AbstractNode> nodes = createTestNodes(TestOne.class, number);
+
+			DecimalFormat decimalFormat = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+
+			for (final String deferred : new String[] { "false", "true" }) {
+
+				context.put(Services.INDEX_DEFERRED, deferred);
+
+				long t0 = System.nanoTime();
+
+				int found = transactionCommand.execute(new StructrTransaction<Integer>() {
+
+					@Override
+					public Integer execute() throws FrameworkException {
+
+						for (int i = 0; i < rounds; i++) {
+
+							for (AbstractNode node : nodes) {
+
+								node.setProperty(TestOne.aString, deferred + i);
+								node.setProperty(TestOne.anInt, i);
+								node.setProperty(TestOne.aLong, (long) i);
+								node.setProperty(TestOne.aDouble, (double) i);
+							}
+						}
+
+						return searchNodeCommand.execute(Search.andExactType(TestOne.class), Search.andExactProperty(securityContext, TestOne.aString, deferred + (rounds - 1))).size();
+					}
+				});
+
+				long t1 = System.nanoTime();
+
+				assertEquals(number, found);
+				assertEquals(number, searchNodeCommand.execute(Search.andExactType(TestOne.class), Search.andExactProperty(securityContext, TestOne.aString, deferred + (rounds - 1))).size());
+				assertEquals(0, searchNodeCommand.execute(Search.andExactType(TestOne.class), Search.andExactProperty(securityContext, TestOne.aString, deferred + "0")).size());
+
+				logger.log(Level.INFO, "Deferred indexing {0}: set {1} properties in {2} seconds",
+					new Object[] { deferred, number * rounds * 4, decimalFormat.format((t1 - t0) / 1000000000.0) });
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	/**
+	 * Tests throughput of entity instantiation for the database nodes of
+	 * a search result with 10000 nodes. The first rounds are not measured,
+	 * so the numbers reflect the steady state of the factory.
+	 */
+	public void test07PerformanceOfNodeInstantiation() {
+
+		try {
+
+			final int number = 10000;
+			final int rounds = 10;
+			final int warmup = 3;
+
+			createTestNodes(TestOne.class, number);
+
+			List<Node> dbNodes = new LinkedList<Node>();
+
+			for (Object obj : searchNodeCommand.execute(Search.andExactType(TestOne.class)).getResults()) {
+				dbNodes.add(((AbstractNode) obj).getNode());
+			}
+
+			assertEquals(number, dbNodes.size());
+
+			DecimalFormat decimalFormat = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+			long t0                     = 0;
+
+			for (int i = 0; i < warmup + rounds; i++) {
+
+				if (i == warmup) {
+					t0 = System.nanoTime();
+				}
+
+				// superuser context does not cache entities, so every node is instantiated
+				NodeFactory<AbstractNode> factory = new NodeFactory<AbstractNode>(securityContext);
+
+				for (Node dbNode : dbNodes) {
+
+					assertTrue(factory.instantiate(dbNode) instanceof TestOne);
+				}
+			}
+
+			long t1 = System.nanoTime();
+
+			Double time = (t1 - t0) / 1000000000.0;
+			Double rate = (number * rounds) / ((t1 - t0) / 1000000000.0);
+
+			logger.log(Level.INFO, "Instantiated {0} nodes in {1} seconds ({2} per s)", new Object[] { number * rounds, decimalFormat.format(time), decimalFormat.format(rate) });
+			assertTrue(rate > 1000);
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	private long countStructrObjects(final Iterable<? extends PropertyContainer> objects) {
+
+		long count = 0;
+
+		for (PropertyContainer obj : objects) {
+
+			if (obj.hasProperty(GraphObject.uuid.dbName())) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
 }
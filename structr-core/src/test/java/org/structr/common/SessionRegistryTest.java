@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.auth.AuthHelper;
+import org.structr.core.auth.SessionRegistry;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.User;
+import org.structr.core.graph.StructrTransaction;
+
+/**
+ * Tests for the in-memory session registry.
+ *
+ * @author Christian Morgner
+ */
+public class SessionRegistryTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(SessionRegistryTest.class.getName());
+
+	public void test01SessionLookup() {
+
+		try {
+
+			final User user = createTestNode(User.class);
+
+			// unknown session id
+			assertNull(AuthHelper.getPrincipalForSessionId("session1"));
+
+			AuthHelper.setSessionId(user, "session1");
+
+			Principal principal = AuthHelper.getPrincipalForSessionId("session1");
+
+			assertNotNull(principal);
+			assertEquals(user.getId(), principal.getId());
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+	}
+
+	public void test02GraphWritesUpdateSessions() {
+
+		try {
+
+			final User user = createTestNode(User.class);
+
+			AuthHelper.setSessionId(user, "session1");
+			assertNotNull(AuthHelper.getPrincipalForSessionId("session1"));
+
+			// modify the session id without AuthHelper
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					user.setProperty(Principal.sessionId, "session2");
+					return null;
+				}
+			});
+
+			assertNull(AuthHelper.getPrincipalForSessionId("session1"));
+			assertNotNull(AuthHelper.getPrincipalForSessionId("session2"));
+
+			AuthHelper.setSessionId(user, null);
+
+			assertNull(AuthHelper.getPrincipalForSessionId("session2"));
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+	}
+
+	public void test03PendingLogins() {
+
+		try {
+
+			final SessionRegistry registry = SessionRegistry.getInstance();
+			final User user                = createTestNode(User.class);
+
+			// remembered as anonymous
+			assertNull(AuthHelper.getPrincipalForSessionId("session3"));
+			assertTrue(registry.isAnonymous("session3"));
+
+			// session id is not stored yet, but login must be trusted
+			registry.login("session3", user);
+
+			assertFalse(registry.isAnonymous("session3"));
+			assertNotNull(AuthHelper.getPrincipalForSessionId("session3"));
+
+			// failed write removes the session
+			registry.loginPersisted("session3", false);
+
+			assertNull(registry.get("session3"));
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+	}
+}
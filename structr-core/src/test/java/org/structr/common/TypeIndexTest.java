@@ -0,0 +1,232 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.TestOne;
+import org.structr.core.entity.TestThree;
+import org.structr.core.entity.TestTwo;
+import org.structr.core.graph.BulkMigrateTypeIndexCommand;
+import org.structr.core.graph.CreateNodeCommand;
+import org.structr.core.graph.DeleteNodeCommand;
+import org.structr.core.graph.GraphDatabaseCommand;
+import org.structr.core.graph.NodeService;
+import org.structr.core.graph.NodeService.NodeIndex;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.search.Search;
+import org.structr.core.graph.search.SearchAttribute;
+import org.structr.core.graph.search.SearchNodeCommand;
+import org.structr.core.property.PropertyMap;
+
+/**
+ * Tests for the per-type keyword and fulltext node indices.
+ *
+ * @author Christian Morgner
+ */
+public class TypeIndexTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(TypeIndexTest.class.getName());
+
+	@Override
+	protected void setUp() throws Exception {
+
+		context.put(Services.INDEX_PER_TYPE, "true");
+
+		super.setUp();
+	}
+
+	public void test01QueryRouting() {
+
+		try {
+
+			createNamedNode(TestOne.class, "routed");
+			createNamedNode(TestTwo.class, "routed");
+
+			// new types have complete per-type indices
+			assertNotNull(getNodeService().getQueryableTypeIndex(NodeIndex.keyword, TestOne.class.getSimpleName()));
+
+			Result result = searchByTypeAndName(TestOne.class, "routed");
+
+			assertEquals(1, result.size());
+			assertEquals(TestOne.class.getSimpleName(), result.get(0).getType());
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+	}
+
+	public void test02TypeChange() {
+
+		try {
+
+			final AbstractNode node = createNamedNode(TestOne.class, "changed");
+
+			assertEquals(1, searchByTypeAndName(TestOne.class, "changed").size());
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					node.unlockReadOnlyPropertiesOnce();
+					node.setProperty(AbstractNode.type, TestTwo.class.getSimpleName());
+
+					return null;
+				}
+			});
+
+			// node must be found in the index of its new type only
+			assertEquals(0, searchByTypeAndName(TestOne.class, "changed").size());
+			assertEquals(1, searchByTypeAndName(TestTwo.class, "changed").size());
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+	}
+
+	public void test03Deletion() {
+
+		try {
+
+			final AbstractNode node = createNamedNode(TestOne.class, "deleted");
+
+			assertEquals(1, searchByTypeAndName(TestOne.class, "deleted").size());
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					deleteNodeCommand.execute(node);
+
+					return null;
+				}
+			});
+
+			assertEquals(0, searchByTypeAndName(TestOne.class, "deleted").size());
+			assertEquals(0, getNodeService().getQueryableTypeIndex(NodeIndex.keyword, TestOne.class.getSimpleName()).get(AbstractNode.uuid.dbName(), node.getUuid()).size());
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+	}
+
+	public void test04Migration() {
+
+		try {
+
+			final String type = TestThree.class.getSimpleName();
+
+			// nodes created while per-type indices are disabled
+			restart(false);
+
+			for (int i=0; i<5; i++) {
+				createNamedNode(TestThree.class, "migrated");
+			}
+
+			restart(true);
+
+			// index exists after the next write, but is incomplete
+			createNamedNode(TestThree.class, "migrated");
+
+			assertNull(getNodeService().getQueryableTypeIndex(NodeIndex.keyword, type));
+			assertEquals(6, searchByTypeAndName(TestThree.class, "migrated").size());
+
+			Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+			attributes.put("type", type);
+
+			Services.command(securityContext, BulkMigrateTypeIndexCommand.class).execute(attributes);
+
+			assertNotNull(getNodeService().getQueryableTypeIndex(NodeIndex.keyword, type));
+			assertEquals(6, searchByTypeAndName(TestThree.class, "migrated").size());
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+	}
+
+	// ----- private methods -----
+	private AbstractNode createNamedNode(final Class<? extends AbstractNode> type, final String name) throws FrameworkException {
+
+		PropertyMap props = new PropertyMap();
+		props.put(AbstractNode.name, name);
+
+		return createTestNode(type, props);
+	}
+
+	private Result searchByTypeAndName(final Class type, final String name) throws FrameworkException {
+
+		List<SearchAttribute> attrs = new LinkedList<SearchAttribute>();
+
+		attrs.add(Search.andExactType(type));
+		attrs.add(Search.andExactName(name));
+
+		return searchNodeCommand.execute(false, false, attrs);
+	}
+
+	private NodeService getNodeService() {
+		return Services.getService(NodeService.class);
+	}
+
+	/**
+	 * Restarts the services on the same database.
+	 */
+	private void restart(final boolean typeIndicesEnabled) {
+
+		Services.shutdown();
+
+		context.put(Services.INDEX_PER_TYPE, Boolean.toString(typeIndicesEnabled));
+
+		Services.initialize(context);
+
+		// wait for service layer to be initialized
+		do {
+			try { Thread.sleep(100); } catch(Throwable t) {}
+
+		} while(!Services.isInitialized());
+
+		createNodeCommand  = Services.command(securityContext, CreateNodeCommand.class);
+		deleteNodeCommand  = Services.command(securityContext, DeleteNodeCommand.class);
+		transactionCommand = Services.command(securityContext, TransactionCommand.class);
+		graphDbCommand     = Services.command(securityContext, GraphDatabaseCommand.class);
+		searchNodeCommand  = Services.command(securityContext, SearchNodeCommand.class);
+	}
+}
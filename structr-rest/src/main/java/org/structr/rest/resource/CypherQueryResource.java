@@ -24,13 +24,13 @@ import org.structr.core.GraphObject;
 import org.structr.core.Result;
 import org.structr.core.Services;
 import org.structr.core.graph.CypherQueryCommand;
+import org.structr.core.graph.CypherResult;
 import org.structr.rest.RestMethodResult;
 import org.structr.rest.exception.IllegalMethodException;
 import org.structr.rest.exception.NotFoundException;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.List;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
@@ -73,10 +73,13 @@ public class CypherQueryResource extends Resource {
 
 			if (queryObject != null) {
 
-				String query                 = queryObject.toString();
-				List<GraphObject> resultList = (List<GraphObject>) Services.command(securityContext, CypherQueryCommand.class).execute(query);
+				String query              = queryObject.toString();
+				int pageSize              = parseInteger(propertySet.get("pageSize"));
+				int page                  = parseInteger(propertySet.get("page"));
+				CypherResult cypherResult = Services.command(securityContext, CypherQueryCommand.class).execute(query, null, false, false, false);
 
-				for (GraphObject obj : resultList) {
+				// objects are instantiated up to the end of the requested page only
+				for (GraphObject obj : cypherResult.getPage(pageSize, page)) {
 
 					result.addContent(obj);
 				}
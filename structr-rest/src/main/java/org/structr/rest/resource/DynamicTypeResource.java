@@ -29,10 +29,12 @@ import javax.servlet.http.HttpServletResponse;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.EntityContext;
+import org.structr.core.GraphObject;
 import org.structr.core.Result;
 import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.CreateNodeCommand;
+import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.StructrTransaction;
 import org.structr.core.graph.TransactionCommand;
 import org.structr.core.graph.search.Search;
@@ -118,6 +120,13 @@ public class DynamicTypeResource extends TypeResource {
 		return new Result(emptyList, null, isCollectionResource(), isPrimitiveArray());
 	}
 
+	@Override
+	public Iterable<? extends GraphObject> doGetLazily(PropertyKey sortKey, boolean sortDescending) throws FrameworkException {
+
+		// dynamic types are searched with different parameters, see doGet
+		return doGet(sortKey, sortDescending, NodeFactory.DEFAULT_PAGE_SIZE, NodeFactory.DEFAULT_PAGE, null).getResults();
+	}
+
 	@Override
 	public RestMethodResult doPost(final Map<String, Object> propertySet) throws FrameworkException {
 
@@ -23,6 +23,7 @@ package org.structr.rest.resource;
 import org.structr.core.graph.BulkCopyRelationshipPropertyCommand;
 import org.structr.core.graph.BulkSetRelationshipPropertiesCommand;
 import org.structr.core.graph.BulkFixNodePropertiesCommand;
+import org.structr.core.graph.BulkMigrateTypeIndexCommand;
 import org.structr.core.Result;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
@@ -62,6 +63,7 @@ public class MaintenanceParameterResource extends Resource {
 
 		maintenanceCommandMap.put("rebuildIndex", BulkRebuildIndexCommand.class);
 		maintenanceCommandMap.put("rebuildIndexForType", BulkRebuildIndexCommand.class);
+		maintenanceCommandMap.put("migrateTypeIndex", BulkMigrateTypeIndexCommand.class);
 		maintenanceCommandMap.put("clearDatabase", ClearDatabase.class);
 		maintenanceCommandMap.put("fixNodeProperties", BulkFixNodePropertiesCommand.class);
 		maintenanceCommandMap.put("setNodeProperties", BulkSetNodePropertiesCommand.class);
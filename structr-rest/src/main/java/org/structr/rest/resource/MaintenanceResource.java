@@ -33,7 +33,11 @@ import org.structr.rest.exception.SystemException;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,7 +45,15 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.entity.AbstractNode;
+import org.structr.core.GraphObjectMap;
+import org.structr.core.StatisticsProvider;
+import org.structr.core.auth.SessionRegistry;
+import org.structr.core.graph.CypherResultCache;
 import org.structr.core.graph.MaintenanceCommand;
+import org.structr.core.graph.NodeService;
+import org.structr.core.graph.NodeServiceCommand;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.property.StringProperty;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -55,6 +67,53 @@ public class MaintenanceResource extends Resource {
 
 	private static final Logger logger = Logger.getLogger(MaintenanceResource.class.getName());
 
+	private static final Map<String, StatisticsProvider> statisticsProviders = new LinkedHashMap<String, StatisticsProvider>();
+
+	//~--- static initializers --------------------------------------------
+
+	static {
+
+		registerStatisticsProvider("nodeCache", new StatisticsProvider() {
+
+			@Override
+			public Map<String, Object> getStatistics() {
+				return NodeService.getNodeCacheStatistics();
+			}
+		});
+
+		registerStatisticsProvider("commitLocks", new StatisticsProvider() {
+
+			@Override
+			public Map<String, Object> getStatistics() {
+				return (Map) TransactionCommand.getLockStatistics();
+			}
+		});
+
+		registerStatisticsProvider("bulkOperations", new StatisticsProvider() {
+
+			@Override
+			public Map<String, Object> getStatistics() {
+				return NodeServiceCommand.getBulkStatistics();
+			}
+		});
+
+		registerStatisticsProvider("cypherResultCache", new StatisticsProvider() {
+
+			@Override
+			public Map<String, Object> getStatistics() {
+				return CypherResultCache.getInstance().getStatistics();
+			}
+		});
+
+		registerStatisticsProvider("sessions", new StatisticsProvider() {
+
+			@Override
+			public Map<String, Object> getStatistics() {
+				return SessionRegistry.getInstance().getStatistics();
+			}
+		});
+	}
+
 	//~--- fields ---------------------------------------------------------
 
 	private Class taskOrCommand = null;
@@ -69,8 +128,30 @@ public class MaintenanceResource extends Resource {
 		return ("maintenance".equals(part));
 	}
 
+	/**
+	 * Returns the statistics of all registered providers.
+	 */
 	@Override
 	public Result doGet(PropertyKey sortKey, boolean sortDescending, int pageSize, int page, String offsetId) throws FrameworkException {
+
+		if ((securityContext != null) && securityContext.isSuperUser() && this.taskOrCommand == null) {
+
+			GraphObjectMap statistics = new GraphObjectMap();
+
+			synchronized (statisticsProviders) {
+
+				for (Entry<String, StatisticsProvider> entry : statisticsProviders.entrySet()) {
+
+					statistics.setProperty(new StringProperty(entry.getKey()), entry.getValue().getStatistics());
+				}
+			}
+
+			List<GraphObjectMap> resultList = new LinkedList<GraphObjectMap>();
+			resultList.add(statistics);
+
+			return new Result(resultList, resultList.size(), false, false);
+		}
+
 		throw new NotAllowedException();
 	}
 
@@ -171,4 +252,12 @@ public class MaintenanceResource extends Resource {
         public String getResourceSignature() {
                 return getUriPart();
         }
+
+	public static void registerStatisticsProvider(String key, StatisticsProvider provider) {
+
+		synchronized (statisticsProviders) {
+
+			statisticsProviders.put(key, provider);
+		}
+	}
 }
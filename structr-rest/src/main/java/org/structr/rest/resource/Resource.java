@@ -91,6 +91,20 @@ public abstract class Resource {
 
 	public abstract Result doGet(PropertyKey sortKey, boolean sortDescending, int pageSize, int page, String offsetId) throws FrameworkException;
 
+	/**
+	 * Returns the complete, unpaged result of a GET request. Resources that
+	 * can do so should instantiate the results lazily while they are
+	 * iterated, so that large results can be streamed to the client.
+	 *
+	 * @param sortKey the sort key, or null for the default order
+	 * @param sortDescending whether to sort descending
+	 * @return the results
+	 * @throws FrameworkException
+	 */
+	public Iterable<? extends GraphObject> doGetLazily(PropertyKey sortKey, boolean sortDescending) throws FrameworkException {
+		return doGet(sortKey, sortDescending, NodeFactory.DEFAULT_PAGE_SIZE, NodeFactory.DEFAULT_PAGE, null).getResults();
+	}
+
 	public abstract RestMethodResult doPost(final Map<String, Object> propertySet) throws FrameworkException;
 
 	public abstract RestMethodResult doHead() throws FrameworkException;
@@ -179,8 +193,9 @@ public abstract class Resource {
 				}
 			};
 
-			// modify results in a single transaction
-			Services.command(securityContext, TransactionCommand.class).execute(transaction);
+			// modify results in a single transaction, which may be
+			// committed together with concurrent ones
+			Services.command(securityContext, TransactionCommand.class).executeGrouped(transaction);
 
 			return new RestMethodResult(HttpServletResponse.SC_OK);
 
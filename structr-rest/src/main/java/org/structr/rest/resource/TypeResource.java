@@ -93,57 +93,18 @@ public class TypeResource extends SortableResource {
 	@Override
 	public Result doGet(PropertyKey sortKey, boolean sortDescending, int pageSize, int page, String offsetId) throws FrameworkException {
 
-		boolean inexactSearch                  = parseInteger(request.getParameter(JsonRestServlet.REQUEST_PARAMETER_LOOSE_SEARCH)) == 1;
-		List<SearchAttribute> searchAttributes = new LinkedList();
-		List<SearchAttribute> validAttributes  = null;
-		boolean includeDeletedAndHidden        = false;
-		boolean publicOnly                     = false;
+		boolean includeDeletedAndHidden = false;
+		boolean publicOnly              = false;
 
 		if (rawType != null) {
 
-			if (entityClass == null) {
-
-				throw new NotFoundException();
-			}
+			List<SearchAttribute> searchAttributes = getSearchAttributes();
 
-			validAttributes = extractSearchableAttributes(securityContext, entityClass, request);
-			
-			// distance search?
-			DistanceSearchAttribute distanceSearch = getDistanceSearch(request, keys(validAttributes));
-			if (distanceSearch != null) {
-				
-				searchAttributes.add(distanceSearch);
-			}
-
-			// add type to return
-			searchAttributes.add(Search.andExactTypeAndSubtypes(entityClass, !inexactSearch));
-			
-			// searchable attributes from EntityContext
-			searchAttributes.addAll(validAttributes);
-			
 			// default sort key & order
 			if (sortKey == null) {
-				
-				try {
-					
-					GraphObject templateEntity  = ((GraphObject)entityClass.newInstance());
-					PropertyKey sortKeyProperty = templateEntity.getDefaultSortKey();
-					sortDescending              = GraphObjectComparator.DESCENDING.equals(templateEntity.getDefaultSortOrder());
-					
-					if (sortKeyProperty != null) {
-						
-						sortKey = sortKeyProperty;
-						
-					} else {
-						
-						sortKey = AbstractNode.name;
-					}
-					
-				} catch(Throwable t) {
-					
-					// fallback to name
-					sortKey = AbstractNode.name;
-				}
+
+				sortDescending = isDefaultSortDescending(sortDescending);
+				sortKey        = getDefaultSortKey();
 			}
 			
 			// do search
@@ -169,10 +130,31 @@ public class TypeResource extends SortableResource {
 		return new Result(emptyList, null, isCollectionResource(), isPrimitiveArray());
 	}
 
+	@Override
+	public Iterable<? extends GraphObject> doGetLazily(PropertyKey sortKey, boolean sortDescending) throws FrameworkException {
+
+		if (rawType != null) {
+
+			List<SearchAttribute> searchAttributes = getSearchAttributes();
+
+			// default sort key & order
+			if (sortKey == null) {
+
+				sortDescending = isDefaultSortDescending(sortDescending);
+				sortKey        = getDefaultSortKey();
+			}
+
+			return Services.command(securityContext, SearchNodeCommand.class).iterate(false, false, searchAttributes, sortKey, sortDescending);
+		}
+
+		return super.doGetLazily(sortKey, sortDescending);
+	}
+
 	@Override
 	public RestMethodResult doPost(final Map<String, Object> propertySet) throws FrameworkException {
 
-		AbstractNode newNode = (AbstractNode) Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction() {
+		// single node creation may be committed together with concurrent ones
+		AbstractNode newNode = (AbstractNode) Services.command(securityContext, TransactionCommand.class).executeGrouped(new StructrTransaction() {
 
 			@Override
 			public Object execute() throws FrameworkException {
@@ -239,6 +221,70 @@ public class TypeResource extends SortableResource {
 
 	}
 
+	/**
+	 * Returns the search attributes of a GET request: the type of this
+	 * resource, the searchable request parameters and an optional
+	 * distance search.
+	 */
+	private List<SearchAttribute> getSearchAttributes() throws FrameworkException {
+
+		boolean inexactSearch                  = parseInteger(request.getParameter(JsonRestServlet.REQUEST_PARAMETER_LOOSE_SEARCH)) == 1;
+		List<SearchAttribute> searchAttributes = new LinkedList();
+		List<SearchAttribute> validAttributes  = null;
+
+		if (entityClass == null) {
+
+			throw new NotFoundException();
+		}
+
+		validAttributes = extractSearchableAttributes(securityContext, entityClass, request);
+		
+		// distance search?
+		DistanceSearchAttribute distanceSearch = getDistanceSearch(request, keys(validAttributes));
+		if (distanceSearch != null) {
+			
+			searchAttributes.add(distanceSearch);
+		}
+
+		// add type to return
+		searchAttributes.add(Search.andExactTypeAndSubtypes(entityClass, !inexactSearch));
+		
+		// searchable attributes from EntityContext
+		searchAttributes.addAll(validAttributes);
+
+		return searchAttributes;
+	}
+
+	private PropertyKey getDefaultSortKey() {
+
+		try {
+			
+			PropertyKey sortKeyProperty = ((GraphObject)entityClass.newInstance()).getDefaultSortKey();
+			if (sortKeyProperty != null) {
+				
+				return sortKeyProperty;
+			}
+			
+		} catch(Throwable t) {
+			
+			// fallback to name
+		}
+
+		return AbstractNode.name;
+	}
+
+	private boolean isDefaultSortDescending(final boolean sortDescending) {
+
+		try {
+			
+			return GraphObjectComparator.DESCENDING.equals(((GraphObject)entityClass.newInstance()).getDefaultSortOrder());
+			
+		} catch(Throwable t) {
+			
+			return sortDescending;
+		}
+	}
+
 	//~--- get methods ----------------------------------------------------
 
 	@Override
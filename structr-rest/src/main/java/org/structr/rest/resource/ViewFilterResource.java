@@ -40,6 +40,7 @@ import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.EntityContext;
+import org.structr.core.GraphObject;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -90,6 +91,18 @@ public class ViewFilterResource extends WrappingResource {
 		throw new IllegalPathException();
 	}
 
+	@Override
+	public Iterable<? extends GraphObject> doGetLazily(PropertyKey sortKey, boolean sortDescending) throws FrameworkException {
+
+		if (wrappedResource != null) {
+
+			return wrappedResource.doGetLazily(sortKey, sortDescending);
+
+		}
+
+		throw new IllegalPathException();
+	}
+
 	@Override
 	public RestMethodResult doPost(Map<String, Object> propertySet) throws FrameworkException {
 
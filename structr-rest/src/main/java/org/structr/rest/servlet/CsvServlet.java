@@ -35,6 +35,8 @@ import org.structr.core.Value;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.RelationshipMapping;
 import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.property.PropertyKey;
 import org.structr.rest.ResourceProvider;
 import org.structr.rest.resource.NamedRelationResource;
@@ -43,16 +45,16 @@ import org.structr.rest.resource.Resource;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -68,7 +70,12 @@ import org.structr.core.auth.AuthenticatorCommand;
 //~--- classes ----------------------------------------------------------------
 
 /**
- * This servlet produces CSV (comma separated value) lists out of a search result
+ * This servlet produces CSV (comma separated value) lists out of a search result,
+ * and creates objects from CSV input via POST.
+ *
+ * Output follows RFC 4180: all fields are quoted, quotes are doubled and records
+ * are terminated by CRLF. Without explicit paging parameters, the result is
+ * instantiated while it is written and sent to the client in chunks.
  *
  * @author Axel Morgner
  */
@@ -76,6 +83,12 @@ public class CsvServlet extends HttpServlet {
 
 	private static final Logger logger = Logger.getLogger(CsvServlet.class.getName());
 
+	public static final String REQUEST_PARAMETER_BATCH_SIZE = "batchSize";
+
+	private static final int STREAMING_PAGE_SIZE = 1000;
+	private static final int DEFAULT_BATCH_SIZE  = 1000;
+	private static final String CRLF             = "\r\n";
+
 	//~--- fields ---------------------------------------------------------
 
 	private Value<String> propertyView                          = null;
@@ -131,8 +144,7 @@ public class CsvServlet extends HttpServlet {
 			// set default value for property view
 			propertyView.set(securityContext, defaultPropertyView);
 
-			// evaluate constraints and measure query time
-			double queryTimeStart = System.nanoTime();
+			// evaluate constraints
 			Resource resource     = ResourceHelper.applyViewTransformation(request, securityContext,
 							ResourceHelper.optimizeNestedResourceChain(ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView, defaultIdProperty),
 								defaultIdProperty), propertyView);
@@ -161,21 +173,25 @@ public class CsvServlet extends HttpServlet {
 
 			}
 
-			// do action
-			Result result = resource.doGet(sortKey, sortDescending, pageSize, page, offsetId);
+			// output is streamed, so the status must be set first
+			response.setStatus(HttpServletResponse.SC_OK);
+
+			Writer writer = new BufferedWriter(response.getWriter(), 65536);
 
-			result.setIsCollection(resource.isCollectionResource());
-			result.setIsPrimitiveArray(resource.isPrimitiveArray());
+			if (pageSizeParameter == null && pageParameter == null) {
 
-			// Integer rawResultCount = (Integer) Services.getAttribute(NodeFactory.RAW_RESULT_COUNT + Thread.currentThread().getId());
-			PagingHelper.addPagingParameter(result, pageSize, page);
+				// no explicit paging, write all pages
+				streamCsv(securityContext, resource, sortKey, sortDescending, offsetId, writer, propertyView.get(securityContext));
 
-			// Services.removeAttribute(NodeFactory.RAW_RESULT_COUNT + Thread.currentThread().getId());
-			// timing..
-			double queryTimeEnd = System.nanoTime();
+			} else {
+
+				// do action
+				Result result = resource.doGet(sortKey, sortDescending, pageSize, page, offsetId);
+
+				result.setIsCollection(resource.isCollectionResource());
+				result.setIsPrimitiveArray(resource.isPrimitiveArray());
 
-			// commit response
-			if (result != null) {
+				PagingHelper.addPagingParameter(result, pageSize, page);
 
 				// store property view that will be used to render the results
 				result.setPropertyView(propertyView.get(securityContext));
@@ -183,33 +199,12 @@ public class CsvServlet extends HttpServlet {
 				// allow resource to modify result set
 				resource.postProcessResultSet(result);
 
-				DecimalFormat decimalFormat = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
-
-				result.setQueryTime(decimalFormat.format((queryTimeEnd - queryTimeStart) / 1000000000.0));
-
-				Writer writer = response.getWriter();
-
-				// gson.toJson(result, writer);
-				writeCsv(result, writer);
-				response.setStatus(HttpServletResponse.SC_OK);
-				writer.append("\n");    // useful newline
-				writer.flush();
-				writer.close();
-			} else {
-
-				logger.log(Level.WARNING, "Result was null!");
-
-				int code = HttpServletResponse.SC_NO_CONTENT;
-
-				response.setStatus(code);
-
-				Writer writer = response.getWriter();
+				writeCsv(result, writer, propertyView.get(securityContext));
+			}
 
-				// writer.append(jsonError(code, "Result was null!"));
-				writer.flush();
-				writer.close();
+			writer.flush();
+			writer.close();
 
-			}
 		} catch (FrameworkException frameworkException) {
 
 			// set status
@@ -253,6 +248,50 @@ public class CsvServlet extends HttpServlet {
 
 	}
 
+	@Override
+	protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws UnsupportedEncodingException {
+
+		SecurityContext securityContext = null;
+
+		try {
+
+			Authenticator authenticator = getAuthenticator();
+			securityContext             = authenticator.initializeAndExamineRequest(request, response);
+
+			request.setCharacterEncoding("UTF-8");
+			response.setCharacterEncoding("UTF-8");
+			response.setContentType("text/plain; charset=utf-8");
+
+			Resource resource        = ResourceHelper.optimizeNestedResourceChain(ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView, defaultIdProperty), defaultIdProperty);
+			String resourceSignature = resource.getResourceSignature();
+
+			// check access rights for this resource
+			authenticator.checkResourceAccess(request, resourceSignature, propertyView.get(securityContext));
+
+			int batchSize = parseInt(request.getParameter(REQUEST_PARAMETER_BATCH_SIZE), DEFAULT_BATCH_SIZE);
+			long count    = importCsv(securityContext, resource, request.getReader(), batchSize);
+
+			response.setStatus(HttpServletResponse.SC_CREATED);
+
+			Writer writer = response.getWriter();
+
+			writer.append(Long.toString(count)).append(" objects created").append(CRLF);
+			writer.flush();
+			writer.close();
+
+		} catch (FrameworkException frameworkException) {
+
+			// set status
+			response.setStatus(frameworkException.getStatus());
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "Exception in POST", t);
+
+			response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		}
+	}
+
 	/**
 	 * Tries to parse the given String to an int value, returning
 	 * defaultValue on error.
@@ -302,57 +341,285 @@ public class CsvServlet extends HttpServlet {
 	 */
 	public static void writeCsv(final Result result, final Writer out, final String propertyView) throws IOException {
 
-		List<GraphObject> list = result.getResults();
-		boolean headerWritten  = false;
+		writeCsv(result.getResults(), out, propertyView, null);
+		out.flush();
+	}
+
+	/**
+	 * Writes the complete result of the given resource, flushing the
+	 * output every {@link #STREAMING_PAGE_SIZE} records.
+	 *
+	 * The results are instantiated lazily while they are written, see
+	 * {@link Resource#doGetLazily}, so only the current chunk is held in
+	 * memory. Pagination relative to an offset object needs the complete
+	 * result and is done by a normal query.
+	 */
+	private void streamCsv(final SecurityContext securityContext, final Resource resource, final PropertyKey sortKey, final boolean sortDescending, final String offsetId, final Writer out, final String view) throws FrameworkException, IOException {
+
+		if (offsetId != null) {
+
+			Result result = resource.doGet(sortKey, sortDescending, NodeFactory.DEFAULT_PAGE_SIZE, NodeFactory.DEFAULT_PAGE, offsetId);
+
+			writeCsv(result, out, view);
+
+			return;
+		}
+
+		List<GraphObject> chunk   = new ArrayList<GraphObject>(STREAMING_PAGE_SIZE);
+		List<PropertyKey> columns = null;
+
+		for (GraphObject obj : resource.doGetLazily(sortKey, sortDescending)) {
+
+			chunk.add(obj);
+
+			if (chunk.size() == STREAMING_PAGE_SIZE) {
+
+				columns = writeCsv(chunk, out, view, columns);
+				chunk.clear();
+
+				// instantiated objects are cached for the whole request otherwise
+				securityContext.cleanUp();
+
+				// send each chunk to the client
+				out.flush();
+			}
+		}
+
+		writeCsv(chunk, out, view, columns);
+		out.flush();
+	}
+
+	/**
+	 * Writes the given objects as CSV records. The columns are determined
+	 * once from the first object, and a header is written, unless columns
+	 * are given.
+	 *
+	 * @return the columns
+	 */
+	private static List<PropertyKey> writeCsv(final List<GraphObject> list, final Writer out, final String propertyView, List<PropertyKey> columns) throws IOException {
 
 		for (GraphObject obj : list) {
 
 			// Write column headers
-			if (!headerWritten) {
+			if (columns == null) {
 
-				StringBuilder row = new StringBuilder();
+				columns = new ArrayList<PropertyKey>();
 
 				for (PropertyKey key : obj.getPropertyKeys(propertyView)) {
 
-					row.append("\"").append(key.dbName()).append("\",");
+					columns.add(key);
 				}
 
-				// remove last ,
-				int pos = row.lastIndexOf(",");
-				if (pos >= 0) {
+				List<String> header = new ArrayList<String>(columns.size());
 
-					row.deleteCharAt(pos);
+				for (PropertyKey key : columns) {
+
+					header.add(key.dbName());
 				}
-				
-				out.append(row).append("\n");
 
-				// flush each line
-				out.flush();
+				writeRecord(header, out);
+			}
+
+			List<Object> values = new ArrayList<Object>(columns.size());
 
-				headerWritten = true;
+			for (PropertyKey key : columns) {
 
+				values.add(obj.getProperty(key));
 			}
 
-			StringBuilder row = new StringBuilder();
+			writeRecord(values, out);
+		}
 
-			for (PropertyKey key : obj.getPropertyKeys(propertyView)) {
+		return columns;
+	}
 
-				Object value = obj.getProperty(key);
+	/**
+	 * Creates objects from the given CSV input by POSTing each record to
+	 * the given resource. The first record contains the property names.
+	 * Records are committed in batches of the given size.
+	 *
+	 * @return the number of records
+	 */
+	private long importCsv(final SecurityContext securityContext, final Resource resource, final Reader input, final int batchSize) throws FrameworkException, IOException {
+
+		final BufferedReader reader = new BufferedReader(input, 65536);
+		final List<String> header   = readRecord(reader);
+		long count                  = 0;
+
+		if (header == null) {
+			return 0;
+		}
+
+		List<Map<String, Object>> batch = readBatch(reader, header, batchSize);
+
+		while (!batch.isEmpty()) {
+
+			final List<Map<String, Object>> records = batch;
+
+			Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					for (Map<String, Object> properties : records) {
+
+						resource.doPost(properties);
+					}
+
+					return null;
+				}
+			});
+
+			count += records.size();
+
+			logger.log(Level.FINE, "{0} records imported", count);
+
+			batch = readBatch(reader, header, batchSize);
+		}
+
+		return count;
+	}
 
-				row.append("\"").append((value != null
-							 ? StringUtils.replace(value.toString(), "\"", "\\\"")    // escaping for CSV
-							 : "")).append("\",");
+	/**
+	 * Reads the next batch of records before the transaction starts, so
+	 * that the transaction can be retried.
+	 */
+	private List<Map<String, Object>> readBatch(final BufferedReader reader, final List<String> header, final int batchSize) throws IOException {
+
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>(Math.min(batchSize, DEFAULT_BATCH_SIZE));
+		List<String> record             = null;
 
+		while (batch.size() < batchSize && (record = readRecord(reader)) != null) {
+
+			// skip empty lines
+			if (record.size() == 1 && record.get(0).isEmpty()) {
+				continue;
 			}
 
-			// remove last ,
-			row.deleteCharAt(row.lastIndexOf(","));
-			out.append(row).append("\n");
+			Map<String, Object> properties = new LinkedHashMap<String, Object>();
+			int size                       = Math.min(header.size(), record.size());
+
+			for (int i = 0; i < size; i++) {
+
+				String value = record.get(i);
+
+				// empty fields are not set
+				if (StringUtils.isNotEmpty(value)) {
+
+					properties.put(header.get(i), value);
+				}
+			}
 
-			// flush each line
-			out.flush();
+			batch.add(properties);
 		}
 
+		return batch;
+	}
+
+	/**
+	 * Writes a single RFC 4180 record, all fields are quoted.
+	 */
+	static void writeRecord(final List<? extends Object> values, final Writer out) throws IOException {
+
+		boolean first = true;
+
+		for (Object value : values) {
+
+			if (!first) {
+				out.append(',');
+			}
+
+			out.append('"');
+
+			if (value != null) {
+
+				out.append(StringUtils.replace(value.toString(), "\"", "\"\""));
+			}
+
+			out.append('"');
+
+			first = false;
+		}
+
+		out.append(CRLF);
+	}
+
+	/**
+	 * Reads a single RFC 4180 record. Quoted fields may contain commas,
+	 * line breaks and doubled quotes. Both CRLF and LF are accepted as
+	 * record separators.
+	 *
+	 * @return the fields of the record, or null at the end of the input
+	 */
+	static List<String> readRecord(final BufferedReader reader) throws IOException {
+
+		List<String> fields   = new ArrayList<String>();
+		StringBuilder field   = new StringBuilder();
+		boolean inQuotes      = false;
+		boolean empty         = true;
+		int c                 = 0;
+
+		while ((c = reader.read()) != -1) {
+
+			empty = false;
+
+			if (inQuotes) {
+
+				if (c == '"') {
+
+					reader.mark(1);
+
+					if (reader.read() == '"') {
+
+						// escaped quote
+						field.append('"');
+
+					} else {
+
+						reader.reset();
+						inQuotes = false;
+					}
+
+				} else {
+
+					field.append((char) c);
+				}
+
+			} else {
+
+				switch (c) {
+
+					case '"':
+						inQuotes = true;
+						break;
+
+					case ',':
+						fields.add(field.toString());
+						field.setLength(0);
+						break;
+
+					case '\r':
+						break;
+
+					case '\n':
+						fields.add(field.toString());
+						return fields;
+
+					default:
+						field.append((char) c);
+						break;
+				}
+			}
+		}
+
+		if (empty) {
+			return null;
+		}
+
+		// last record without line break
+		fields.add(field.toString());
+
+		return fields;
 	}
 
 	//~--- get methods ----------------------------------------------------
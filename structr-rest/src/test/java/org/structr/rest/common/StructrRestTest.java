@@ -68,6 +68,7 @@ import org.structr.core.property.PropertyMap;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
 import org.structr.context.ApplicationContextListener;
+import org.structr.rest.servlet.CsvServlet;
 import org.structr.rest.servlet.JsonRestServlet;
 
 //~--- classes ----------------------------------------------------------------
@@ -101,6 +102,7 @@ public class StructrRestTest extends TestCase {
 	
 	protected static final String contextPath = "/";
 	protected static final String restUrl = "/structr/rest";
+	protected static final String csvUrl = "/structr/csv";
 	protected static final String host = "127.0.0.1";
 	protected static final int httpPort = 8875;
 	
@@ -173,9 +175,16 @@ public class StructrRestTest extends TestCase {
 			structrRestServletHolder.setInitParameters(servletParams);
 			structrRestServletHolder.setInitOrder(0);
 
+			// configure CSV servlet
+			CsvServlet csvServlet          = new CsvServlet(new TestResourceProvider(), PropertyView.Public, AbstractNode.uuid);
+			ServletHolder csvServletHolder = new ServletHolder(csvServlet);
+
+			csvServletHolder.setInitParameters(servletParams);
+
 			// add to servlets
 			Map<String, ServletHolder> servlets = new LinkedHashMap<String, ServletHolder>();
 			servlets.put(restUrl + "/*", structrRestServletHolder);
+			servlets.put(csvUrl + "/*", csvServletHolder);
 
 			// add servlet elements
 			int position = 1;
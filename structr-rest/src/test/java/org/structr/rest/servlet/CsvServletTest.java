@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.servlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Test RFC 4180 output and parsing of {@link CsvServlet}.
+ *
+ * @author Christian Morgner
+ */
+public class CsvServletTest extends TestCase {
+
+	public void testWriteRecord() throws IOException {
+
+		StringWriter out = new StringWriter();
+
+		CsvServlet.writeRecord(Arrays.asList("name", null, "say \"hello\"", "a,b", 42), out);
+
+		assertEquals("\"name\",\"\",\"say \"\"hello\"\"\",\"a,b\",\"42\"\r\n", out.toString());
+	}
+
+	public void testReadRecord() throws IOException {
+
+		BufferedReader reader = new BufferedReader(new StringReader("name,\"a,b\",\"say \"\"hello\"\"\"\r\n\"multi\r\nline\",,plain\nlast"));
+		List<String> record   = null;
+
+		record = CsvServlet.readRecord(reader);
+		assertEquals(Arrays.asList("name", "a,b", "say \"hello\""), record);
+
+		record = CsvServlet.readRecord(reader);
+		assertEquals(Arrays.asList("multi\r\nline", "", "plain"), record);
+
+		record = CsvServlet.readRecord(reader);
+		assertEquals(Arrays.asList("last"), record);
+
+		assertNull(CsvServlet.readRecord(reader));
+	}
+
+	public void testRoundTrip() throws IOException {
+
+		List<String> values = Arrays.asList("", "\"", "\"\"", ",", "\n", "x\r\ny");
+		StringWriter out    = new StringWriter();
+
+		CsvServlet.writeRecord(values, out);
+
+		assertEquals(values, CsvServlet.readRecord(new BufferedReader(new StringReader(out.toString()))));
+	}
+}
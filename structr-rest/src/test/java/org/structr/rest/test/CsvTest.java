@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import static org.hamcrest.Matchers.*;
+import com.jayway.restassured.RestAssured;
+import org.structr.rest.common.StructrRestTest;
+
+/**
+ * Test CSV import and export of {@link org.structr.rest.servlet.CsvServlet}.
+ *
+ * @author Christian Morgner
+ */
+public class CsvTest extends StructrRestTest {
+
+	private static final String csvResource = "http://" + host + ":" + httpPort + csvUrl + "/test_one";
+
+	/**
+	 * Test import of more records than fit into a single batch.
+	 */
+	public void test01BatchedImport() {
+
+		RestAssured
+
+			.given()
+				.contentType("text/csv; charset=UTF-8")
+				.body(createCsv(25))
+			.expect()
+				.statusCode(201)
+				.body(containsString("25 objects created"))
+			.when()
+				.post(csvResource + "?batchSize=10");
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result_count",		equalTo(25))
+				.body("result[0].name",		equalTo("TestOne-0000"))
+				.body("result[24].name",	equalTo("TestOne-0024"))
+			.when()
+				.get("/test_one?sort=name");
+	}
+
+	/**
+	 * Test export of more records than are written in a single chunk.
+	 */
+	public void test02StreamedExport() {
+
+		int count = 2500;
+
+		RestAssured
+
+			.given()
+				.contentType("text/csv; charset=UTF-8")
+				.body(createCsv(count))
+			.expect()
+				.statusCode(201)
+			.when()
+				.post(csvResource);
+
+		String csv = RestAssured
+
+			.given()
+				.contentType("text/csv; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+			.when()
+				.get(csvResource + "?sort=name")
+			.asString();
+
+		String[] lines = csv.split("\r\n");
+
+		// one header and one record per object
+		assertEquals(count + 1, lines.length);
+		assertTrue(lines[0].contains("\"name\""));
+
+		for (int i = 0; i < count; i++) {
+
+			assertTrue(lines[i + 1].contains(String.format("\"TestOne-%04d\"", i)));
+		}
+	}
+
+	private String createCsv(final int count) {
+
+		StringBuilder buf = new StringBuilder("name\r\n");
+
+		for (int i = 0; i < count; i++) {
+
+			buf.append(String.format("TestOne-%04d", i)).append("\r\n");
+		}
+
+		return buf.toString();
+	}
+}
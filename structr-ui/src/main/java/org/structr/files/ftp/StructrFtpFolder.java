@@ -23,24 +23,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.ftpserver.ftplet.FtpFile;
-import org.structr.common.SecurityContext;
-import org.structr.common.error.FrameworkException;
-import org.structr.core.Result;
-import org.structr.core.Services;
-import org.structr.core.entity.AbstractNode;
-import org.structr.core.graph.CreateNodeCommand;
-import org.structr.core.graph.NodeAttribute;
-import org.structr.core.graph.StructrTransaction;
-import org.structr.core.graph.TransactionCommand;
-import org.structr.core.graph.search.Search;
-import org.structr.core.graph.search.SearchAttribute;
-import org.structr.core.graph.search.SearchNodeCommand;
 import org.structr.web.common.FileHelper;
 import org.structr.web.entity.AbstractFile;
 import org.structr.web.entity.File;
@@ -96,87 +82,32 @@ public class StructrFtpFolder extends AbstractStructrFtpFile implements FtpFile
 	@Override
 	public List<FtpFile> listFiles() {
 
-		List<FtpFile> ftpFiles = new ArrayList();
-		
 		String requestedPath = getAbsolutePath();
-		logger.log(Level.INFO, "Children of {0} requested", requestedPath);
-		
-		if ("/".equals(requestedPath)) {
-			
-			// Find all folders and files which have no parent
-			List<SearchAttribute> searchAttrs = new LinkedList<>();
-			searchAttrs.add(Search.orExactTypeAndSubtypes(org.structr.web.entity.Folder.class));
-
-			try {
-				Result<Folder> results = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class).execute(false, false, searchAttrs);
-				logger.log(Level.INFO, "{0} folders found", results.size());
-
-				for (Folder f : results.getResults()) {
-					
-					if (f.getProperty(AbstractFile.parent) != null) {
-						continue;
-					}
-					
-					FtpFile ftpFile = new StructrFtpFolder(f);
-					logger.log(Level.INFO, "Folder found: {0}", ftpFile.getAbsolutePath());
-
-					ftpFiles.add(ftpFile);
-					
-				}
-
-			} catch (FrameworkException ex) {
-				logger.log(Level.SEVERE, null, ex);
-			}
-			
-			searchAttrs = new LinkedList<>();
-			searchAttrs.add(Search.orExactTypeAndSubtypes(org.structr.web.entity.File.class));
-
-			try {
-				Result<File> results = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class).execute(false, false, searchAttrs);
-				logger.log(Level.INFO, "{0} files found", results.size());
-
-				for (File f : results.getResults()) {
-					
-					if (f.getProperty(AbstractFile.parent) != null) {
-						continue;
-					}
-					
-					logger.log(Level.FINEST, "Structr file found: {0}", f);
-					
-					FtpFile ftpFile = new StructrFtpFile(f);
-					logger.log(Level.FINE, "File found: {0}", ftpFile.getAbsolutePath());
-
-					ftpFiles.add(ftpFile);
-					
-				}
-
-			} catch (FrameworkException ex) {
-				logger.log(Level.SEVERE, null, ex);
-			}
-
-			return ftpFiles;
-			
-		}
+		logger.log(Level.FINE, "Children of {0} requested", requestedPath);
 		
-		List<Folder> folders = ((Folder) structrFile).getProperty(Folder.folders);
+		// Top level folders and files have no parent, all others are
+		// found by following the relationships of the folder
+		List<AbstractFile> children = "/".equals(requestedPath) ? FileHelper.getRootFiles() : structrFile.getProperty(AbstractFile.children);
+		List<FtpFile> ftpFiles      = new ArrayList<>(children.size());
+		List<FtpFile> files         = new ArrayList<>(children.size());
 		
-		for (Folder f : folders) {
-			
-			FtpFile ftpFile = new StructrFtpFolder(f);
-			logger.log(Level.INFO, "Subfolder found: {0}", ftpFile.getAbsolutePath());
-			
-			ftpFiles.add(ftpFile);
+		// folders first, then files
+		for (AbstractFile f : children) {
+
+			if (f instanceof Folder) {
+
+				ftpFiles.add(new StructrFtpFolder((Folder) f));
+
+			} else if (f instanceof File) {
+
+				files.add(new StructrFtpFile((File) f));
+			}
 		}
+
+		ftpFiles.addAll(files);
 		
-		List<File> files = ((Folder) structrFile).getProperty(Folder.files);
-		
-		for (File f : files) {
-			
-			FtpFile ftpFile = new StructrFtpFile(f);
-			logger.log(Level.INFO, "File found: {0}", ftpFile.getAbsolutePath());
-			
-			ftpFiles.add(ftpFile);
-		}
+		logger.log(Level.FINE, "{0} children found", ftpFiles.size());
+
 		return ftpFiles;
 	}
 
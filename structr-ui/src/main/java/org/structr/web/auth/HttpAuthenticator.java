@@ -43,11 +43,8 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import org.structr.common.AccessMode;
 import org.structr.common.PathHelper;
-import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Person;
-import org.structr.core.graph.StructrTransaction;
-import org.structr.core.graph.TransactionCommand;
 import org.structr.core.property.PropertyKey;
 import org.structr.web.resource.RegistrationResource;
 import org.structr.web.servlet.HtmlServlet;
@@ -147,21 +144,10 @@ public class HttpAuthenticator implements Authenticator {
 
 		if (user != null) {
 
-			final String sessionIdFromRequest = request.getRequestedSessionId();
-			final Principal principal         = user;
-
 			try {
 
-				Services.command(SecurityContext.getSuperUserInstance(), TransactionCommand.class).execute(new StructrTransaction() {
-
-					@Override
-					public Object execute() throws FrameworkException {
-
-						// store session id in user object
-						principal.setProperty(Principal.sessionId, sessionIdFromRequest);
-						return null;
-					}
-				});
+				// store session id in user object
+				AuthHelper.setSessionId(user, request.getRequestedSessionId());
 
 			} catch (Exception ex) {
 
@@ -183,17 +169,7 @@ public class HttpAuthenticator implements Authenticator {
 			Principal user = getUser(request, false);
 			if (user != null) {
 
-				final Principal principal = user;
-				
-				Services.command(SecurityContext.getSuperUserInstance(), TransactionCommand.class).execute(new StructrTransaction() {
-
-					@Override
-					public Object execute() throws FrameworkException {
-
-						principal.setProperty(Principal.sessionId, null);
-						return null;
-					}
-				});
+				AuthHelper.setSessionId(user, null);
 			}
 
 			HttpSession session = request.getSession(false);
@@ -286,18 +262,9 @@ public class HttpAuthenticator implements Authenticator {
 
 					if (user != null) {
 
-						final Principal principal = user;
-						
 						try {
 
-							Services.command(superUserContext, TransactionCommand.class).execute(new StructrTransaction() {
-
-								@Override
-								public Object execute() throws FrameworkException {
-									principal.setProperty(Principal.sessionId, HttpAuthenticator.getSessionId(request));
-									return null;
-								}
-							});
+							AuthHelper.setSessionId(user, HttpAuthenticator.getSessionId(request));
 									
 							HtmlServlet.setNoCacheHeaders(response);
 							
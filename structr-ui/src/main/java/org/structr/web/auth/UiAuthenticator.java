@@ -37,13 +37,10 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.lang.StringUtils;
 import org.structr.common.AccessMode;
-import org.structr.core.Services;
 import org.structr.core.auth.exception.UnauthorizedException;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Person;
 import org.structr.core.entity.SuperUser;
-import org.structr.core.graph.StructrTransaction;
-import org.structr.core.graph.TransactionCommand;
 import static org.structr.web.auth.HttpAuthenticator.checkSessionAuthentication;
 
 //~--- classes ----------------------------------------------------------------
@@ -276,19 +273,10 @@ public class UiAuthenticator extends HttpAuthenticator {
 			// Websocket connects don't have a session
 			if (sessionIdFromRequest != null) {
 			
-				final Principal principal         = user;
-
 				try {
 					
-					Services.command(SecurityContext.getSuperUserInstance(), TransactionCommand.class).execute(new StructrTransaction() {
-
-						@Override
-						public Object execute() throws FrameworkException {
-							// store session id in user object
-							principal.setProperty(Principal.sessionId, sessionIdFromRequest);
-							return null;
-						}
-					});
+					// store session id in user object
+					AuthHelper.setSessionId(user, sessionIdFromRequest);
 
 				} catch (Exception ex) {
 
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.SecurityContext;
+import org.structr.common.ThumbnailParameters;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.graph.MaintenanceCommand;
+import org.structr.core.graph.NodeServiceCommand;
+import org.structr.core.graph.search.Search;
+import org.structr.core.graph.search.SearchNodeCommand;
+import org.structr.web.entity.Image;
+import org.structr.web.property.ThumbnailProperty;
+
+/**
+ * Creates the tnSmall and tnMid thumbnails of all images in advance, using
+ * the {@link ThumbnailGenerator}. If its queue is full, thumbnails are
+ * created in the calling thread.
+ *
+ * @author Christian Morgner
+ */
+public class BulkCreateThumbnailsCommand extends NodeServiceCommand implements MaintenanceCommand {
+
+	private static final Logger logger = Logger.getLogger(BulkCreateThumbnailsCommand.class.getName());
+
+	@Override
+	public void execute(Map<String, Object> attributes) throws FrameworkException {
+
+		final SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
+		final ThumbnailGenerator generator     = ThumbnailGenerator.getInstance();
+		final List<Image> images               = (List<Image>) Services.command(superUserContext, SearchNodeCommand.class).execute(Search.andExactTypeAndSubtypes(Image.class)).getResults();
+		final ThumbnailParameters[] sizes      = new ThumbnailParameters[] {
+			((ThumbnailProperty) Image.tnSmall).getThumbnailParameters(),
+			((ThumbnailProperty) Image.tnMid).getThumbnailParameters()
+		};
+		long count                             = 0;
+
+		logger.log(Level.INFO, "Start creating thumbnails for {0} images", images.size());
+
+		for (Image image : images) {
+
+			if (image.isThumbnail()) {
+				continue;
+			}
+
+			for (ThumbnailParameters size : sizes) {
+
+				if (generator.submit(image, size.getMaxWidth(), size.getMaxHeight(), size.getCropToFit()) == null) {
+
+					image.createScaledImage(size.getMaxWidth(), size.getMaxHeight(), size.getCropToFit());
+				}
+			}
+
+			count++;
+		}
+
+		logger.log(Level.INFO, "Done with scheduling thumbnails for {0} images", count);
+	}
+}
@@ -25,6 +25,10 @@ import net.sf.jmimemagic.MagicMatch;
 
 import org.apache.commons.io.FileUtils;
 
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
 import org.structr.common.error.FrameworkException;
 import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
@@ -33,8 +37,12 @@ import org.structr.core.entity.AbstractNode;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import java.util.UUID;
 import java.util.logging.Level;
@@ -44,12 +52,17 @@ import org.apache.commons.lang.StringUtils;
 import org.structr.common.Path;
 import org.structr.common.PathHelper;
 import org.structr.common.SecurityContext;
+import org.structr.core.GraphObject;
 import org.structr.core.Result;
 import org.structr.core.graph.CreateNodeCommand;
+import org.structr.core.graph.CypherQueryCommand;
+import org.structr.core.graph.EntityCache;
+import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.StructrTransaction;
 import org.structr.core.graph.TransactionCommand;
 import org.structr.core.graph.search.Search;
 import org.structr.core.graph.search.SearchAttribute;
+import org.structr.core.module.ModuleService;
 import org.structr.core.property.PropertyMap;
 import org.structr.util.Base64;
 import org.structr.web.entity.AbstractFile;
@@ -66,6 +79,10 @@ public class FileHelper {
 
 	private static final String UNKNOWN_MIME_TYPE = "application/octet-stream";
 	private static final Logger logger            = Logger.getLogger(FileHelper.class.getName());
+	private static final String ROOT_FILES_QUERY  = "START n=node:keywordAllNodes({types}) WHERE NOT(n<-[:CONTAINS]-()) RETURN n";
+
+	// weight is the number of entries
+	private static final EntityCache<String, AbstractFile> filesByPath = new EntityCache<>(100000);
 
 	//~--- methods --------------------------------------------------------
 
@@ -456,11 +473,9 @@ public class FileHelper {
 	}
 
 	/**
-	 * Find a file by its absolute ancestor path.
-	 * 
-	 * File may not be hidden or deleted.
-	 * @param absolutePath
-	 * @return 
+	 * Resolves the given absolute path segment by segment. Each segment is
+	 * looked up in the name index and verified against its parent, resolved
+	 * segments are cached by their path.
 	 */
 	public static AbstractFile getFileByAbsolutePath(final String absolutePath) {
 		
@@ -471,25 +486,14 @@ public class FileHelper {
 		// Find root folder
 		if (parts[0].length() == 0) return null;
 
-		AbstractFile currentFile = getFileByName(parts[0]); 
-		if (currentFile == null) return null;
+		StringBuilder path       = new StringBuilder();
+		AbstractFile currentFile = null;
 		
-		for (int i=1; i<parts.length; i++) {
+		for (String part : parts) {
 
-			List<AbstractFile> children = currentFile.getProperty(AbstractFile.children);
-			
-			currentFile = null;
-			
-			for (AbstractFile child : children) {
-				
-				if (child.getProperty(AbstractFile.name).equals(parts[i])) {
-					
-					// Child with matching name found
-					currentFile = child;
-					break;
-				}
-				
-			}
+			path.append("/").append(part);
+
+			currentFile = getChild(path.toString(), currentFile, part);
 			
 			if (currentFile == null) return null;
 			
@@ -499,6 +503,105 @@ public class FileHelper {
 		
 	}
 	
+	/**
+	 * Returns the child of the given folder with the given name, or the top
+	 * level file or folder if parentFile is null.
+	 *
+	 * Children are resolved through the CONTAINS relationships of the
+	 * parent, only the matching node is instantiated. Top level files are
+	 * looked up in the name index.
+	 */
+	public static AbstractFile getChildByName(final AbstractFile parentFile, final String name) {
+
+		if (parentFile != null) {
+
+			String nameKey = AbstractNode.name.dbName();
+
+			try {
+				for (Relationship rel : parentFile.getNode().getRelationships(RelType.CONTAINS, Direction.OUTGOING)) {
+
+					Node child = rel.getEndNode();
+
+					if (name.equals(child.getProperty(nameKey, null))) {
+
+						GraphObject file = new NodeFactory(SecurityContext.getSuperUserInstance()).instantiate(child);
+						if (file instanceof AbstractFile) {
+
+							return (AbstractFile) file;
+						}
+					}
+				}
+
+			} catch (FrameworkException ex) {
+				logger.log(Level.SEVERE, null, ex);
+			}
+
+			return null;
+		}
+
+		List<SearchAttribute> searchAttrs = new LinkedList<>();
+
+		searchAttrs.add(Search.andExactName(name));
+		searchAttrs.add(Search.orExactTypeAndSubtypes(org.structr.web.entity.AbstractFile.class));
+
+		try {
+			Result<AbstractFile> results = searchNodesAsSuperuser.execute(false, false, searchAttrs);
+
+			for (AbstractFile file : results.getResults()) {
+
+				if (isChild(file, parentFile, name)) {
+					return file;
+				}
+			}
+
+		} catch (FrameworkException ex) {
+			logger.log(Level.SEVERE, null, ex);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns all files and folders without a parent folder.
+	 *
+	 * The index hits are filtered by the database before any of them is
+	 * instantiated, and the result is cached until the next commit.
+	 */
+	public static List<AbstractFile> getRootFiles() {
+
+		List<AbstractFile> rootFiles   = new LinkedList<>();
+		Map<String, Object> parameters = new LinkedHashMap<>();
+		Set<String> types              = new LinkedHashSet<>();
+
+		for (Class type : Services.getService(ModuleService.class).getCachedNodeEntities().values()) {
+
+			if (AbstractFile.class.isAssignableFrom(type)) {
+
+				types.add("type:".concat(type.getSimpleName()));
+			}
+		}
+
+		if (types.isEmpty()) return rootFiles;
+
+		parameters.put("types", StringUtils.join(types, " "));
+
+		try {
+			CypherQueryCommand cypherQueryCommand = Services.command(SecurityContext.getSuperUserInstance(), CypherQueryCommand.class);
+
+			for (GraphObject obj : cypherQueryCommand.execute(ROOT_FILES_QUERY, parameters, false, false, true)) {
+
+				if (obj instanceof AbstractFile) {
+					rootFiles.add((AbstractFile) obj);
+				}
+			}
+
+		} catch (FrameworkException ex) {
+			logger.log(Level.SEVERE, null, ex);
+		}
+
+		return rootFiles;
+	}
+
 	public static AbstractFile getFileByUuid(final String uuid) {
 
 		logger.log(Level.FINE, "Search for file with uuid: {0}", uuid);
@@ -567,5 +670,53 @@ public class FileHelper {
 
 		return "/".concat(folderPath);
 	}
-	
+
+	//~--- private methods ------------------------------------------------
+
+	private static AbstractFile getChild(final String path, final AbstractFile parentFile, final String name) {
+
+		AbstractFile file = filesByPath.get(path);
+
+		// cached entries are verified, the file might have been moved or renamed
+		if (file != null && isChild(file, parentFile, name)) {
+			return file;
+		}
+
+		file = getChildByName(parentFile, name);
+
+		if (file != null) {
+
+			filesByPath.put(path, file, 1);
+
+		} else {
+
+			filesByPath.remove(path);
+		}
+
+		return file;
+	}
+
+	private static boolean isChild(final AbstractFile file, final AbstractFile parentFile, final String name) {
+
+		try {
+
+			AbstractFile actualParent = file.getProperty(AbstractFile.parent);
+
+			if (!name.equals(file.getProperty(AbstractFile.name))) {
+				return false;
+			}
+
+			if (parentFile == null) {
+				return actualParent == null;
+			}
+
+			return actualParent != null && actualParent.getId() == parentFile.getId();
+
+		} catch (Throwable t) {
+
+			// file was deleted
+			return false;
+		}
+	}
+
 }
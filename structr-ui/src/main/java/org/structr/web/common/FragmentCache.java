@@ -0,0 +1,319 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.structr.common.PermissionCache;
+import org.structr.core.Services;
+import org.structr.core.graph.EntityCache;
+
+/**
+ * Server-side cache for the rendered output of DOM subtrees.
+ *
+ * Each entry is keyed by the uuid of the root node of the subtree and the
+ * inputs that influence its output (see {@link RenderContext#getFragmentKey}).
+ * While a fragment is rendered, the ids of all DOM and data nodes it
+ * touches are recorded. Committed transactions that modify one of these
+ * nodes or their relationships remove the entry again.
+ *
+ * @author Christian Morgner
+ */
+public class FragmentCache implements TransactionEventHandler<Object> {
+
+	private static final Logger logger              = Logger.getLogger(FragmentCache.class.getName());
+	private static final FragmentCache instance     = new FragmentCache();
+	private static final int MAX_DEPENDENCIES       = 100000;
+
+	public static final String FRAGMENT_CACHE_MAX_WEIGHT = "HtmlServlet.fragmentcache.maxweight";
+
+	private final AtomicLong generation                     = new AtomicLong(0);
+	private final Map<Long, Set<String>> dependencies       = new ConcurrentHashMap<Long, Set<String>>();
+	private final Map<String, FragmentStatistics> nodeStats = new ConcurrentHashMap<String, FragmentStatistics>();
+	private final EntityCache<String, Fragment> fragments;
+
+	private FragmentCache() {
+
+		// weight is the length of the rendered output, default is ~ 10M characters
+		long maxWeight = 10000000;
+
+		try {
+			maxWeight = Long.parseLong(Services.getConfigurationValue(FRAGMENT_CACHE_MAX_WEIGHT, Long.toString(maxWeight)));
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid value for {0}, using default", FRAGMENT_CACHE_MAX_WEIGHT);
+		}
+
+		fragments = new EntityCache<String, Fragment>(maxWeight);
+	}
+
+	public static FragmentCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the cached output for the given node and key, or null if
+	 * there is no valid entry.
+	 */
+	public Fragment get(final String uuid, final String key) {
+
+		Fragment fragment = fragments.get(key);
+
+		// permissions changed since the fragment was rendered
+		if (fragment != null && fragment.epoch != PermissionCache.getEpoch()) {
+
+			fragments.remove(key);
+			fragment = null;
+		}
+
+		getStatistics(uuid).record(fragment != null);
+
+		return fragment;
+	}
+
+	/**
+	 * Returns the current generation of the cache. The generation changes
+	 * with every committed transaction, so callers can detect whether data
+	 * was modified while a fragment was rendered.
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Stores the given fragment, unless a transaction was committed since
+	 * the given generation.
+	 */
+	public void put(final String key, final Fragment fragment, final long renderGeneration) {
+
+		if (generation.get() != renderGeneration) {
+			return;
+		}
+
+		// dependencies of evicted fragments are only removed on invalidation
+		if (dependencies.size() > MAX_DEPENDENCIES) {
+			clear();
+		}
+
+		for (Long nodeId : fragment.nodeIds) {
+
+			Set<String> keys = dependencies.get(nodeId);
+			if (keys == null) {
+
+				keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+				dependencies.put(nodeId, keys);
+			}
+
+			keys.add(key);
+		}
+
+		fragments.put(key, fragment, fragment.content.length());
+
+		// re-check, invalidation might have missed the new dependencies
+		if (generation.get() != renderGeneration) {
+			fragments.remove(key);
+		}
+	}
+
+	public void invalidate(final long nodeId) {
+
+		Set<String> keys = dependencies.remove(nodeId);
+		if (keys != null) {
+
+			for (String key : keys) {
+
+				fragments.remove(key);
+			}
+		}
+	}
+
+	public void clear() {
+
+		fragments.clear();
+		dependencies.clear();
+	}
+
+	/**
+	 * Returns overall statistics and the hit rate for each node that was
+	 * rendered with fragment caching enabled.
+	 */
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats     = new LinkedHashMap<String, Object>(fragments.getStatistics());
+		Map<String, Object> perNode   = new LinkedHashMap<String, Object>();
+
+		for (Map.Entry<String, FragmentStatistics> entry : nodeStats.entrySet()) {
+			perNode.put(entry.getKey(), entry.getValue().toMap());
+		}
+
+		stats.put("nodes", perNode);
+
+		return stats;
+	}
+
+	// ----- interface TransactionEventHandler -----
+	@Override
+	public Object beforeCommit(TransactionData data) throws Exception {
+		return null;
+	}
+
+	@Override
+	public void afterCommit(TransactionData data, Object state) {
+
+		generation.incrementAndGet();
+
+		for (Node node : data.createdNodes()) {
+			invalidate(node.getId());
+		}
+
+		for (Node node : data.deletedNodes()) {
+			invalidate(node.getId());
+		}
+
+		for (PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+			invalidate(entry.entity().getId());
+		}
+
+		for (PropertyEntry<Node> entry : data.removedNodeProperties()) {
+			invalidate(entry.entity().getId());
+		}
+
+		for (Relationship rel : data.createdRelationships()) {
+			invalidate(rel);
+		}
+
+		for (Relationship rel : data.deletedRelationships()) {
+			invalidate(rel);
+		}
+
+		for (PropertyEntry<Relationship> entry : data.assignedRelationshipProperties()) {
+			invalidate(entry.entity());
+		}
+
+		for (PropertyEntry<Relationship> entry : data.removedRelationshipProperties()) {
+			invalidate(entry.entity());
+		}
+	}
+
+	@Override
+	public void afterRollback(TransactionData data, Object state) {
+	}
+
+	// ----- private methods -----
+	private void invalidate(final Relationship rel) {
+
+		// node ids of deleted relationships are still accessible here
+		invalidate(rel.getStartNode().getId());
+		invalidate(rel.getEndNode().getId());
+	}
+
+	private FragmentStatistics getStatistics(final String uuid) {
+
+		FragmentStatistics stats = nodeStats.get(uuid);
+		if (stats == null) {
+
+			stats = new FragmentStatistics();
+			nodeStats.put(uuid, stats);
+		}
+
+		return stats;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Rendered output of a subtree, along with the render context state
+	 * after rendering it.
+	 */
+	public static class Fragment {
+
+		private String content         = null;
+		private boolean inBody         = false;
+		private boolean appLibRendered = false;
+		private Set<Long> nodeIds      = null;
+		private long epoch             = 0;
+
+		public Fragment(final String content, final Set<Long> nodeIds, final boolean inBody, final boolean appLibRendered, final long epoch) {
+
+			this.content        = content;
+			this.nodeIds        = nodeIds;
+			this.inBody         = inBody;
+			this.appLibRendered = appLibRendered;
+			this.epoch          = epoch;
+		}
+
+		public String getContent() {
+			return content;
+		}
+
+		public Set<Long> getNodeIds() {
+			return nodeIds;
+		}
+
+		public boolean inBody() {
+			return inBody;
+		}
+
+		public boolean appLibRendered() {
+			return appLibRendered;
+		}
+	}
+
+	private static class FragmentStatistics {
+
+		private final AtomicLong hits   = new AtomicLong(0);
+		private final AtomicLong misses = new AtomicLong(0);
+
+		public void record(final boolean hit) {
+
+			if (hit) {
+
+				hits.incrementAndGet();
+
+			} else {
+
+				misses.incrementAndGet();
+			}
+		}
+
+		public Map<String, Object> toMap() {
+
+			Map<String, Object> map = new LinkedHashMap<String, Object>();
+			long h                  = hits.get();
+			long m                  = misses.get();
+
+			map.put("hits", h);
+			map.put("misses", m);
+			map.put("hitRate", (h + m) > 0 ? (double) h / (double) (h + m) : 0.0);
+
+			return map;
+		}
+	}
+}
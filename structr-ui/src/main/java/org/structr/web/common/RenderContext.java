@@ -19,10 +19,17 @@
 
 package org.structr.web.common;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -47,6 +54,7 @@ import org.structr.web.entity.dom.Page;
 public class RenderContext {
 	
 	private static final Logger logger                   = Logger.getLogger(RenderContext.class.getName());
+	private static final int FLUSH_THRESHOLD             = 8192;
 	
 	private Map<String, GraphObject> dataObjects = new LinkedHashMap<String, GraphObject>();
 	private final StringBuilder buffer           = new StringBuilder(8192);
@@ -68,6 +76,9 @@ public class RenderContext {
 	private HttpServletResponse response         = null;
 	private ResourceProvider resourceProvider    = null;
 	private Result result                        = null;
+	private Writer output                        = null;
+	private LinkedList<FragmentRecorder> recorders = new LinkedList<FragmentRecorder>();
+	private boolean outputFailed                 = false;
 	
 	public enum EditMode {
 	
@@ -123,6 +134,7 @@ public class RenderContext {
 	
 	public void setDetailsDataObject(GraphObject detailsDataObject) {
 		this.detailsDataObject = detailsDataObject;
+		registerDependency(detailsDataObject);
 	}
 	
 	public GraphObject getDetailsDataObject() {
@@ -131,6 +143,7 @@ public class RenderContext {
 	
 	public void setDataObject(GraphObject currentDataObject) {
 		this.currentDataObject = currentDataObject;
+		registerDependency(currentDataObject);
 	}
 	
 	public GraphObject getDataObject() {
@@ -139,6 +152,7 @@ public class RenderContext {
 	
 	public void setSourceDataObject(GraphObject sourceDataObject) {
 		this.sourceDataObject = sourceDataObject;
+		registerDependency(sourceDataObject);
 	}
 	
 	public GraphObject getSourceDataObject() {
@@ -147,10 +161,14 @@ public class RenderContext {
 
 	public void setListSource(Iterable<GraphObject> listSource) {
 		this.listSource = listSource;
+		
+		// query results can change without touching any recorded node
+		preventFragmentCaching();
 	}
 	
 	public void setResult(Result result) {
 		this.result = result;
+		preventFragmentCaching();
 	}
 	
 	public Iterable<GraphObject> getListSource() {
@@ -229,6 +247,145 @@ public class RenderContext {
 	public StringBuilder getBuffer() {
 		return buffer;
 	}
+
+	/**
+	 * Enables streaming mode: rendered content is written through to the
+	 * given writer in chunks instead of being collected in the buffer.
+	 *
+	 * @param output the writer to stream to
+	 */
+	public void setOutput(final Writer output) {
+		this.output = output;
+	}
+
+	public boolean isStreaming() {
+		return output != null;
+	}
+
+	/**
+	 * Writes the buffered content to the output writer and sends it to the
+	 * client if streaming is enabled and the buffer has reached the flush
+	 * threshold. Called by
+	 * DOM nodes after they have rendered themselves.
+	 */
+	public void flushIfNecessary() {
+
+		// output of fragments that are being recorded must stay in the buffer
+		if (output != null && recorders.isEmpty() && buffer.length() >= FLUSH_THRESHOLD) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes all remaining buffered content to the output writer and
+	 * flushes the writer. Does nothing in buffered mode.
+	 */
+	public void finish() {
+
+		if (output != null) {
+			flush();
+		}
+	}
+
+	/**
+	 * Starts recording the nodes a fragment depends on. Calls can be
+	 * nested, each node is recorded in all active fragments.
+	 */
+	public void startFragment() {
+		recorders.add(new FragmentRecorder());
+	}
+
+	/**
+	 * Stops recording the innermost fragment.
+	 * 
+	 * @return the ids of the nodes the fragment depends on, or null if the
+	 * fragment must not be cached
+	 */
+	public Set<Long> endFragment() {
+
+		FragmentRecorder recorder = recorders.removeLast();
+
+		return recorder.cacheable ? recorder.nodeIds : null;
+	}
+
+	public void registerDependency(final GraphObject obj) {
+
+		if (obj != null) {
+
+			for (FragmentRecorder recorder : recorders) {
+				recorder.nodeIds.add(obj.getId());
+			}
+		}
+	}
+
+	public void registerDependencies(final Set<Long> nodeIds) {
+
+		for (FragmentRecorder recorder : recorders) {
+			recorder.nodeIds.addAll(nodeIds);
+		}
+	}
+
+	/**
+	 * Marks all active fragments as not cacheable, f.e. because their
+	 * output depends on query results.
+	 */
+	public void preventFragmentCaching() {
+
+		for (FragmentRecorder recorder : recorders) {
+			recorder.cacheable = false;
+		}
+	}
+
+	/**
+	 * Returns the fragment cache key for the given node, consisting of all
+	 * inputs of this context that can influence the output of the node.
+	 */
+	public String getFragmentKey(final String uuid, final int depth, final Principal user) {
+
+		StringBuilder key = new StringBuilder(uuid);
+
+		key.append(";").append(depth);
+		key.append(";").append(editMode);
+		key.append(";").append(locale);
+		key.append(";").append(user != null ? user.getId() : "public");
+		key.append(";").append(inBody).append(";").append(appLibRendered);
+		key.append(";").append(detailsDataObject != null ? detailsDataObject.getId() : "");
+		key.append(";").append(currentDataObject != null ? currentDataObject.getId() : "");
+
+		for (Entry<String, GraphObject> entry : dataObjects.entrySet()) {
+
+			GraphObject obj = entry.getValue();
+			key.append(";").append(entry.getKey()).append("=").append(obj != null ? obj.getId() : "");
+		}
+
+		if (request != null) {
+
+			key.append(";").append(request.getRequestURI());
+			key.append("?").append(StringUtils.defaultString(request.getQueryString()));
+		}
+
+		return key.toString();
+	}
+
+	private void flush() {
+
+		try {
+
+			if (!outputFailed) {
+
+				output.append(buffer);
+				output.flush();
+			}
+
+		} catch (IOException ioex) {
+
+			// client has most likely gone away, discard the rest of the output
+			logger.log(Level.FINE, "Unable to write rendered content: {0}", ioex.getMessage());
+			outputFailed = true;
+		}
+
+		buffer.setLength(0);
+	}
 	
 	public void setInBody(final boolean inBody) {
 		this.inBody = inBody;
@@ -291,4 +448,11 @@ public class RenderContext {
 	public Result getResult() {
 		return result;
 	}
+
+	// ----- nested classes -----
+	private static class FragmentRecorder {
+
+		private Set<Long> nodeIds = new LinkedHashSet<Long>();
+		private boolean cacheable = true;
+	}
 }
@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.core.Services;
+import org.structr.web.entity.Image;
+
+/**
+ * Creates thumbnails in a bounded pool of background threads.
+ *
+ * Requests for the same image, size and crop mode are coalesced, i.e. all
+ * callers wait for the same job. Callers wait at most for the configured
+ * timeout, after that they get null and the thumbnail is created in the
+ * background, so a slow image doesn't block page rendering.
+ *
+ * @author Christian Morgner
+ */
+public class ThumbnailGenerator {
+
+	private static final Logger logger                  = Logger.getLogger(ThumbnailGenerator.class.getName());
+	private static final ThumbnailGenerator instance    = new ThumbnailGenerator();
+
+	public static final String THUMBNAIL_THREADS        = "thumbnails.threads";
+	public static final String THUMBNAIL_QUEUE_SIZE     = "thumbnails.queue.size";
+	public static final String THUMBNAIL_TIMEOUT        = "thumbnails.timeout";
+
+	private final ConcurrentMap<String, Future<Image>> pending = new ConcurrentHashMap<String, Future<Image>>();
+	private final AtomicLong submitted                         = new AtomicLong(0);
+	private final AtomicLong coalesced                         = new AtomicLong(0);
+	private final AtomicLong rejected                          = new AtomicLong(0);
+	private final AtomicLong timeouts                          = new AtomicLong(0);
+	private ThreadPoolExecutor executor                        = null;
+	private long timeout                                       = 2000;
+
+	private ThumbnailGenerator() {
+
+		int threads   = 2;
+		int queueSize = 1000;
+
+		try {
+			threads   = Integer.parseInt(Services.getConfigurationValue(THUMBNAIL_THREADS, Integer.toString(threads)));
+			queueSize = Integer.parseInt(Services.getConfigurationValue(THUMBNAIL_QUEUE_SIZE, Integer.toString(queueSize)));
+			timeout   = Long.parseLong(Services.getConfigurationValue(THUMBNAIL_TIMEOUT, Long.toString(timeout)));
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid thumbnail configuration, using defaults.");
+		}
+
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+
+			private final AtomicLong threadCount = new AtomicLong(0);
+
+			@Override
+			public Thread newThread(Runnable r) {
+
+				Thread thread = new Thread(r, "ThumbnailGenerator-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+
+				// don't compete with request threads
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+
+				return thread;
+			}
+		});
+
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static ThumbnailGenerator getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the thumbnail of the given image, waiting at most for the
+	 * configured timeout.
+	 *
+	 * @return the thumbnail, or null if it is not available yet
+	 */
+	public Image getThumbnail(final Image image, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+
+		Future<Image> future = submit(image, maxWidth, maxHeight, cropToFit);
+		if (future != null) {
+
+			try {
+
+				return future.get(timeout, TimeUnit.MILLISECONDS);
+
+			} catch (TimeoutException tex) {
+
+				timeouts.incrementAndGet();
+
+				logger.log(Level.FINE, "Thumbnail for {0} not available yet", image.getUuid());
+
+			} catch (InterruptedException iex) {
+
+				Thread.currentThread().interrupt();
+
+			} catch (ExecutionException eex) {
+
+				logger.log(Level.WARNING, "Unable to create thumbnail", eex.getCause());
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Schedules the creation of a thumbnail, unless the same thumbnail is
+	 * already being created.
+	 *
+	 * @return the pending job, or null if the queue is full
+	 */
+	public Future<Image> submit(final Image image, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+
+		final String key             = image.getUuid() + "_" + maxWidth + "x" + maxHeight + (cropToFit ? "_crop" : "");
+		final FutureTask<Image> task = new FutureTask<Image>(new Callable<Image>() {
+
+			@Override
+			public Image call() throws Exception {
+
+				try {
+
+					// a matching thumbnail might have been created in the meantime, createScaledImage checks that
+					return image.createScaledImage(maxWidth, maxHeight, cropToFit);
+
+				} finally {
+
+					pending.remove(key);
+				}
+			}
+		});
+
+		Future<Image> existing = pending.putIfAbsent(key, task);
+		if (existing != null) {
+
+			coalesced.incrementAndGet();
+
+			return existing;
+		}
+
+		try {
+
+			executor.execute(task);
+			submitted.incrementAndGet();
+
+		} catch (RejectedExecutionException rex) {
+
+			pending.remove(key);
+			rejected.incrementAndGet();
+
+			logger.log(Level.WARNING, "Thumbnail queue is full, not creating thumbnail for {0}", image.getUuid());
+
+			return null;
+		}
+
+		return task;
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+
+		stats.put("pending", pending.size());
+		stats.put("queued", executor.getQueue().size());
+		stats.put("active", executor.getActiveCount());
+		stats.put("submitted", submitted.get());
+		stats.put("coalesced", coalesced.get());
+		stats.put("rejected", rejected.get());
+		stats.put("timeouts", timeouts.get());
+
+		return stats;
+	}
+}
@@ -72,8 +72,9 @@ public class ThumbnailConverter extends PropertyConverter {
 		
 		final Image thumbnail = ((Image) currentObject).getScaledImage(parameters.getMaxWidth(), parameters.getMaxHeight(), parameters.getCropToFit());
 
+		// thumbnail is still being created in the background, or could not be created
 		if (thumbnail == null) {
-			logger.log(Level.WARNING, "Could not create thumbnail for {0}", source);
+			logger.log(Level.FINE, "Thumbnail for {0} not available", currentObject);
 			return null;
 		}
 //		try {
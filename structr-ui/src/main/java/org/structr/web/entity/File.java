@@ -96,7 +96,7 @@ public class File extends AbstractFile implements Linkable {
 
 		try {
 
-			java.io.File fileOnDisk = new java.io.File(Services.getFilesPath() + "/" + getRelativeFilePath());
+			java.io.File fileOnDisk = getFileOnDisk();
 
 			if (fileOnDisk.exists()) {
 				return;
@@ -197,6 +197,15 @@ public class File extends AbstractFile implements Linkable {
 
 	}
 
+	/**
+	 * Returns the file on disk that holds the content of this file.
+	 */
+	public java.io.File getFileOnDisk() {
+
+		return new java.io.File(Services.getFilesPath() + "/" + getRelativeFilePath());
+
+	}
+
 	public URL getFileLocation() {
 
 		String urlString = "file://" + Services.getFilesPath() + "/" + getRelativeFilePath();
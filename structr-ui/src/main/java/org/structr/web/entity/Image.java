@@ -25,6 +25,7 @@ import org.neo4j.graphdb.Direction;
 
 import org.structr.web.common.ImageHelper;
 import org.structr.web.common.ImageHelper.Thumbnail;
+import org.structr.web.common.ThumbnailGenerator;
 import org.structr.common.PropertyView;
 import org.structr.web.common.RelType;
 import org.structr.common.error.FrameworkException;
@@ -182,6 +183,11 @@ public class Image extends File {
 	 *
 	 * Default behaviour is to make the scaled image complete fit inside a rectangle of maxWidth x maxHeight.
 	 *
+	 * Outside of a transaction, new thumbnails are created by the {@link ThumbnailGenerator},
+	 * so concurrent requests for the same thumbnail share a single job. If the job doesn't
+	 * finish within the configured timeout, null is returned and the thumbnail is created
+	 * in the background.
+	 *
 	 * @maxWidth
 	 * @maxHeight
 	 * @cropToFit if true, scale down until the shorter edge fits inside the rectangle, and then crop
@@ -190,56 +196,60 @@ public class Image extends File {
 	 */
 	public Image getScaledImage(final int maxWidth, final int maxHeight, final boolean cropToFit) {
 
-		Iterable<AbstractRelationship> thumbnailRelationships = getThumbnailRelationships();
-		final List<Image> oldThumbnails                   = new LinkedList();
-		Image thumbnail                                   = null;
-		final Image originalImage                         = this;
-		Integer origWidth                                 = originalImage.getWidth();
-		Integer origHeight                                = originalImage.getHeight();
-		Long currentChecksum                              = originalImage.getProperty(Image.checksum);
-		final Long newChecksum;
+		Long currentChecksum = getProperty(Image.checksum);
 
-		if (currentChecksum == null || currentChecksum == 0) {
+		// without a checksum, existing thumbnails can't be validated
+		if (currentChecksum != null && currentChecksum != 0) {
 
-			newChecksum = FileHelper.getChecksum(originalImage);
-		} else {
+			Image thumbnail = findThumbnail(maxWidth, maxHeight, currentChecksum, null);
+			if (thumbnail != null) {
 
-			newChecksum = currentChecksum;
+				return thumbnail;
+			}
 		}
 
-		if ((origWidth != null) && (origHeight != null) && thumbnailRelationships != null) {
-
-			for (final AbstractRelationship r : thumbnailRelationships) {
-
-				Integer w = (Integer) r.getProperty(Image.width);
-				Integer h = (Integer) r.getProperty(Image.height);
-
-				if ((w != null) && (h != null)) {
-
-					if (((w == maxWidth) && (h <= maxHeight)) || ((w <= maxWidth) && (h == maxHeight))
-					|| ((origWidth <= w) && (origHeight <= h)))    // orginal image is equal or smaller than requested size
-					{
+		// a background job can't see (or lock) nodes of the current transaction
+		if (TransactionCommand.inTransaction()) {
 
-						thumbnail = (Image) r.getEndNode();
+			return createScaledImage(maxWidth, maxHeight, cropToFit);
+		}
 
-						// Use thumbnail only if checksum of original image matches with stored checksum
-						Long storedChecksum = r.getProperty(Image.checksum);
+		return ThumbnailGenerator.getInstance().getThumbnail(this, maxWidth, maxHeight, cropToFit);
 
-						if (storedChecksum != null && storedChecksum.equals(newChecksum)) {
+	}
 
-							return thumbnail;
+	/**
+	 * Create a (down-)scaled image of this image, unless a matching one already exists.
+	 *
+	 * This method runs synchronously, use {@link #getScaledImage} to make use of the
+	 * background thumbnail generation.
+	 *
+	 * @maxWidth
+	 * @maxHeight
+	 * @cropToFit
+	 *
+	 * @return
+	 */
+	public Image createScaledImage(final int maxWidth, final int maxHeight, final boolean cropToFit) {
 
-						} else {
+		final List<Image> oldThumbnails                   = new LinkedList();
+		Image thumbnail                                   = null;
+		final Image originalImage                         = this;
+		Long currentChecksum                              = originalImage.getProperty(Image.checksum);
+		final Long newChecksum;
 
-							oldThumbnails.add(thumbnail);
-						}
-					}
+		if (currentChecksum == null || currentChecksum == 0) {
 
-				}
+			newChecksum = FileHelper.getChecksum(originalImage);
+		} else {
 
-			}
+			newChecksum = currentChecksum;
+		}
 
+		thumbnail = findThumbnail(maxWidth, maxHeight, newChecksum, oldThumbnails);
+		if (thumbnail != null) {
 
+			return thumbnail;
 		}
 
 		// No thumbnail exists, or thumbnail was too old, so let's create a new one
@@ -344,6 +354,61 @@ public class Image extends File {
 
 	}
 
+	/**
+	 * Find an existing thumbnail of the given size which was created from the
+	 * current content of this image.
+	 *
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param checksum the checksum of the current content
+	 * @param oldThumbnails if not null, outdated thumbnails of the requested size are added to this list
+	 *
+	 * @return the thumbnail or null
+	 */
+	private Image findThumbnail(final int maxWidth, final int maxHeight, final Long checksum, final List<Image> oldThumbnails) {
+
+		Iterable<AbstractRelationship> thumbnailRelationships = getThumbnailRelationships();
+		Integer origWidth                                     = getWidth();
+		Integer origHeight                                    = getHeight();
+
+		if ((origWidth != null) && (origHeight != null) && thumbnailRelationships != null) {
+
+			for (final AbstractRelationship r : thumbnailRelationships) {
+
+				Integer w = (Integer) r.getProperty(Image.width);
+				Integer h = (Integer) r.getProperty(Image.height);
+
+				if ((w != null) && (h != null)) {
+
+					if (((w == maxWidth) && (h <= maxHeight)) || ((w <= maxWidth) && (h == maxHeight))
+					|| ((origWidth <= w) && (origHeight <= h)))    // orginal image is equal or smaller than requested size
+					{
+
+						Image thumbnail = (Image) r.getEndNode();
+
+						// Use thumbnail only if checksum of original image matches with stored checksum
+						Long storedChecksum = r.getProperty(Image.checksum);
+
+						if (storedChecksum != null && storedChecksum.equals(checksum)) {
+
+							return thumbnail;
+
+						} else if (oldThumbnails != null) {
+
+							oldThumbnails.add(thumbnail);
+						}
+					}
+
+				}
+
+			}
+
+		}
+
+		return null;
+
+	}
+
 	public boolean isNotThumbnail() {
 
 		return !isThumbnail();
@@ -60,6 +60,9 @@ public class SearchResultView extends View {
 	@Override
 	public void render(SecurityContext securityContext, RenderContext renderContext, int depth) throws FrameworkException {
 
+		// search results can't be tracked by the fragment cache
+		renderContext.preventFragmentCaching();
+
 		HttpServletRequest request   = renderContext.getRequest();
 		Page page                    = renderContext.getPage();
 		double startSearchResultView = System.nanoTime();
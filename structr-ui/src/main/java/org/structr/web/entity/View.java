@@ -139,6 +139,9 @@ public class View extends DOMElement {
 	@Override
 	public void render(SecurityContext securityContext, RenderContext renderContext, int depth) throws FrameworkException {
 
+		// query results can't be tracked by the fragment cache
+		renderContext.preventFragmentCaching();
+
 		double startView = System.nanoTime();
 		
 		HttpServletRequest request = renderContext.getRequest();
@@ -176,6 +176,8 @@ public class Content extends DOMNode implements Text {
 	@Override
 	public void render(SecurityContext securityContext, RenderContext renderContext, int depth) throws FrameworkException {
 	
+		renderContext.registerDependency(this);
+
 		if (isDeleted() || isHidden() || !displayForLocale(renderContext) || !displayForConditions(securityContext, renderContext)) {
 			return;
 		}
@@ -282,6 +284,8 @@ public class Content extends DOMNode implements Text {
 			buffer.append("<!---->");
 		}
 
+		renderContext.flushIfNecessary();
+
 	}
 
 //	@Override
@@ -31,6 +31,7 @@ import java.util.LinkedList;
 import org.apache.commons.lang.StringUtils;
 
 
+import org.structr.common.PermissionCache;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
@@ -38,6 +39,8 @@ import org.structr.core.EntityContext;
 import org.structr.core.property.Property;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.StringProperty;
+import org.structr.web.common.FragmentCache;
+import org.structr.web.common.FragmentCache.Fragment;
 import org.structr.web.common.HtmlProperty;
 import org.structr.web.common.RenderContext;
 
@@ -50,6 +53,7 @@ import org.w3c.dom.Element;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -125,6 +129,7 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 	public static final Property<String> xpathQuery               = new StringProperty("xpathQuery");
 	public static final Property<String> restQuery                = new StringProperty("restQuery");
 	public static final Property<Boolean> renderDetails           = new BooleanProperty("renderDetails");
+	public static final Property<Boolean> cacheFragment           = new BooleanProperty("cacheFragment");
 //	public static final Property<Boolean> hideOnEdit              = new BooleanProperty("hideOnEdit");
 //	public static final Property<Boolean> hideOnNonEdit           = new BooleanProperty("hideOnNonEdit");
 
@@ -220,7 +225,7 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 	
 	public static final org.structr.common.View uiView            = new org.structr.common.View(DOMElement.class, PropertyView.Ui, name, tag, pageId, path, parent, childrenIds, owner,
 										restQuery, cypherQuery, xpathQuery, partialUpdateKey, dataKey, syncedNodes,
-										renderDetails, hideOnIndex, hideOnDetail, showForLocales, hideForLocales, showConditions, hideConditions,
+										renderDetails, cacheFragment, hideOnIndex, hideOnDetail, showForLocales, hideForLocales, showConditions, hideConditions,
 										_accesskey, _class, _contenteditable, _contextmenu, _dir, _draggable, _dropzone, _hidden, _id, _lang, _spellcheck, _style,
 										_tabindex, _title, _onabort, _onblur, _oncanplay, _oncanplaythrough, _onchange, _onclick, _oncontextmenu, _ondblclick,
 										_ondrag, _ondragend, _ondragenter, _ondragleave, _ondragover, _ondragstart, _ondrop, _ondurationchange, _onemptied,
@@ -325,14 +330,85 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 	@Override
 	public void render(SecurityContext securityContext, RenderContext renderContext, int depth) throws FrameworkException {
 		
-		StringBuilder buffer	= renderContext.getBuffer();
-		double start = System.nanoTime();
+		renderContext.registerDependency(this);
 
 		if (isDeleted() || isHidden() || !displayForLocale(renderContext) || !displayForConditions(securityContext, renderContext)) {
 			return;
 		}
 
 		EditMode editMode	= renderContext.getEditMode(securityContext.getUser(false));
+
+		if (EditMode.NONE.equals(editMode) && getProperty(DOMElement.cacheFragment)) {
+
+			renderFragment(securityContext, renderContext, depth, editMode);
+
+		} else {
+
+			renderElement(securityContext, renderContext, depth, editMode);
+		}
+
+		// send completed output to the client in streaming mode
+		renderContext.flushIfNecessary();
+	}
+
+	/**
+	 * Renders this element from the fragment cache, or renders it and
+	 * stores the output in the fragment cache.
+	 */
+	private void renderFragment(SecurityContext securityContext, RenderContext renderContext, int depth, EditMode editMode) throws FrameworkException {
+
+		FragmentCache fragmentCache = FragmentCache.getInstance();
+		StringBuilder buffer        = renderContext.getBuffer();
+		String uuid                 = getUuid();
+		String key                  = renderContext.getFragmentKey(uuid, depth, securityContext.getUser(false));
+		Fragment fragment           = fragmentCache.get(uuid, key);
+
+		if (fragment != null) {
+
+			buffer.append(fragment.getContent());
+
+			renderContext.setInBody(fragment.inBody());
+			renderContext.setAppLibRendered(fragment.appLibRendered());
+			renderContext.registerDependencies(fragment.getNodeIds());
+
+			return;
+		}
+
+		long generation   = fragmentCache.getGeneration();
+		long epoch        = PermissionCache.getEpoch();
+		int offset        = buffer.length();
+		Set<Long> nodeIds = null;
+
+		renderContext.startFragment();
+
+		try {
+
+			renderElement(securityContext, renderContext, depth, editMode);
+
+		} finally {
+
+			nodeIds = renderContext.endFragment();
+		}
+
+		if (nodeIds != null) {
+
+			fragment = new Fragment(buffer.substring(offset), nodeIds, renderContext.inBody(), renderContext.appLibRendered(), epoch);
+			fragmentCache.put(key, fragment, generation);
+
+			// let enclosing fragments depend on the nodes of this one
+			renderContext.registerDependencies(nodeIds);
+
+		} else {
+
+			renderContext.preventFragmentCaching();
+		}
+	}
+
+	private void renderElement(SecurityContext securityContext, RenderContext renderContext, int depth, EditMode editMode) throws FrameworkException {
+
+		StringBuilder buffer	= renderContext.getBuffer();
+		double start = System.nanoTime();
+
 		boolean isVoid		= isVoidElement();
 		String _tag		= getProperty(DOMElement.tag);
 
@@ -365,6 +441,7 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 					for (AbstractRelationship syncRel : getRelationships(RelType.SYNC, Direction.INCOMING)) {
 
 						DOMElement syncedNode = (DOMElement)syncRel.getStartNode();
+						renderContext.registerDependency(syncedNode);
 						rels.addAll(syncedNode.getChildRelationships());
 					}
 				}
@@ -373,6 +450,9 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 
 					DOMNode subNode = (DOMNode) rel.getEndNode();
 
+					// visibility flags of hidden children affect the output, too
+					renderContext.registerDependency(subNode);
+
 					if (!securityContext.isVisible(subNode)) {
 						continue;
 					}
@@ -1192,7 +1272,8 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 			String cypherQuery = ((DOMElement) referenceNode).getPropertyWithVariableReplacement(securityContext, renderContext, DOMElement.cypherQuery);
 			if (cypherQuery != null && !cypherQuery.isEmpty()) {
 				
-				return Services.command(securityContext, CypherQueryCommand.class).execute(cypherQuery);
+				// results are re-used until the next commit
+				return Services.command(securityContext, CypherQueryCommand.class).execute(cypherQuery, null, false, false, true).getResults();
 			}
 			
 			return null;
@@ -39,7 +39,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
@@ -84,7 +83,6 @@ import org.structr.core.property.PropertyMap;
 import org.structr.core.property.StringProperty;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
-import org.structr.web.common.ThreadLocalMatcher;
 import org.structr.web.entity.PageData;
 import org.structr.web.entity.Renderable;
 import org.w3c.dom.DOMException;
@@ -108,8 +106,6 @@ import org.w3c.dom.UserDataHandler;
 public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable, DOMAdoptable, DOMImportable, PageData {
 
 	private static final Logger logger                                      = Logger.getLogger(DOMNode.class.getName());
-	private static final ThreadLocalMatcher threadLocalTemplateMatcher      = new ThreadLocalMatcher("\\$\\{[^}]*\\}");
-	private static final ThreadLocalMatcher threadLocalFunctionMatcher      = new ThreadLocalMatcher("([a-zA-Z0-9_]+)\\((.+)\\)");
 	
 	// ----- error messages for DOMExceptions -----
 	protected static final String NO_MODIFICATION_ALLOWED_MESSAGE           = "Permission denied.";
@@ -951,23 +947,17 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 	protected java.lang.Object getReferencedProperty(SecurityContext securityContext, RenderContext renderContext, String refKey)
 		throws FrameworkException {
 
-		final String DEFAULT_VALUE_SEP   = "!";
-		String pageId                    = renderContext.getPageId();
-		String[] parts                   = refKey.split("[\\.]+");
-		String referenceKey              = parts[parts.length - 1];
-		String defaultValue              = null;
-		
-		if (StringUtils.contains(referenceKey, DEFAULT_VALUE_SEP)) {
-			String[] ref = StringUtils.split(referenceKey, DEFAULT_VALUE_SEP);
-			referenceKey = ref[0];
-			if (ref.length > 1) {
-				defaultValue         = ref[1];
-			} else {
-				defaultValue         = "";
-			}
-		}
-		
-		
+		return getReferencedProperty(securityContext, renderContext, new TemplateExpression.Reference(refKey));
+	}
+
+	protected java.lang.Object getReferencedProperty(SecurityContext securityContext, RenderContext renderContext, TemplateExpression.Reference reference)
+		throws FrameworkException {
+
+		// the reference has already been split into its parts
+		String[] parts                   = reference.getParts();
+		String[] lowerCaseParts          = reference.getLowerCaseParts();
+		String referenceKey              = reference.getReferenceKey();
+		String defaultValue              = reference.getDefaultValue();
 		
 		Page _page                       = renderContext.getPage();
 		GraphObject _data                = null;
@@ -976,10 +966,13 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 		for (int i = 0; (i < parts.length); i++) {
 
 			String part          = parts[i];
-			String lowerCasePart = part.toLowerCase();
+			String lowerCasePart = lowerCaseParts[i];
 			
 			if (_data != null) {
 
+				// the output depends on every object of the chain
+				renderContext.registerDependency(_data);
+
 				Object value = _data.getProperty(EntityContext.getPropertyKeyForJSONName(_data.getClass(), part));
 
 				if (value instanceof GraphObject) {
@@ -1044,7 +1037,7 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 				if (request != null) {
 					
 					
-					if (StringUtils.contains(refKey, "!")) {
+					if (reference.hasDefaultValue()) {
 						
 						return StringUtils.defaultIfBlank(request.getParameter(referenceKey), defaultValue);
 						
@@ -1059,6 +1052,8 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 			// special keyword "now":
 			if ("now".equals(lowerCasePart)) {
 
+				renderContext.preventFragmentCaching();
+
 				// Return current date converted in format
 				// Note: We use "createdDate" here only as an arbitrary property key to get the database converter
 				return AbstractNode.createdDate.inputConverter(securityContext).revert(new Date());
@@ -1144,6 +1139,9 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 				// special keyword "search_result_size"
 				if ("search_result_size".equals(lowerCasePart)) {
 
+					// search results can change without touching any recorded node
+					renderContext.preventFragmentCaching();
+
 					Set<Page> pages = getResultPages(securityContext, (Page) _page);
 
 					if (!pages.isEmpty()) {
@@ -1226,6 +1224,8 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 		}
 
 		if (_data != null) {
+
+			renderContext.registerDependency(_data);
 			
 			PropertyKey referenceKeyProperty = EntityContext.getPropertyKeyForJSONName(_data.getClass(), referenceKey);
 			//return getEditModeValue(securityContext, renderContext, _data, referenceKeyProperty, defaultValue);
@@ -1288,35 +1288,10 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 
 			value = (String) rawValue;
 
-			if (!(EditMode.RAW.equals(renderContext.getEditMode(securityContext.getUser(false))))) {
-			
-				// re-use matcher from previous calls
-				Matcher matcher = threadLocalTemplateMatcher.get();
-
-				matcher.reset(value);
-
-				while (matcher.find()) {
-
-					String group  = matcher.group();
-					String source = group.substring(2, group.length() - 1);
-
-					// fetch referenced property
-					String partValue = extractFunctions(securityContext, renderContext, source);
-
-					if (partValue != null) {
+			// expressions are compiled once per distinct value and cached
+			if (value.contains("${") && !(EditMode.RAW.equals(renderContext.getEditMode(securityContext.getUser(false))))) {
 
-						value = value.replace(group, partValue);
-					} else {
-
-						// If the whole expression should be replaced, and partValue is null
-						// replace it by null to make it possible for HTML attributes to not be rendered
-						// and avoid something like ... selected="" ... which is interpreted as selected==true by
-						// all browsers
-						value = value.equals(group) ? null : value.replace(group, "");
-					}
-
-				}
-			
+				value = TemplateExpression.compileTemplate(value).evaluate(this, securityContext, renderContext);
 			}
 
 		} else if (rawValue instanceof Boolean) {
@@ -1336,62 +1311,7 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 	protected String extractFunctions(SecurityContext securityContext, RenderContext renderContext, String source)
 		throws FrameworkException {
 
-		String pageId     = renderContext.getPageId();
-		
-		// re-use matcher from previous calls
-		Matcher functionMatcher = threadLocalFunctionMatcher.get();
-
-		functionMatcher.reset(source);
-
-		if (functionMatcher.matches()) {
-
-			String functionGroup              = functionMatcher.group(1);
-			String parameter                  = functionMatcher.group(2);
-			String functionName               = functionGroup.substring(0, functionGroup.length());
-			Function<String, String> function = functions.get(functionName);
-
-			if (function != null) {
-
-				if (parameter.contains(",")) {
-
-					String[] parameters = split(parameter);
-					String[] results    = new String[parameters.length];
-
-					// collect results from comma-separated function parameter
-					for (int i = 0; i < parameters.length; i++) {
-
-						results[i] = extractFunctions(securityContext, renderContext, StringUtils.strip(parameters[i]));
-					}
-
-					return function.apply(results);
-
-				} else {
-
-					String result = extractFunctions(securityContext, renderContext, StringUtils.strip(parameter));
-
-					return function.apply(new String[] { result });
-
-				}
-			}
-
-		}
-
-		// if any of the following conditions match, the literal source value is returned
-		if (StringUtils.isNotBlank(source) && StringUtils.isNumeric(source)) {
-
-			// return numeric value
-			return source;
-		} else if (source.startsWith("\"") && source.endsWith("\"")) {
-
-			return source.substring(1, source.length() - 1);
-		} else if (source.startsWith("'") && source.endsWith("'")) {
-
-			return source.substring(1, source.length() - 1);
-		} else {
-
-			// return property key
-			return convertValueForHtml(getReferencedProperty(securityContext, renderContext, source));
-		}
+		return TemplateExpression.compile(source).evaluate(this, securityContext, renderContext);
 	}
 
 	/**
@@ -1563,91 +1483,7 @@ public abstract class DOMNode extends LinkedTreeNode implements Node, Renderable
 	}
 
 	protected String[] split(String source) {
-
-		ArrayList<String> tokens   = new ArrayList<String>(20);
-		boolean inDoubleQuotes     = false;
-		boolean inSingleQuotes     = false;
-		int len                    = source.length();
-		int level                  = 0;
-		StringBuilder currentToken = new StringBuilder(len);
-
-		for (int i = 0; i < len; i++) {
-
-			char c = source.charAt(i);
-
-			// do not strip away separators in nested functions!
-			if ((level != 0) || (c != ',')) {
-
-				currentToken.append(c);
-			}
-
-			switch (c) {
-
-				case '(' :
-					level++;
-
-					break;
-
-				case ')' :
-					level--;
-
-					break;
-
-				case '"' :
-					if (inDoubleQuotes) {
-
-						inDoubleQuotes = false;
-
-						level--;
-
-					} else {
-
-						inDoubleQuotes = true;
-
-						level++;
-
-					}
-
-					break;
-
-				case '\'' :
-					if (inSingleQuotes) {
-
-						inSingleQuotes = false;
-
-						level--;
-
-					} else {
-
-						inSingleQuotes = true;
-
-						level++;
-
-					}
-
-					break;
-
-				case ',' :
-					if (level == 0) {
-
-						tokens.add(currentToken.toString().trim());
-						currentToken.setLength(0);
-
-					}
-
-					break;
-
-			}
-
-		}
-
-		if (currentToken.length() > 0) {
-
-			tokens.add(currentToken.toString().trim());
-		}
-
-		return tokens.toArray(new String[0]);
-
+		return TemplateExpression.split(source);
 	}
 
 	protected void collectNodesByPredicate(Node startNode, DOMNodeList results, Predicate<Node> predicate, int depth, boolean stopOnFirstHit) {
@@ -0,0 +1,416 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.entity.dom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import org.apache.commons.lang.StringUtils;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.EntityCache;
+import org.structr.web.common.Function;
+import org.structr.web.common.RenderContext;
+import org.structr.web.common.ThreadLocalMatcher;
+
+/**
+ * A compiled template expression, i.e. the content of a ${...} block or a
+ * show/hide condition of a {@link DOMNode}.
+ *
+ * Expressions are parsed once into a tree of function calls, literals and
+ * property references and cached by their source text, so a modified
+ * property value simply results in a new cache entry. Evaluation of the
+ * tree does not involve any string parsing.
+ *
+ * @author Christian Morgner
+ */
+public abstract class TemplateExpression {
+
+	private static final ThreadLocalMatcher threadLocalTemplateMatcher = new ThreadLocalMatcher("\\$\\{[^}]*\\}");
+	private static final ThreadLocalMatcher threadLocalFunctionMatcher = new ThreadLocalMatcher("([a-zA-Z0-9_]+)\\((.+)\\)");
+
+	// functions whose result can change without any node being modified
+	private static final Set<String> uncacheableFunctions = new HashSet<String>(Arrays.asList("GET"));
+
+	// weight is the length of the source text
+	private static final EntityCache<String, Template> templates             = new EntityCache<String, Template>(1000000);
+	private static final EntityCache<String, TemplateExpression> expressions = new EntityCache<String, TemplateExpression>(1000000);
+
+	public abstract String evaluate(final DOMNode node, final SecurityContext securityContext, final RenderContext renderContext) throws FrameworkException;
+
+	/**
+	 * Returns the compiled form of the given expression source.
+	 */
+	public static TemplateExpression compile(final String source) {
+
+		TemplateExpression expression = expressions.get(source);
+		if (expression == null) {
+
+			expression = parse(source);
+			expressions.put(source, expression, source.length());
+		}
+
+		return expression;
+	}
+
+	/**
+	 * Returns the compiled form of the given text with embedded ${...}
+	 * expressions.
+	 */
+	public static Template compileTemplate(final String value) {
+
+		Template template = templates.get(value);
+		if (template == null) {
+
+			template = parseTemplate(value);
+			templates.put(value, template, value.length());
+		}
+
+		return template;
+	}
+
+	/**
+	 * Splits the given function parameter string at top-level commas,
+	 * ignoring commas in nested function calls and quoted strings.
+	 */
+	public static String[] split(final String source) {
+
+		ArrayList<String> tokens   = new ArrayList<String>(20);
+		boolean inDoubleQuotes     = false;
+		boolean inSingleQuotes     = false;
+		int len                    = source.length();
+		int level                  = 0;
+		StringBuilder currentToken = new StringBuilder(len);
+
+		for (int i = 0; i < len; i++) {
+
+			char c = source.charAt(i);
+
+			// do not strip away separators in nested functions!
+			if ((level != 0) || (c != ',')) {
+
+				currentToken.append(c);
+			}
+
+			switch (c) {
+
+				case '(' :
+					level++;
+
+					break;
+
+				case ')' :
+					level--;
+
+					break;
+
+				case '"' :
+					if (inDoubleQuotes) {
+
+						inDoubleQuotes = false;
+
+						level--;
+
+					} else {
+
+						inDoubleQuotes = true;
+
+						level++;
+
+					}
+
+					break;
+
+				case '\'' :
+					if (inSingleQuotes) {
+
+						inSingleQuotes = false;
+
+						level--;
+
+					} else {
+
+						inSingleQuotes = true;
+
+						level++;
+
+					}
+
+					break;
+
+				case ',' :
+					if (level == 0) {
+
+						tokens.add(currentToken.toString().trim());
+						currentToken.setLength(0);
+
+					}
+
+					break;
+
+			}
+
+		}
+
+		if (currentToken.length() > 0) {
+
+			tokens.add(currentToken.toString().trim());
+		}
+
+		return tokens.toArray(new String[0]);
+	}
+
+	// ----- private methods -----
+	private static TemplateExpression parse(final String source) {
+
+		// re-use matcher from previous calls
+		Matcher functionMatcher = threadLocalFunctionMatcher.get();
+
+		functionMatcher.reset(source);
+
+		if (functionMatcher.matches()) {
+
+			String functionName               = functionMatcher.group(1);
+			String parameter                  = functionMatcher.group(2);
+			Function<String, String> function = DOMNode.functions.get(functionName);
+
+			if (function != null) {
+
+				if (parameter.contains(",")) {
+
+					String[] parameters            = split(parameter);
+					TemplateExpression[] arguments = new TemplateExpression[parameters.length];
+
+					for (int i = 0; i < parameters.length; i++) {
+
+						arguments[i] = compile(StringUtils.strip(parameters[i]));
+					}
+
+					return new FunctionCall(function, arguments, !uncacheableFunctions.contains(functionName));
+
+				} else {
+
+					return new FunctionCall(function, new TemplateExpression[] { compile(StringUtils.strip(parameter)) }, !uncacheableFunctions.contains(functionName));
+				}
+			}
+		}
+
+		// if any of the following conditions match, the literal source value is returned
+		if (StringUtils.isNotBlank(source) && StringUtils.isNumeric(source)) {
+
+			// numeric value
+			return new Literal(source);
+
+		} else if (source.startsWith("\"") && source.endsWith("\"")) {
+
+			return new Literal(source.substring(1, source.length() - 1));
+
+		} else if (source.startsWith("'") && source.endsWith("'")) {
+
+			return new Literal(source.substring(1, source.length() - 1));
+		}
+
+		return new Reference(source);
+	}
+
+	private static Template parseTemplate(final String value) {
+
+		List<String> literals             = new ArrayList<String>();
+		List<TemplateExpression> compiled = new ArrayList<TemplateExpression>();
+		int position                      = 0;
+
+		// re-use matcher from previous calls
+		Matcher matcher = threadLocalTemplateMatcher.get();
+
+		matcher.reset(value);
+
+		while (matcher.find()) {
+
+			String group = matcher.group();
+
+			literals.add(value.substring(position, matcher.start()));
+			compiled.add(compile(group.substring(2, group.length() - 1)));
+
+			position = matcher.end();
+		}
+
+		literals.add(value.substring(position));
+
+		return new Template(value, literals.toArray(new String[0]), compiled.toArray(new TemplateExpression[0]));
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Text with embedded expressions, stored as alternating literal text
+	 * and expressions. There is always one more literal than expressions.
+	 */
+	public static class Template {
+
+		private TemplateExpression[] expressions = null;
+		private String[] literals                = null;
+		private String source                    = null;
+
+		public Template(final String source, final String[] literals, final TemplateExpression[] expressions) {
+
+			this.source      = source;
+			this.literals    = literals;
+			this.expressions = expressions;
+		}
+
+		public String evaluate(final DOMNode node, final SecurityContext securityContext, final RenderContext renderContext) throws FrameworkException {
+
+			if (expressions.length == 0) {
+				return source;
+			}
+
+			// If the whole value is a single expression that evaluates to null, return
+			// null to make it possible for HTML attributes to not be rendered and avoid
+			// something like ... selected="" ... which is interpreted as selected==true
+			// by all browsers
+			if (expressions.length == 1 && literals[0].isEmpty() && literals[1].isEmpty()) {
+				return expressions[0].evaluate(node, securityContext, renderContext);
+			}
+
+			StringBuilder buf = new StringBuilder(source.length());
+
+			for (int i = 0; i < expressions.length; i++) {
+
+				buf.append(literals[i]);
+
+				String partValue = expressions[i].evaluate(node, securityContext, renderContext);
+				if (partValue != null) {
+
+					buf.append(partValue);
+				}
+			}
+
+			buf.append(literals[expressions.length]);
+
+			return buf.toString();
+		}
+	}
+
+	private static class FunctionCall extends TemplateExpression {
+
+		private Function<String, String> function = null;
+		private TemplateExpression[] arguments    = null;
+		private boolean cacheable                 = true;
+
+		public FunctionCall(final Function<String, String> function, final TemplateExpression[] arguments, final boolean cacheable) {
+
+			this.function  = function;
+			this.arguments = arguments;
+			this.cacheable = cacheable;
+		}
+
+		@Override
+		public String evaluate(final DOMNode node, final SecurityContext securityContext, final RenderContext renderContext) throws FrameworkException {
+
+			String[] results = new String[arguments.length];
+
+			if (!cacheable) {
+				renderContext.preventFragmentCaching();
+			}
+
+			for (int i = 0; i < arguments.length; i++) {
+
+				results[i] = arguments[i].evaluate(node, securityContext, renderContext);
+			}
+
+			return function.apply(results);
+		}
+	}
+
+	private static class Literal extends TemplateExpression {
+
+		private String value = null;
+
+		public Literal(final String value) {
+			this.value = value;
+		}
+
+		@Override
+		public String evaluate(final DOMNode node, final SecurityContext securityContext, final RenderContext renderContext) throws FrameworkException {
+			return value;
+		}
+	}
+
+	/**
+	 * A reference to a (possibly nested) property, f.e. "this.owner.name",
+	 * with an optional default value after "!".
+	 */
+	public static class Reference extends TemplateExpression {
+
+		private static final String DEFAULT_VALUE_SEP = "!";
+
+		private String[] lowerCaseParts = null;
+		private String referenceKey     = null;
+		private String defaultValue     = null;
+		private boolean hasDefaultValue = false;
+		private String[] parts          = null;
+
+		public Reference(final String refKey) {
+
+			this.parts           = refKey.split("[\\.]+");
+			this.lowerCaseParts  = new String[parts.length];
+			this.referenceKey    = parts[parts.length - 1];
+			this.hasDefaultValue = StringUtils.contains(refKey, DEFAULT_VALUE_SEP);
+
+			for (int i = 0; i < parts.length; i++) {
+				lowerCaseParts[i] = parts[i].toLowerCase();
+			}
+
+			if (StringUtils.contains(referenceKey, DEFAULT_VALUE_SEP)) {
+
+				String[] ref = StringUtils.split(referenceKey, DEFAULT_VALUE_SEP);
+
+				referenceKey = ref[0];
+				defaultValue = ref.length > 1 ? ref[1] : "";
+			}
+		}
+
+		@Override
+		public String evaluate(final DOMNode node, final SecurityContext securityContext, final RenderContext renderContext) throws FrameworkException {
+			return node.convertValueForHtml(node.getReferencedProperty(securityContext, renderContext, this));
+		}
+
+		public String[] getParts() {
+			return parts;
+		}
+
+		public String[] getLowerCaseParts() {
+			return lowerCaseParts;
+		}
+
+		public String getReferenceKey() {
+			return referenceKey;
+		}
+
+		public String getDefaultValue() {
+			return defaultValue;
+		}
+
+		public boolean hasDefaultValue() {
+			return hasDefaultValue;
+		}
+	}
+}
@@ -20,13 +20,18 @@
 
 package org.structr.web.servlet;
 
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.GZIPOutputStream;
 
 
-import org.apache.commons.compress.utils.IOUtils;
 import org.apache.commons.lang.StringUtils;
 
 
@@ -64,13 +69,20 @@ import org.apache.lucene.search.BooleanClause.Occur;
 import org.structr.core.auth.Authenticator;
 import org.structr.core.auth.AuthenticatorCommand;
 import org.structr.core.entity.Principal;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.structr.core.graph.GetNodeByIdCommand;
+import org.structr.core.graph.NodeService;
 import org.structr.core.graph.StructrTransaction;
 import org.structr.core.graph.TransactionCommand;
 import org.structr.rest.ResourceProvider;
+import org.structr.rest.resource.MaintenanceParameterResource;
+import org.structr.rest.resource.MaintenanceResource;
+import org.structr.web.common.BulkCreateThumbnailsCommand;
+import org.structr.web.common.FragmentCache;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
 import org.structr.web.common.ThreadLocalMatcher;
+import org.structr.web.common.ThumbnailGenerator;
 import org.structr.web.entity.User;
 import org.structr.web.entity.dom.DOMNode;
 
@@ -85,7 +97,6 @@ import org.structr.web.entity.dom.DOMNode;
 public class HtmlServlet extends HttpServlet {
 
 	private static final Logger logger                                          = Logger.getLogger(HtmlServlet.class.getName());
-	private static Date lastModified;
 	public static final String REST_RESPONSE			= "restResponse";
 	public static final String REDIRECT				= "redirect";
 	public static final String POSSIBLE_ENTRY_POINTS		= "possibleEntryPoints";
@@ -98,9 +109,19 @@ public class HtmlServlet extends HttpServlet {
 	public static final String ERROR_PAGE_KEY		= "onerror";
 	public static final String LOCALE_KEY			= "locale";
 	
+	public static final String STREAMING_RENDER		= "HtmlServlet.streaming";
+	public static final String STREAMING_COMPRESSION	= "HtmlServlet.gzip";
+	
 	private ResourceProvider resourceProvider                   = null;
 
 	private static final ThreadLocalMatcher threadLocalUUIDMatcher              = new ThreadLocalMatcher("[a-zA-Z0-9]{32}");
+	private static final long[] UNSATISFIABLE_RANGE                             = new long[0];
+
+	static {
+
+		// register only once, servlets can be initialized more than once
+		MaintenanceParameterResource.registerMaintenanceCommand("createThumbnails", BulkCreateThumbnailsCommand.class);
+	}
 	
 	public static SearchNodeCommand searchNodesAsSuperuser;
 	//~--- fields ---------------------------------------------------------
@@ -124,10 +145,39 @@ public class HtmlServlet extends HttpServlet {
 	public void init() {
 		
 		 searchNodesAsSuperuser = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class);
+
+		// invalidate cached fragments on commit
+		GraphDatabaseService graphDb = Services.getService(NodeService.class).getGraphDb();
+		graphDb.registerTransactionEventHandler(FragmentCache.getInstance());
+
+		MaintenanceResource.registerStatisticsProvider("fragmentCache", new StatisticsProvider() {
+
+			@Override
+			public Map<String, Object> getStatistics() {
+				return FragmentCache.getInstance().getStatistics();
+			}
+		});
+
+		MaintenanceResource.registerStatisticsProvider("thumbnails", new StatisticsProvider() {
+
+			@Override
+			public Map<String, Object> getStatistics() {
+				return ThumbnailGenerator.getInstance().getStatistics();
+			}
+		});
 	}
 
 	@Override
-	public void destroy() {}
+	public void destroy() {
+
+		GraphDatabaseService graphDb = Services.getService(NodeService.class).getGraphDb();
+		if (graphDb != null) {
+
+			graphDb.unregisterTransactionEventHandler(FragmentCache.getInstance());
+		}
+
+		FragmentCache.getInstance().clear();
+	}
 
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) {
@@ -299,24 +349,27 @@ public class HtmlServlet extends HttpServlet {
 
 				setNoCacheHeaders(response);
 				
-			} else {
-				
-				lastModified = rootElement.getLastModifiedDate();
-
 			}
 
 			if (securityContext.isVisible(rootElement)) {
 				
-				PrintWriter out            = response.getWriter();
-				
 				double setup     = System.nanoTime();
 				logger.log(Level.FINE, "Setup time: {0} seconds", decimalFormat.format((setup - start) / 1000000000.0));
 
 				if (!EditMode.DATA.equals(edit) && !dontCache && notModifiedSince(request, response, rootElement)) {
 
+					PrintWriter out = response.getWriter();
+					
 					out.flush();
 					out.close();
 
+				} else if (isStreamingEnabled()) {
+					
+					renderStreaming(request, response, securityContext, renderContext, rootElement);
+					
+					double end     = System.nanoTime();
+					logger.log(Level.FINE, "Content for path {0} streamed in {1} seconds", new Object[] { path, decimalFormat.format((end - setup) / 1000000000.0)});
+
 				} else {
 					
 					rootElement.render(securityContext, renderContext, 0);
@@ -358,6 +411,80 @@ public class HtmlServlet extends HttpServlet {
 	}
 	
 
+	/**
+	 * Renders the given root element directly to the response. Content is
+	 * sent in chunks while rendering is still in progress, optionally gzip
+	 * compressed.
+	 * 
+	 * @param request
+	 * @param response
+	 * @param securityContext
+	 * @param renderContext
+	 * @param rootElement
+	 * @throws IOException
+	 * @throws FrameworkException 
+	 */
+	private void renderStreaming(final HttpServletRequest request, final HttpServletResponse response, final SecurityContext securityContext, final RenderContext renderContext, final DOMNode rootElement) throws IOException, FrameworkException {
+
+		String contentType = rootElement.getProperty(Page.contentType);
+		if (contentType == null || contentType.equals("text/html")) {
+			
+			contentType = "text/html;charset=UTF-8";
+		}
+		
+		// headers must be set before the first chunk is sent
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType(contentType);
+		response.setCharacterEncoding("UTF-8");
+		
+		Writer writer = null;
+		
+		if (isCompressionEnabled() && acceptsGzip(request)) {
+
+			response.setHeader("Content-Encoding", "gzip");
+			response.addHeader("Vary", "Accept-Encoding");
+			
+			// sync flush so that every chunk reaches the client immediately
+			writer = new OutputStreamWriter(new GZIPOutputStream(response.getOutputStream(), 8192, true), "UTF-8");
+			
+		} else {
+			
+			writer = response.getWriter();
+		}
+		
+		try {
+
+			renderContext.setOutput(writer);
+			rootElement.render(securityContext, renderContext, 0);
+			renderContext.finish();
+			
+		} finally {
+			
+			try {
+				writer.close();
+				
+			} catch (IOException ioex) {
+				
+				logger.log(Level.FINE, "Unable to close output writer: {0}", ioex.getMessage());
+			}
+		}
+	}
+
+	private static boolean isStreamingEnabled() {
+		return Boolean.parseBoolean(Services.getConfigurationValue(STREAMING_RENDER, "true"));
+	}
+	
+	private static boolean isCompressionEnabled() {
+		return Boolean.parseBoolean(Services.getConfigurationValue(STREAMING_COMPRESSION, "false"));
+	}
+	
+	private static boolean acceptsGzip(final HttpServletRequest request) {
+		
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		
+		return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+	}
+	
 	/**
 	 * Find first node whose name matches the given path
 	 * 
@@ -702,6 +829,7 @@ public class HtmlServlet extends HttpServlet {
 		DateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
 		Calendar cal              = new GregorianCalendar();
 		Integer seconds           = node.getProperty(Page.cacheForSeconds);
+		Date lastModified         = node.getLastModifiedDate();
 
 		if (seconds != null) {
 
@@ -765,53 +893,212 @@ public class HtmlServlet extends HttpServlet {
 			
 		}
 
-		OutputStream out = response.getOutputStream();
+		java.io.File fileOnDisk = file.getFileOnDisk();
+		if (!fileOnDisk.isFile()) {
+
+			logger.log(Level.WARNING, "Content of file {0} not found at {1}", new Object[] { file.getUuid(), fileOnDisk.getAbsolutePath() });
+
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
 
 		if (!EditMode.DATA.equals(edit) && notModifiedSince(request, response, file)) {
 
+			OutputStream out = response.getOutputStream();
+
 			out.flush();
 			out.close();
 
+			return;
+		}
+
+		String contentType = file.getContentType();
+		long length        = fileOnDisk.length();
+		long start         = 0;
+		long end           = length - 1;
+
+		if (contentType != null) {
+
+			response.setContentType(contentType);
+
 		} else {
 
-			// 2b: stream file to response
-			InputStream in     = file.getInputStream();
-			String contentType = file.getContentType();
+			// Default
+			response.setContentType("application/octet-stream");
+		}
+
+		response.setHeader("Accept-Ranges", "bytes");
+
+		String rangeHeader = request.getHeader("Range");
+		if (rangeHeader != null && ifRangeMatches(request, file)) {
+
+			long[] range = parseRange(rangeHeader, length);
+			if (range == UNSATISFIABLE_RANGE) {
+
+				response.setHeader("Content-Range", "bytes */" + length);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
 
-			if (contentType != null) {
+				return;
+			}
+
+			if (range != null) {
 
-				response.setContentType(contentType);
+				start = range[0];
+				end   = range[1];
+
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
 
 			} else {
 
-				// Default
-				response.setContentType("application/octet-stream");
+				response.setStatus(HttpServletResponse.SC_OK);
 			}
 
-			try {
+		} else {
 
-				IOUtils.copy(in, out);
+			response.setStatus(HttpServletResponse.SC_OK);
+		}
 
-			} catch (Throwable t) {
+		long count = end - start + 1;
 
-			} finally {
+		// setContentLength() only takes an int
+		response.setHeader("Content-Length", Long.toString(count));
 
-				if (out != null) {
+		FileInputStream in = null;
 
-					try {
-						// 3: output content
-						out.flush();
-						out.close();
+		try {
+
+			in = new FileInputStream(fileOnDisk);
+
+			OutputStream out              = response.getOutputStream();
+			FileChannel channel           = in.getChannel();
+			WritableByteChannel target    = Channels.newChannel(out);
+			long position                 = start;
+			long remaining                = count;
+
+			// let the channel decide how to transfer the data, this avoids copying
+			// the content through the heap where the target channel allows it
+			while (remaining > 0) {
 
-					} catch(Throwable t) {}
+				long transferred = channel.transferTo(position, remaining, target);
+				if (transferred <= 0) {
+					break;
 				}
 
-				if (in != null) {
-					in.close();
+				position  += transferred;
+				remaining -= transferred;
+			}
+
+			out.flush();
+
+		} catch (IOException ioex) {
+
+			// most likely the client aborted the download, f.e. a media player seeking
+			logger.log(Level.FINE, "Unable to stream file {0}: {1}", new Object[] { file.getUuid(), ioex.getMessage() });
+
+		} finally {
+
+			if (in != null) {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Parses the value of an HTTP Range header. Only single byte ranges are
+	 * supported, multiple ranges are ignored and the whole file is sent.
+	 *
+	 * @param rangeHeader the value of the Range header
+	 * @param length the length of the file
+	 * @return the first and last byte position, {@link #UNSATISFIABLE_RANGE}
+	 * or null if the header should be ignored
+	 */
+	static long[] parseRange(final String rangeHeader, final long length) {
+
+		String value = rangeHeader.trim();
+
+		if (!value.startsWith("bytes=")) {
+			return null;
+		}
+
+		String spec = value.substring(6).trim();
+		int dash    = spec.indexOf('-');
+
+		if (spec.contains(",") || dash < 0) {
+			return null;
+		}
+
+		String first = spec.substring(0, dash).trim();
+		String last  = spec.substring(dash + 1).trim();
+
+		try {
+
+			if (first.isEmpty()) {
+
+				if (last.isEmpty()) {
+					return null;
 				}
 
-				response.setStatus(HttpServletResponse.SC_OK);
+				// suffix range, i.e. the last n bytes
+				long suffix = Long.parseLong(last);
+				if (suffix <= 0 || length == 0) {
+					return UNSATISFIABLE_RANGE;
+				}
+
+				return new long[] { Math.max(0, length - suffix), length - 1 };
 			}
+
+			long start = Long.parseLong(first);
+			long end   = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+
+			if (start >= length) {
+				return UNSATISFIABLE_RANGE;
+			}
+
+			if (end < start) {
+				return null;
+			}
+
+			return new long[] { start, end };
+
+		} catch (NumberFormatException nfex) {
+
+			return null;
+		}
+	}
+
+	/**
+	 * Checks the If-Range header of the request, which can contain an
+	 * entity tag or a date. A range request is only served if the file
+	 * was not modified since.
+	 */
+	private static boolean ifRangeMatches(final HttpServletRequest request, final org.structr.web.entity.File file) {
+
+		String ifRange = request.getHeader("If-Range");
+		if (StringUtils.isBlank(ifRange)) {
+			return true;
+		}
+
+		// we don't send entity tags, so an entity tag can never match
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			return false;
+		}
+
+		Date lastModifiedDate = file.getLastModifiedDate();
+		if (lastModifiedDate == null) {
+			return false;
+		}
+
+		try {
+
+			DateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+			Date ifRangeDate          = httpDateFormat.parse(ifRange);
+
+			return DateUtils.round(lastModifiedDate, Calendar.SECOND).equals(ifRangeDate);
+
+		} catch (ParseException pex) {
+
+			return false;
 		}
 	}
 
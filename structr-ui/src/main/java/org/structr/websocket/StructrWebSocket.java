@@ -49,6 +49,9 @@ import java.io.IOException;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -71,7 +74,7 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 
 	private String callback                          = null;
 	private ServletConfig config                     = null;
-	private Connection connection                    = null;
+	private volatile Connection connection           = null;
 	private Gson gson                                = null;
 	private PropertyKey idProperty                   = null;
 	private HttpServletRequest request               = null;
@@ -80,6 +83,8 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 	private String token                             = null;
 	private Map<String, FileUploadHandler> uploads   = null;
 	private String pagePath                           = null;
+	private BlockingQueue<String> outboundQueue      = null;
+	private final AtomicBoolean sending              = new AtomicBoolean(false);
 
 	//~--- constructors ---------------------------------------------------
 
@@ -91,6 +96,7 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 		this.request        = request;
 		this.gson           = gson;
 		this.idProperty     = idProperty;
+		this.outboundQueue  = new LinkedBlockingQueue<String>(syncController.getSendQueueCapacity());
 
 	}
 
@@ -123,6 +129,9 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 
 		syncController.unregisterClient(this);
 
+		// discard messages that can't be delivered anymore
+		outboundQueue.clear();
+
 		// flush and close open uploads
 		for (FileUploadHandler upload : uploads.values()) {
 
@@ -191,6 +200,12 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 					// send 400 Bad Request
 					send(MessageBuilder.status().code(400).message(t.getMessage()).build(), true);
 
+				} finally {
+
+					// entities are cached for the duration of one message only
+					if (securityContext != null) {
+						securityContext.cleanUp();
+					}
 				}
 
 			} else {
@@ -234,7 +249,7 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 				logger.log(Level.FINE, "############################################################ SENDING \n{0}", msg);
 
 				// }
-				connection.sendMessage(msg);
+				enqueue(msg);
 
 			} else {
 
@@ -249,6 +264,90 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 		}
 	}
 
+	/**
+	 * Queues the given message for asynchronous delivery to this client.
+	 * Messages are sent in order by the send executor of the
+	 * synchronization controller, so a slow client does not block the
+	 * caller. If the queue of this client is full, the message is dropped.
+	 *
+	 * @param message the serialized message
+	 * @return true if the message was queued
+	 */
+	public boolean enqueue(final String message) {
+
+		if (!outboundQueue.offer(message)) {
+
+			syncController.messageDropped(this);
+
+			return false;
+		}
+
+		scheduleSend();
+
+		return true;
+	}
+
+	public int getQueueSize() {
+		return outboundQueue.size();
+	}
+
+	private void scheduleSend() {
+
+		// only one send task per client, so that message order is preserved
+		if (sending.compareAndSet(false, true)) {
+
+			syncController.getSendExecutor().execute(new Runnable() {
+
+				@Override
+				public void run() {
+					sendQueuedMessages();
+				}
+			});
+		}
+	}
+
+	private void sendQueuedMessages() {
+
+		try {
+
+			String message = outboundQueue.poll();
+			while (message != null) {
+
+				Connection currentConnection = connection;
+				if (currentConnection == null) {
+
+					outboundQueue.clear();
+					break;
+				}
+
+				try {
+
+					currentConnection.sendMessage(message);
+					syncController.messageSent();
+
+				} catch (org.eclipse.jetty.io.EofException eof) {
+
+					logger.log(Level.FINE, "EofException irgnored, may occour on SSL connections.", eof);
+
+				} catch (Throwable t) {
+
+					logger.log(Level.WARNING, "Error sending message to client.", t);
+				}
+
+				message = outboundQueue.poll();
+			}
+
+		} finally {
+
+			sending.set(false);
+		}
+
+		// messages might have been queued after the last poll
+		if (!outboundQueue.isEmpty()) {
+			scheduleSend();
+		}
+	}
+
 	// ----- file handling -----
 	public void createFileUploadHandler(File file) {
 
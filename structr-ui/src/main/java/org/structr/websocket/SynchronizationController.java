@@ -32,6 +32,9 @@ import org.structr.websocket.message.WebSocketMessage;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -65,18 +68,100 @@ public class SynchronizationController implements StructrTransactionListener, Tr
 
 	private static final Logger logger                              = Logger.getLogger(SynchronizationController.class.getName());
 
+	public static final String SEND_QUEUE_SIZE                      = "websocket.sendqueue.size";
+	public static final String SENDER_THREADS                       = "websocket.sender.threads";
+
 	private final Map<Long, List<WebSocketMessage>> messageStackMap = new ConcurrentHashMap<>();
 	private final Map<Long, Set<DOMNode>> markupElementsMap         = new ConcurrentHashMap<>();
 	private final Map<Long, Set<Class>> typesMap                    = new ConcurrentHashMap<>();
 	private final Set<StructrWebSocket> clients                     = new LinkedHashSet<>();
 	private final AtomicLong transactionCounter                     = new AtomicLong(0);
+	private final AtomicLong droppedMessages                        = new AtomicLong(0);
+	private final AtomicLong sentMessages                           = new AtomicLong(0);
 	private ResourceProvider resourceProvider                       = null;
+	private ExecutorService sendExecutor                            = null;
+	private int sendQueueCapacity                                   = 1000;
 	private Gson gson                                               = null;
 
 	public SynchronizationController(Gson gson) {
 
 		this.gson = gson;
 
+		int senderThreads = 8;
+
+		try {
+			sendQueueCapacity = Integer.parseInt(Services.getConfigurationValue(SEND_QUEUE_SIZE, "1000"));
+			senderThreads     = Integer.parseInt(Services.getConfigurationValue(SENDER_THREADS, "8"));
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid websocket send queue configuration, using defaults.");
+		}
+
+		sendExecutor = Executors.newFixedThreadPool(senderThreads, new ThreadFactory() {
+
+			private final AtomicLong threadCount = new AtomicLong(0);
+
+			@Override
+			public Thread newThread(Runnable r) {
+
+				Thread thread = new Thread(r, "WebSocketSender-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+	}
+
+	public void shutdown() {
+		sendExecutor.shutdownNow();
+	}
+
+	public ExecutorService getSendExecutor() {
+		return sendExecutor;
+	}
+
+	public int getSendQueueCapacity() {
+		return sendQueueCapacity;
+	}
+
+	public void messageSent() {
+		sentMessages.incrementAndGet();
+	}
+
+	public void messageDropped(StructrWebSocket client) {
+
+		// log only the first drop of every 100 to avoid flooding the log
+		if (droppedMessages.getAndIncrement() % 100 == 0) {
+			logger.log(Level.WARNING, "Send queue of client {0} is full, dropping message.", client.getPagePath());
+		}
+	}
+
+	/**
+	 * Returns the number of connected clients, the total number of queued
+	 * messages and the number of sent and dropped messages.
+	 */
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new LinkedHashMap<>();
+		int queued                = 0;
+		int clientCount           = 0;
+
+		synchronized (clients) {
+
+			clientCount = clients.size();
+
+			for (StructrWebSocket client : clients) {
+				queued += client.getQueueSize();
+			}
+		}
+
+		stats.put("clients", clientCount);
+		stats.put("queued", queued);
+		stats.put("sent", sentMessages.get());
+		stats.put("dropped", droppedMessages.get());
+
+		return stats;
 	}
 
 	public void registerClient(StructrWebSocket client) {
@@ -104,81 +189,91 @@ public class SynchronizationController implements StructrTransactionListener, Tr
 	// ----- private methods -----
 	private void broadcast(final WebSocketMessage webSocketData) {
 
-		logger.log(Level.FINE, "Broadcasting message to {0} clients..", clients.size());
+		List<StructrWebSocket> recipients = null;
+
+		// don't hold the lock while serializing
+		synchronized (clients) {
+			recipients = new ArrayList<>(clients);
+		}
+
+		logger.log(Level.FINE, "Broadcasting message to {0} clients..", recipients.size());
 
 		// session must be valid to be received by the client
 		webSocketData.setSessionValid(true);
 
-		String message;
-		String pagePath = (String) webSocketData.getNodeData().get("pagePath");
+		String pagePath                    = (String) webSocketData.getNodeData().get("pagePath");
+		String encodedPagePath             = URIUtil.encodePath(pagePath);
+		List<? extends GraphObject> result = webSocketData.getResult();
+		String command                     = webSocketData.getCommand();
+		boolean filterResult               = (result != null) && (result.size() > 0) && (command.equals("UPDATE") || command.equals("ADD") || command.equals("CREATE"));
 
-		synchronized (clients) {
+		// serialize once for every distinct combination of callback and visible result
+		Map<String, String> serializedMessages = new HashMap<>();
 
-			// create message
-			for (StructrWebSocket socket : clients) {
-				
-				String clientPagePath = socket.getPagePath();
-				if (clientPagePath != null && !clientPagePath.equals(URIUtil.encodePath(pagePath))) {
-					continue;
-				}
-				
-				Connection socketConnection = socket.getConnection();
+		for (StructrWebSocket socket : recipients) {
+
+			String clientPagePath = socket.getPagePath();
+			if (clientPagePath != null && !clientPagePath.equals(encodedPagePath)) {
+				continue;
+			}
 
-				webSocketData.setCallback(socket.getCallback());
+			if (socket.getConnection() == null) {
+				continue;
+			}
 
-				if ((socketConnection != null)) { //&& socket.isAuthenticated()) {
+			String callback            = socket.getCallback();
+			StringBuilder key          = new StringBuilder(String.valueOf(callback));
+			List<GraphObject> filtered = null;
 
-					List<? extends GraphObject> result = webSocketData.getResult();
+			if (filterResult) {
 
-					if ((result != null) && (result.size() > 0)
-						&& (webSocketData.getCommand().equals("UPDATE") || webSocketData.getCommand().equals("ADD") || webSocketData.getCommand().equals("CREATE"))) {
+				SecurityContext securityContext = socket.getSecurityContext();
 
-						WebSocketMessage clientData     = webSocketData.copy();
-						SecurityContext securityContext = socket.getSecurityContext();
-						
-						// For non-authenticated clients, construct a security context without user
-						if (securityContext == null) {
-							
-							try {
-								
-								securityContext = SecurityContext.getInstance(null, AccessMode.Frontend);
-								
-							} catch (FrameworkException ex) {
-								
-								continue;
-							}
-						}
+				// For non-authenticated clients, construct a security context without user
+				if (securityContext == null) {
 
-						clientData.setResult(filter(securityContext, result));
+					try {
 
-						message = gson.toJson(clientData, WebSocketMessage.class);
+						securityContext = SecurityContext.getInstance(null, AccessMode.Frontend);
 
-					} else {
+					} catch (FrameworkException ex) {
 
-						message = gson.toJson(webSocketData, WebSocketMessage.class);
+						continue;
 					}
+				}
 
-					logger.log(Level.FINE, "############################################################ SENDING \n{0}", message);
+				filtered = filter(securityContext, (List<GraphObject>) result);
 
-					try {
+				for (GraphObject obj : filtered) {
+					key.append(",").append(obj.getId());
+				}
+			}
 
-						socketConnection.sendMessage(message);
+			String message = serializedMessages.get(key.toString());
+			if (message == null) {
 
-					} catch (org.eclipse.jetty.io.EofException eof) {
+				webSocketData.setCallback(callback);
 
-						logger.log(Level.FINE, "EofException irgnored, may occour on SSL connections.", eof);
+				if (filterResult) {
 
-					} catch (Throwable t) {
+					WebSocketMessage clientData = webSocketData.copy();
 
-						logger.log(Level.WARNING, "Error sending message to client.", t);
+					clientData.setResult(filtered);
 
-					}
+					message = gson.toJson(clientData, WebSocketMessage.class);
+
+				} else {
 
+					message = gson.toJson(webSocketData, WebSocketMessage.class);
 				}
 
+				logger.log(Level.FINE, "############################################################ SENDING \n{0}", message);
+
+				serializedMessages.put(key.toString(), message);
 			}
-		}
 
+			socket.enqueue(message);
+		}
 	}
 
 	private <T extends GraphObject> List<T> filter(final SecurityContext securityContext, final List<T> all) {
@@ -23,6 +23,7 @@ package org.structr.websocket.command;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.Services;
+import org.structr.core.auth.AuthHelper;
 import org.structr.core.auth.Authenticator;
 import org.structr.core.auth.AuthenticatorCommand;
 import org.structr.core.auth.exception.AuthenticationException;
@@ -36,8 +37,6 @@ import org.structr.websocket.message.WebSocketMessage;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.core.entity.AbstractNode;
-import org.structr.core.graph.StructrTransaction;
-import org.structr.core.graph.TransactionCommand;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -83,18 +82,8 @@ public class LoginCommand extends AbstractCommand {
 						
 					}
 
-					final Principal principal = user;
-					
-					Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction() {
-
-						@Override
-						public Object execute() throws FrameworkException {
-							
-							// store token in user
-							principal.setProperty(Principal.sessionId, sessionId);
-							return null;
-						}
-					});
+					// store token in user
+					AuthHelper.setSessionId(user, sessionId);
 
 					// store token in response data
 					webSocketData.getNodeData().clear();
@@ -19,10 +19,8 @@
 package org.structr.websocket.command;
 
 import org.structr.common.error.FrameworkException;
-import org.structr.core.Services;
+import org.structr.core.auth.AuthHelper;
 import org.structr.core.entity.Principal;
-import org.structr.core.graph.StructrTransaction;
-import org.structr.core.graph.TransactionCommand;
 import org.structr.websocket.StructrWebSocket;
 import org.structr.websocket.message.WebSocketMessage;
 
@@ -45,15 +43,7 @@ public class LogoutCommand extends AbstractCommand {
 		if (user != null) {
 
 			try {
-				Services.command(getWebSocket().getSecurityContext(), TransactionCommand.class).execute(new StructrTransaction() {
-
-					@Override
-					public Object execute() throws FrameworkException {
-						
-						user.setProperty(Principal.sessionId, null);
-						return null;
-					}
-				});
+				AuthHelper.setSessionId(user, null);
 
 			} catch(FrameworkException fex) {
 				fex.printStackTrace();
@@ -35,6 +35,7 @@ import org.structr.websocket.message.WebSocketMessage;
 
 import java.io.IOException;
 
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,8 +46,10 @@ import javax.servlet.http.HttpServletResponse;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.Services;
+import org.structr.core.StatisticsProvider;
 import org.structr.core.graph.NodeService;
 import org.structr.rest.ResourceProvider;
+import org.structr.rest.resource.MaintenanceResource;
 import org.structr.websocket.SynchronizationController;
 
 //~--- classes ----------------------------------------------------------------
@@ -96,6 +99,14 @@ public class WebSocketServlet extends HttpServlet {
 		GraphDatabaseService graphDb = Services.getService(NodeService.class).getGraphDb();
 		graphDb.registerTransactionEventHandler(syncController);
 
+		MaintenanceResource.registerStatisticsProvider("websocket", new StatisticsProvider() {
+
+			@Override
+			public Map<String, Object> getStatistics() {
+				return syncController.getStatistics();
+			}
+		});
+
 		// create web socket factory
 		factory = new WebSocketFactory(new Acceptor() {
 
@@ -129,6 +140,8 @@ public class WebSocketServlet extends HttpServlet {
 		
 		GraphDatabaseService graphDb = Services.getService(NodeService.class).getGraphDb();
 		graphDb.unregisterTransactionEventHandler(syncController);
+
+		syncController.shutdown();
 	}
 
 	@Override
@@ -23,11 +23,15 @@ import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertNull;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
 import org.structr.common.error.FrameworkException;
+import org.structr.web.common.FileHelper;
 import org.structr.web.common.FtpTest;
+import org.structr.web.entity.AbstractFile;
 
 /**
  * Tests for FTP directories.
@@ -338,5 +342,41 @@ public class FtpDirectoriesTest extends FtpTest {
 			fail("Unexpected exception: " + ex.getMessage());
 		}
 	}
-	
+
+	public void test09SameNameInDifferentDirectories() {
+
+		FTPClient ftp = setupFTPClient();
+		
+		try {
+			
+			// Create folders by mkdir FTP command
+			ftp.makeDirectory("/FTPdir1");
+			ftp.makeDirectory("/FTPdir2");
+			ftp.makeDirectory("/FTPdir1/sub");
+			ftp.makeDirectory("/FTPdir2/sub");
+			ftp.makeDirectory("/FTPdir2/sub/sub2");
+
+			AbstractFile sub1 = FileHelper.getFileByAbsolutePath("/FTPdir1/sub");
+			AbstractFile sub2 = FileHelper.getFileByAbsolutePath("/FTPdir2/sub");
+
+			assertNotNull(sub1);
+			assertNotNull(sub2);
+			assertFalse(sub1.getUuid().equals(sub2.getUuid()));
+
+			assertNotNull(FileHelper.getFileByAbsolutePath("/FTPdir2/sub/sub2"));
+			assertNull(FileHelper.getFileByAbsolutePath("/FTPdir1/sub/sub2"));
+			assertNull(FileHelper.getFileByAbsolutePath("/sub"));
+
+			FTPFile[] dirs = ftp.listDirectories();
+			
+			assertNotNull(dirs);
+			assertEquals(2, dirs.length);
+
+			ftp.disconnect();
+			
+		} catch (IOException ex) {
+			logger.log(Level.SEVERE, "Error while resolving FTP directories", ex);
+			fail("Unexpected exception: " + ex.getMessage());
+		}
+	}
 }
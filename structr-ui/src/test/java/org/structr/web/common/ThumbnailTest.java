@@ -29,6 +29,9 @@ import org.structr.core.graph.StructrTransaction;
 
 import java.io.IOException;
 
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.web.common.ImageHelper.Thumbnail;
@@ -103,4 +106,76 @@ public class ThumbnailTest extends StructrTest {
 
 	}
 
+	public void test02ConcurrentThumbnailRequests() {
+
+		try {
+
+			final TestImage img = transactionCommand.execute(new StructrTransaction<TestImage>() {
+
+				@Override
+				public TestImage execute() throws FrameworkException {
+
+					try {
+
+						return (TestImage) ImageHelper.createFileBase64(securityContext, base64Image, TestImage.class);
+
+					} catch (IOException ex) {
+
+						logger.log(Level.SEVERE, null, ex);
+
+					}
+
+					return null;
+
+				}
+
+			});
+
+			assertNotNull(img);
+
+			final List<Image> thumbnails = Collections.synchronizedList(new LinkedList<Image>());
+			final List<Thread> threads   = new LinkedList<Thread>();
+
+			for (int i = 0; i < 5; i++) {
+
+				Thread thread = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						thumbnails.add(img.getScaledImage(150, 150, false));
+					}
+				});
+
+				threads.add(thread);
+				thread.start();
+			}
+
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			// all requests must get the same thumbnail
+			assertEquals(5, thumbnails.size());
+
+			for (Image tn : thumbnails) {
+
+				assertNotNull(tn);
+				assertEquals(thumbnails.get(0).getUuid(), tn.getUuid());
+			}
+
+			assertEquals(1, img.getThumbnails().size());
+
+		} catch (InterruptedException iex) {
+
+			fail("Unexpected exception");
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
 }
@@ -18,7 +18,9 @@
  */
 package org.structr.web.entity.dom;
 
+import org.structr.common.error.FrameworkException;
 import org.structr.web.common.DOMTest;
+import org.structr.web.common.RenderContext;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -178,4 +180,30 @@ public class ContentTest extends DOMTest {
 	public void testReplaceWholeText() {
 
 	}
+
+	public void testTemplateExpressions() {
+
+		Content content = getContentNode();
+		assertNotNull(content);
+
+		RenderContext renderContext = new RenderContext();
+
+		try {
+
+			// evaluate twice, second evaluation uses the compiled expressions
+			for (int i=0; i<2; i++) {
+
+				assertEquals("No expressions", content.replaceVariables(securityContext, renderContext, "No expressions"));
+				assertEquals("Sum: 3.0", content.replaceVariables(securityContext, renderContext, "Sum: ${add(1, 2)}"));
+				assertEquals("ABC-def", content.replaceVariables(securityContext, renderContext, "${upper('abc')}-${lower('DEF')}"));
+				assertEquals("yes", content.replaceVariables(securityContext, renderContext, "${if(equal('a', 'a'), 'yes', 'no')}"));
+				assertEquals("no", content.replaceVariables(securityContext, renderContext, "${if(equal(add(1, 1), '3.0'), 'yes', 'no')}"));
+				assertEquals("true", content.extractFunctions(securityContext, renderContext, "equal(1, 1)"));
+			}
+
+		} catch (FrameworkException fex) {
+
+			fail("Unexpected exception");
+		}
+	}
 }
@@ -23,14 +23,22 @@ import static junit.framework.TestCase.assertNotNull;
 import static junit.framework.TestCase.assertNull;
 import static junit.framework.TestCase.assertTrue;
 import static junit.framework.TestCase.fail;
+import java.io.StringWriter;
+import java.util.Map;
 import org.apache.commons.lang.StringUtils;
+import org.structr.common.RelType;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.web.common.FragmentCache;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.StructrUiTest;
+import org.structr.web.entity.User;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.w3c.dom.Text;
 
 /**
  *
@@ -274,6 +282,218 @@ public class PageTest extends StructrUiTest {
 		}
 	}
 	
+	public void testStreamingRender() {
+
+		try {
+
+			Page page = Page.createNewPage(securityContext, "streamingPage");
+			assertNotNull(page);
+
+			Node html = page.createElement("html");
+			Node body = page.createElement("body");
+
+			try {
+
+				page.appendChild(html);
+				html.appendChild(body);
+
+				// create enough content to make the render context flush several times
+				for (int i=0; i<100; i++) {
+
+					Node div = page.createElement("div");
+					body.appendChild(div);
+
+					div.appendChild(page.createTextNode(StringUtils.repeat("Paragraph " + i + " ", 20)));
+				}
+
+			} catch (DOMException dex) {
+
+				throw new FrameworkException(422, dex.getMessage());
+			}
+
+			RenderContext bufferedContext  = new RenderContext();
+			RenderContext streamingContext = new RenderContext();
+			StringWriter output            = new StringWriter();
+
+			streamingContext.setOutput(output);
+
+			page.render(securityContext, bufferedContext, 0);
+			page.render(securityContext, streamingContext, 0);
+
+			// some content must have been sent before rendering was finished
+			assertTrue(output.getBuffer().length() > 0);
+
+			streamingContext.finish();
+
+			// streamed output must be identical to buffered output
+			assertEquals(bufferedContext.getBuffer().toString(), output.toString());
+			assertEquals(0, streamingContext.getBuffer().length());
+
+		} catch (FrameworkException ex) {
+
+			fail("Unexpected exception");
+		}
+	}
+	
+	public void testFragmentCache() {
+
+		try {
+
+			// make sure committed transactions invalidate cached fragments
+			graphDbCommand.execute().registerTransactionEventHandler(FragmentCache.getInstance());
+
+			Page page = Page.createNewPage(securityContext, "fragmentPage");
+			assertNotNull(page);
+
+			Node html            = page.createElement("html");
+			Node body            = page.createElement("body");
+			final DOMElement div = (DOMElement) page.createElement("div");
+			Text text            = page.createTextNode("Cached content");
+
+			try {
+
+				page.appendChild(html);
+				html.appendChild(body);
+				body.appendChild(div);
+				div.appendChild(text);
+
+			} catch (DOMException dex) {
+
+				throw new FrameworkException(422, dex.getMessage());
+			}
+
+			transactionCommand.execute(new StructrTransaction<Object>() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					div.setProperty(DOMElement.cacheFragment, true);
+					return null;
+				}
+			});
+
+			RenderContext ctx1 = new RenderContext();
+			RenderContext ctx2 = new RenderContext();
+
+			page.render(securityContext, ctx1, 0);
+			page.render(securityContext, ctx2, 0);
+
+			// second rendering must come from the cache and be identical
+			assertEquals(ctx1.getBuffer().toString(), ctx2.getBuffer().toString());
+
+			Map<String, Object> nodeStats = (Map<String, Object>) ((Map<String, Object>) FragmentCache.getInstance().getStatistics().get("nodes")).get(div.getUuid());
+			assertEquals(1L, nodeStats.get("hits"));
+			assertEquals(1L, nodeStats.get("misses"));
+
+			// modification of a node in the subtree must invalidate the fragment
+			text.setData("Modified content");
+
+			RenderContext ctx3 = new RenderContext();
+			page.render(securityContext, ctx3, 0);
+
+			assertTrue(ctx3.getBuffer().toString().contains("Modified content"));
+			assertTrue(!ctx3.getBuffer().toString().contains("Cached content"));
+
+		} catch (FrameworkException ex) {
+
+			fail("Unexpected exception");
+
+		} finally {
+
+			// don't affect other tests
+			graphDbCommand.execute().unregisterTransactionEventHandler(FragmentCache.getInstance());
+			FragmentCache.getInstance().clear();
+		}
+	}
+	
+	public void testFragmentCacheDependencies() {
+
+		try {
+
+			// make sure committed transactions invalidate cached fragments
+			graphDbCommand.execute().registerTransactionEventHandler(FragmentCache.getInstance());
+
+			Page page = Page.createNewPage(securityContext, "dependencyPage");
+			assertNotNull(page);
+
+			Node html            = page.createElement("html");
+			Node body            = page.createElement("body");
+			final DOMElement div = (DOMElement) page.createElement("div");
+			Content text         = (Content) page.createTextNode("Owner: ${owner.name}");
+
+			try {
+
+				page.appendChild(html);
+				html.appendChild(body);
+				body.appendChild(div);
+				div.appendChild(text);
+
+			} catch (DOMException dex) {
+
+				throw new FrameworkException(422, dex.getMessage());
+			}
+
+			final User owner = createTestNodes(User.class, 1).get(0);
+
+			createRelationshipCommand.execute(owner, text, RelType.OWNS);
+
+			transactionCommand.execute(new StructrTransaction<Object>() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					owner.setProperty(AbstractNode.name, "Alice");
+					div.setProperty(DOMElement.cacheFragment, true);
+					return null;
+				}
+			});
+
+			RenderContext ctx1 = new RenderContext();
+			RenderContext ctx2 = new RenderContext();
+
+			page.render(securityContext, ctx1, 0);
+			page.render(securityContext, ctx2, 0);
+
+			assertTrue(ctx1.getBuffer().toString().contains("Owner: Alice"));
+			assertEquals(ctx1.getBuffer().toString(), ctx2.getBuffer().toString());
+
+			// modification of the owner, which is not part of the subtree, must invalidate the fragment
+			transactionCommand.execute(new StructrTransaction<Object>() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					owner.setProperty(AbstractNode.name, "Bob");
+					return null;
+				}
+			});
+
+			RenderContext ctx3 = new RenderContext();
+			page.render(securityContext, ctx3, 0);
+
+			assertTrue(ctx3.getBuffer().toString().contains("Owner: Bob"));
+
+			// the current date must never be cached
+			text.setData("Now: ${now}");
+
+			page.render(securityContext, new RenderContext(), 0);
+			page.render(securityContext, new RenderContext(), 0);
+
+			Map<String, Object> nodeStats = (Map<String, Object>) ((Map<String, Object>) FragmentCache.getInstance().getStatistics().get("nodes")).get(div.getUuid());
+			assertEquals(1L, nodeStats.get("hits"));
+
+		} catch (FrameworkException ex) {
+
+			fail("Unexpected exception");
+
+		} finally {
+
+			// don't affect other tests
+			graphDbCommand.execute().unregisterTransactionEventHandler(FragmentCache.getInstance());
+			FragmentCache.getInstance().clear();
+		}
+	}
+	
 	public void testCloneNode() {
 		
 
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ * This file is part of structr <http://structr.org>.
+ *
+ * structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.servlet;
+
+import junit.framework.TestCase;
+
+/**
+ * Test HTTP Range parsing of {@link HtmlServlet}.
+ *
+ * @author Christian Morgner
+ */
+public class HtmlServletTest extends TestCase {
+
+	public void testParseRange() {
+
+		long[] range = null;
+
+		// simple ranges
+		range = HtmlServlet.parseRange("bytes=0-99", 1000);
+		assertEquals(0, range[0]);
+		assertEquals(99, range[1]);
+
+		range = HtmlServlet.parseRange("bytes=500-", 1000);
+		assertEquals(500, range[0]);
+		assertEquals(999, range[1]);
+
+		// end position is limited to the file length
+		range = HtmlServlet.parseRange("bytes=900-2000", 1000);
+		assertEquals(900, range[0]);
+		assertEquals(999, range[1]);
+
+		// suffix ranges
+		range = HtmlServlet.parseRange("bytes=-100", 1000);
+		assertEquals(900, range[0]);
+		assertEquals(999, range[1]);
+
+		range = HtmlServlet.parseRange("bytes=-2000", 1000);
+		assertEquals(0, range[0]);
+		assertEquals(999, range[1]);
+
+		// unsatisfiable ranges
+		assertEquals(0, HtmlServlet.parseRange("bytes=1000-", 1000).length);
+		assertEquals(0, HtmlServlet.parseRange("bytes=-0", 1000).length);
+		assertEquals(0, HtmlServlet.parseRange("bytes=-10", 0).length);
+
+		// ignored ranges, the whole file is sent
+		assertNull(HtmlServlet.parseRange("bytes=0-10,20-30", 1000));
+		assertNull(HtmlServlet.parseRange("bytes=20-10", 1000));
+		assertNull(HtmlServlet.parseRange("bytes=a-b", 1000));
+		assertNull(HtmlServlet.parseRange("items=0-10", 1000));
+		assertNull(HtmlServlet.parseRange("bytes=-", 1000));
+	}
+}